@@ -0,0 +1,89 @@
+package com.github.travishaagen.client;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * Netty transports that clients can run on, which is selected with the {@code -Dclient.transport} JVM argument. The
+ * native epoll transport is only available on Linux.
+ */
+public enum ClientTransport
+{
+    /**
+     * Java NIO selector transport, which is available on all platforms
+     */
+    NIO
+    {
+        @Override
+        public EventLoopGroup newEventLoopGroup(final int threadCount)
+        {
+            return new NioEventLoopGroup(threadCount);
+        }
+
+        @Override
+        public Class<? extends Channel> socketChannelClass()
+        {
+            return NioSocketChannel.class;
+        }
+    },
+
+    /**
+     * Native Linux epoll transport
+     */
+    EPOLL
+    {
+        @Override
+        public EventLoopGroup newEventLoopGroup(final int threadCount)
+        {
+            return new EpollEventLoopGroup(threadCount);
+        }
+
+        @Override
+        public Class<? extends Channel> socketChannelClass()
+        {
+            return EpollSocketChannel.class;
+        }
+    };
+
+    /**
+     * Transport selected by the {@code client.transport} JVM argument
+     */
+    public static final ClientTransport DEFAULT = select(System.getProperty("client.transport"));
+
+    /**
+     * Creates a new event-loop group for this transport.
+     *
+     * @param threadCount number of event-loop threads
+     * @return new {@code EventLoopGroup} instance
+     */
+    public abstract EventLoopGroup newEventLoopGroup(final int threadCount);
+
+    /**
+     * @return socket channel class for this transport
+     */
+    public abstract Class<? extends Channel> socketChannelClass();
+
+    /**
+     * Selects a transport, based on the given supported values,
+     * <ul>
+     * <li>Auto (default), which uses Epoll when its native library is available, and Nio otherwise</li>
+     * <li>Epoll, which falls back to Nio when its native library is not available</li>
+     * <li>Nio</li>
+     * </ul>
+     *
+     * @param transport transport name, or {@code null} to use default (Auto)
+     * @return selected transport
+     */
+    public static ClientTransport select(final String transport)
+    {
+        if ("Nio".equalsIgnoreCase(transport)) {
+            return NIO;
+        }
+        return Epoll.isAvailable() ? EPOLL : NIO;
+    }
+}
@@ -7,9 +7,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Client that communicates with a {@code DigitsServer}. This class is not thread safe.
+ * <p>
+ * A client that is connected in ack mode can wait for the server to commit numbers to its journal, with
+ * {@link #acked()} after sending a batch, or with {@link #whenAcked(long)} for an earlier count of sent numbers. The
+ * server acknowledges numbers cumulatively, so waiting costs no extra messages per number.
+ * </p>
+ * <p>
+ * Numbers sent one at a time with {@link #send(int)} are encoded straight into a large write buffer, which is handed
+ * off to the channel's event-loop when it is full, or when {@link #flush()} is called, so sending a number allocates
+ * nothing. Sending an array of numbers, requesting acks, terminating and disconnecting also flush the write buffer.
+ * </p>
  */
 public class DigitsClient
 {
@@ -26,9 +37,14 @@ public class DigitsClient
     private static final byte[] TERMINATE_MESSAGE_BYTES = ("terminate\n").getBytes(CharsetUtil.UTF_8);
 
     /**
-     * Bytes for a UTF-8 zero character array
+     * Length of a text line, which is nine digits and a newline character
      */
-    private static final byte[] ZERO_CHAR_BYTES = "000000000".getBytes(CharsetUtil.UTF_8);
+    private static final int LINE_LENGTH = 10;
+
+    /**
+     * Size of each write buffer, which holds 6553 text lines
+     */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
 
     /**
      * All digits as UTF-8 character-bytes
@@ -61,19 +77,70 @@ public class DigitsClient
     private final Queue<ByteBuf> outboundQueue;
 
     /**
-     * Reusable buffer of nine digit characters
+     * Maximum number of integers in one binary frame, which keeps frames well under the server's limit
      */
-    private final byte[] digits = new byte[9];
+    private static final int MAX_FRAME_VALUE_COUNT = 64 * 1024;
 
     /**
-     * Constructor
+     * Wire protocol used to send numbers
+     */
+    private final DigitsClientProtocol protocol;
+
+    /**
+     * Reads acks from the server, or {@code null} if the client is not in ack mode
+     */
+    private final DigitsClientAckHandler ackHandler;
+
+    /**
+     * Number of numbers sent so far
+     */
+    private long sentCount;
+
+    /**
+     * Buffer of encoded numbers that have not been handed off to the event-loop yet, or {@code null} after a hand off
+     */
+    private ByteBuf writeBuf;
+
+    /**
+     * Index of the payload of the open {@link DigitsClientProtocol#INTS_FRAME} in the write buffer, which single
+     * numbers are added to when using the {@link DigitsClientProtocol#BINARY_FRAMES} protocol, or {@code -1} if no
+     * frame is open
+     */
+    private int frameIndex = -1;
+
+    /**
+     * Constructor for a client that uses the text protocol
      *
      * @param channel client's channel to the server
      */
     public DigitsClient(final Channel channel)
+    {
+        this(channel, DigitsClientProtocol.TEXT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param channel  client's channel to the server
+     * @param protocol wire protocol used to send numbers
+     */
+    public DigitsClient(final Channel channel, final DigitsClientProtocol protocol)
     {
         this.channel = channel;
+        this.protocol = protocol;
         outboundQueue = ((DigitsClientMessageHandler) channel.pipeline().first()).getOutboundQueue();
+        ackHandler = channel.pipeline().get(DigitsClientAckHandler.class);
+
+        if (ackHandler != null) {
+            // ack handshake is sent before the binary preamble
+            writeBuffer(DigitsClientAckHandler.ACK_HANDSHAKE.length).writeBytes(DigitsClientAckHandler.ACK_HANDSHAKE);
+        }
+
+        if (protocol != DigitsClientProtocol.TEXT) {
+            // binary preamble must be the first bytes sent on the connection
+            final byte[] prefix = DigitsClientProtocol.BINARY_PREAMBLE_PREFIX;
+            writeBuffer(prefix.length + 1).writeBytes(prefix).writeByte(protocol.mode);
+        }
     }
 
     /**
@@ -86,12 +153,64 @@ public class DigitsClient
         return channel.isActive();
     }
 
+    /**
+     * @return number of numbers sent so far, which is the count that {@link #acked()} waits for
+     */
+    public long getSentCount()
+    {
+        return sentCount;
+    }
+
+    /**
+     * Gets a future that completes when the server has committed every number sent so far.
+     *
+     * @return future that completes with the server's count of committed numbers, or completes exceptionally with a
+     * {@link DigitsClientException} if the connection closes first
+     * @throws IllegalStateException if the client is not in ack mode
+     */
+    public CompletableFuture<Long> acked()
+    {
+        return whenAcked(sentCount);
+    }
+
+    /**
+     * Gets a future that completes when the server has committed a number of the numbers sent, counting from the
+     * first number sent on the connection.
+     *
+     * @param count number of numbers sent, such as the result of {@link #getSentCount()} after sending a batch
+     * @return future that completes with the server's count of committed numbers, which is at least {@code count}, or
+     * completes exceptionally with a {@link DigitsClientException} if the connection closes first
+     * @throws IllegalStateException if the client is not in ack mode
+     */
+    public CompletableFuture<Long> whenAcked(final long count)
+    {
+        if (ackHandler == null) {
+            throw new IllegalStateException("client is not in ack mode");
+        }
+        // buffered numbers can not be acknowledged until they are sent
+        flush();
+        return ackHandler.whenAcked(count);
+    }
+
+    /**
+     * Hands off the numbers in the write buffer to the event-loop, which sends them to the server.
+     */
+    public void flush()
+    {
+        if (writeBuf != null && writeBuf.isReadable()) {
+            closeFrame();
+            outboundQueue.offer(writeBuf);
+            writeBuf = null;
+        }
+    }
+
     /**
      * Disconnects from the server after sending all pending messages
      */
     public void disconnect() throws DigitsClientException
     {
         if (isConnected()) {
+            flush();
             try {
                 ((DigitsClientMessageHandler) channel.pipeline().first()).close();
                 channel.closeFuture().sync();
@@ -109,42 +228,205 @@ public class DigitsClient
         if (!isConnected()) {
             throw new DigitsClientException("not connected");
         }
-        outboundQueue.offer(channel.alloc().buffer(10, 10).writeBytes(TERMINATE_MESSAGE_BYTES));
+        switch (protocol) {
+            case BINARY_INTS:
+                writeBuffer(4).writeInt(DigitsClientProtocol.TERMINATE_VALUE);
+                break;
+            case BINARY_FRAMES:
+                closeFrame();
+                writeBuffer(DigitsClientProtocol.FRAME_HEADER_LENGTH).writeByte(DigitsClientProtocol.TERMINATE_FRAME)
+                        .writeInt(0);
+                break;
+            default:
+                writeBuffer(TERMINATE_MESSAGE_BYTES.length).writeBytes(TERMINATE_MESSAGE_BYTES);
+        }
+        flush();
     }
 
     /**
-     * Sends digits to the server. The value must be in the range [0, 999999999].
+     * Sends digits to the server, once the write buffer is full or flushed (see {@link #flush()}). The value must be
+     * in the range [0, 999999999].
      *
      * @param value value to send
      */
     public void send(final int value) throws DigitsClientException
     {
-        if (value < MIN_VALUE || value > MAX_VALUE) {
-            throw new IllegalArgumentException("value is out of valid range [0, 999999999]");
+        checkRange(value);
+
+        if (!isConnected()) {
+            throw new DigitsClientException("not connected");
+        }
+
+        write(value);
+        ++sentCount;
+    }
+
+    /**
+     * Sends many numbers to the server, through the write buffer, which is then flushed. When using the
+     * {@link DigitsClientProtocol#BINARY_FRAMES} protocol, the numbers are sent in one frame per write buffer. The
+     * values must be in the range [0, 999999999].
+     *
+     * @param values values to send
+     */
+    public void send(final int[] values) throws DigitsClientException
+    {
+        for (final int value : values) {
+            checkRange(value);
         }
 
         if (!isConnected()) {
             throw new DigitsClientException("not connected");
         }
 
-        final ByteBuf buf = channel.alloc().buffer(10, 10);
-        final int digitsLength = IntegerUtil.toUnicodeChars(value, digits);
+        for (final int value : values) {
+            write(value);
+        }
+        sentCount += values.length;
+        flush();
+    }
 
-        // pad with zeros
-        if (digitsLength != 9) {
-            buf.writeBytes(ZERO_CHAR_BYTES, 0, 9 - digitsLength);
+    /**
+     * Sends many sorted, or nearly sequential, numbers to the server. When using the
+     * {@link DigitsClientProtocol#BINARY_FRAMES} protocol, numbers are sent as a base value followed by zig-zag
+     * variable-length deltas, which costs about 1 byte per number for sequential values. Other protocols send the
+     * numbers as {@link #send(int[])} does. The values must be in the range [0, 999999999].
+     *
+     * @param values values to send, which are most compact when sorted
+     */
+    public void sendSorted(final int[] values) throws DigitsClientException
+    {
+        if (protocol != DigitsClientProtocol.BINARY_FRAMES) {
+            send(values);
+            return;
         }
 
-        // copy digits
-        for (int i = 0; i < digitsLength; ++i) {
-            // strip off high order bits from char, because we don't need them
-            buf.writeByte(digits[i]);
+        for (final int value : values) {
+            checkRange(value);
         }
 
-        // newline
-        buf.writeByte(NEWLINE);
+        if (!isConnected()) {
+            throw new DigitsClientException("not connected");
+        }
+
+        // numbers that were sent before these are handed off first, to keep them in order
+        flush();
+
+        int n;
+        for (int offset = 0; offset < values.length; offset += n) {
+            n = Math.min(values.length - offset, MAX_FRAME_VALUE_COUNT);
+
+            // header, with payload length set after encoding, then base value and up to 5 bytes per delta
+            final ByteBuf buf = channel.alloc().buffer(DigitsClientProtocol.FRAME_HEADER_LENGTH + 4 + (n - 1) * 5);
+            buf.writeByte(DigitsClientProtocol.DELTAS_FRAME).writeInt(0);
+            final int payloadIndex = buf.writerIndex();
+
+            int previous = values[offset];
+            buf.writeInt(previous);
+            for (int i = offset + 1; i < offset + n; ++i) {
+                final int delta = values[i] - previous;
+                previous = values[i];
+
+                // zig-zag encode, then write as unsigned LEB128
+                int varint = (delta << 1) ^ (delta >> 31);
+                while ((varint & ~0x7F) != 0) {
+                    buf.writeByte((varint & 0x7F) | 0x80);
+                    varint >>>= 7;
+                }
+                buf.writeByte(varint);
+            }
+            buf.setInt(payloadIndex - 4, buf.writerIndex() - payloadIndex);
+            outboundQueue.offer(buf);
+        }
+        sentCount += values.length;
+    }
+
+    /**
+     * @param value value to check
+     * @throws IllegalArgumentException value is not in the range [0, 999999999]
+     */
+    private static void checkRange(final int value)
+    {
+        if (value < MIN_VALUE || value > MAX_VALUE) {
+            throw new IllegalArgumentException("value is out of valid range [0, 999999999]");
+        }
+    }
+
+    /**
+     * Writes a number to the write buffer, in the client's protocol.
+     *
+     * @param value value to write
+     */
+    private void write(final int value)
+    {
+        switch (protocol) {
+            case BINARY_INTS:
+                writeBuffer(4).writeInt(value);
+                break;
+            case BINARY_FRAMES:
+                // always leave room for a frame header, because handing off the write buffer closes its frame
+                final ByteBuf buf = writeBuffer(DigitsClientProtocol.FRAME_HEADER_LENGTH + 4);
+                if (frameIndex == -1) {
+                    // payload length is set when the frame is closed
+                    buf.writeByte(DigitsClientProtocol.INTS_FRAME).writeInt(0);
+                    frameIndex = buf.writerIndex();
+                }
+                buf.writeInt(value);
+                break;
+            default:
+                writeDigitsLine(writeBuffer(LINE_LENGTH), value);
+        }
+    }
+
+    /**
+     * Gets the write buffer, after handing off the current write buffer if it does not have enough room.
+     *
+     * @param length number of bytes to be written
+     * @return write buffer with room for at least {@code length} bytes
+     */
+    private ByteBuf writeBuffer(final int length)
+    {
+        if (writeBuf == null || writeBuf.writableBytes() < length) {
+            flush();
+            writeBuf = channel.alloc().buffer(WRITE_BUFFER_SIZE, WRITE_BUFFER_SIZE);
+        }
+        return writeBuf;
+    }
 
-        outboundQueue.offer(buf);
+    /**
+     * Sets the payload length of the open frame, if there is one.
+     */
+    private void closeFrame()
+    {
+        if (frameIndex != -1) {
+            writeBuf.setInt(frameIndex - 4, writeBuf.writerIndex() - frameIndex);
+            frameIndex = -1;
+        }
+    }
+
+    /**
+     * Writes nine zero-padded digits followed by a newline character. The last eight digits are converted together, in
+     * the lanes of one {@code long}, by splitting the number into two 4-digit halves, then four 2-digit quarters, and
+     * then eight digits, using multiplications by reciprocals rather than divisions. The digits are then written as one
+     * little-endian {@code long}, so that the first digit is the lowest byte.
+     *
+     * @param buf   destination buffer
+     * @param value value in the range [0, 999999999]
+     */
+    static void writeDigitsLine(final ByteBuf buf, final int value)
+    {
+        final int lastDigits = value % 100_000_000;
+        // 4-digit halves, in 32-bit lanes, where x * 10486 >>> 20 is x / 100 for x < 10000
+        long x = (lastDigits / 10_000) | ((long) (lastDigits % 10_000) << 32);
+        long y = ((x * 10486) >>> 20) & 0x0000007F0000007FL;
+        // 2-digit quarters, in 16-bit lanes, where x * 103 >>> 10 is x / 10 for x < 100
+        x = y | ((x - y * 100) << 16);
+        y = ((x * 103) >>> 10) & 0x000F000F000F000FL;
+        // digits, in 8-bit lanes
+        x = y | ((x - y * 10) << 8);
+
+        buf.writeByte('0' + value / 100_000_000);
+        buf.writeLongLE(x | 0x3030303030303030L);
+        buf.writeByte(NEWLINE);
     }
 
     /**
@@ -0,0 +1,147 @@
+package com.github.travishaagen.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.CharsetUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Inbound handler for a {@link DigitsClient} in ack mode, which reads the server's cumulative {@code ack <count>}
+ * lines, where the count is the number of numbers sent on the connection that the server has committed to its journal,
+ * and completes the futures of {@link #whenAcked(long)}. Other lines from the server are ignored.
+ */
+public class DigitsClientAckHandler extends ByteToMessageDecoder
+{
+    /**
+     * Line that requests acks, which the client sends before any numbers
+     */
+    static final byte[] ACK_HANDSHAKE = "ack\n".getBytes(CharsetUtil.UTF_8);
+
+    private static final byte[] ACK_PREFIX = "ack ".getBytes(CharsetUtil.UTF_8);
+
+    /**
+     * Maximum length of a line from the server, including its newline
+     */
+    private static final int MAX_LINE_LENGTH = 64;
+
+    /**
+     * Futures waiting for counts of acknowledged numbers, by count, which are guarded by their own lock
+     */
+    private final NavigableMap<Long, CompletableFuture<Long>> pendingAcks = new TreeMap<>();
+
+    private volatile long ackedCount;
+    private boolean isClosed;
+
+    /**
+     * Gets a future that completes when the server has acknowledged a number of numbers.
+     *
+     * @param count number of numbers sent on the connection, counting from the first
+     * @return future that completes with the acknowledged count, which is at least {@code count}, or completes
+     * exceptionally with a {@link DigitsClientException} if the connection closes first
+     */
+    public CompletableFuture<Long> whenAcked(final long count)
+    {
+        long acked = ackedCount;
+        if (count <= acked) {
+            return CompletableFuture.completedFuture(acked);
+        }
+        synchronized (pendingAcks) {
+            // the ack may have arrived while waiting for the lock
+            acked = ackedCount;
+            if (count <= acked) {
+                return CompletableFuture.completedFuture(acked);
+            }
+            if (isClosed) {
+                final CompletableFuture<Long> future = new CompletableFuture<>();
+                future.completeExceptionally(new DigitsClientException("connection closed"));
+                return future;
+            }
+            return pendingAcks.computeIfAbsent(count, key -> new CompletableFuture<>());
+        }
+    }
+
+    /**
+     * @return number of numbers that the server has acknowledged so far
+     */
+    public long getAckedCount()
+    {
+        return ackedCount;
+    }
+
+    @Override
+    protected void decode(final ChannelHandlerContext ctx, final ByteBuf in, final List<Object> out)
+    {
+        int newlineIndex;
+        while ((newlineIndex = in.indexOf(in.readerIndex(), in.writerIndex(), (byte) '\n')) != -1) {
+            if (isAckLine(in, newlineIndex)) {
+                long count = 0;
+                for (int i = in.readerIndex() + ACK_PREFIX.length; i < newlineIndex; ++i) {
+                    count = count * 10 + (in.getByte(i) - '0');
+                }
+                acknowledge(count);
+            }
+            in.readerIndex(newlineIndex + 1);
+        }
+        if (in.readableBytes() >= MAX_LINE_LENGTH) {
+            throw new CorruptedFrameException("line from server is too long");
+        }
+    }
+
+    private static boolean isAckLine(final ByteBuf in, final int newlineIndex)
+    {
+        final int start = in.readerIndex();
+        if (newlineIndex - start <= ACK_PREFIX.length || newlineIndex - start > MAX_LINE_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < ACK_PREFIX.length; ++i) {
+            if (in.getByte(start + i) != ACK_PREFIX[i]) {
+                return false;
+            }
+        }
+        for (int i = start + ACK_PREFIX.length; i < newlineIndex; ++i) {
+            final byte b = in.getByte(i);
+            if (b < '0' || b > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void acknowledge(final long count)
+    {
+        final List<CompletableFuture<Long>> ackedFutures = new ArrayList<>();
+        synchronized (pendingAcks) {
+            ackedCount = count;
+            final Map<Long, CompletableFuture<Long>> acked = pendingAcks.headMap(count, true);
+            ackedFutures.addAll(acked.values());
+            acked.clear();
+        }
+        // complete outside of the lock, because completion runs dependent actions
+        for (final CompletableFuture<Long> future : ackedFutures) {
+            future.complete(count);
+        }
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext ctx) throws Exception
+    {
+        final List<CompletableFuture<Long>> unackedFutures;
+        synchronized (pendingAcks) {
+            isClosed = true;
+            unackedFutures = new ArrayList<>(pendingAcks.values());
+            pendingAcks.clear();
+        }
+        for (final CompletableFuture<Long> future : unackedFutures) {
+            future.completeExceptionally(new DigitsClientException("connection closed before numbers were acked"));
+        }
+        super.channelInactive(ctx);
+    }
+}
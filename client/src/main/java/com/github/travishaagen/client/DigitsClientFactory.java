@@ -6,15 +6,14 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Factory for {@link DigitsClient} instances.
+ * Factory for {@link DigitsClient} instances. The Netty transport can be selected with the {@code -Dclient.transport}
+ * JVM argument (see {@link ClientTransport}).
  */
 public class DigitsClientFactory
 {
@@ -69,9 +68,41 @@ public class DigitsClientFactory
      * @throws com.github.travishaagen.client.DigitsClientException connect failure
      */
     public static DigitsClient connect(final String host, final int port) throws DigitsClientException
+    {
+        return connect(host, port, DigitsClientProtocol.TEXT);
+    }
+
+    /**
+     * Connects a {@link DigitsClient}
+     *
+     * @param host     server host
+     * @param port     server port
+     * @param protocol wire protocol used to send numbers
+     * @return new {@link DigitsClient} instance
+     * @throws com.github.travishaagen.client.DigitsClientException connect failure
+     */
+    public static DigitsClient connect(final String host, final int port, final DigitsClientProtocol protocol)
+            throws DigitsClientException
+    {
+        return connect(host, port, protocol, false);
+    }
+
+    /**
+     * Connects a {@link DigitsClient}
+     *
+     * @param host      server host
+     * @param port      server port
+     * @param protocol  wire protocol used to send numbers
+     * @param isAckMode set to {@code true} to have the server acknowledge numbers once it has committed them to its
+     *                  journal (see {@link DigitsClient#acked()})
+     * @return new {@link DigitsClient} instance
+     * @throws com.github.travishaagen.client.DigitsClientException connect failure
+     */
+    public static DigitsClient connect(final String host, final int port, final DigitsClientProtocol protocol,
+                                       final boolean isAckMode) throws DigitsClientException
     {
         try {
-            final EventLoopGroup group = new NioEventLoopGroup(1);
+            final EventLoopGroup group = ClientTransport.DEFAULT.newEventLoopGroup(1);
             synchronized (groups) {
                 groups.add(group);
             }
@@ -83,14 +114,17 @@ public class DigitsClientFactory
             bootstrap.option(ChannelOption.WRITE_SPIN_COUNT, 32);
             bootstrap.option(ChannelOption.TCP_NODELAY, true);
             bootstrap.group(group);
-            bootstrap.channel(NioSocketChannel.class);
+            bootstrap.channel(ClientTransport.DEFAULT.socketChannelClass());
             bootstrap.handler(new ChannelInitializer<SocketChannel>() {
                 @Override
                 protected void initChannel(final SocketChannel ch) throws Exception {
                     ch.pipeline().addLast(new DigitsClientMessageHandler());
+                    if (isAckMode) {
+                        ch.pipeline().addLast(new DigitsClientAckHandler());
+                    }
                 }
             });
-            return new DigitsClient(bootstrap.connect(host, port).sync().channel());
+            return new DigitsClient(bootstrap.connect(host, port).sync().channel(), protocol);
         } catch (Exception e) {
             throw new DigitsClientException("Unable to connect", e);
         }
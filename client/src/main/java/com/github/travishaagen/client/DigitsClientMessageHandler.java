@@ -14,7 +14,13 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class DigitsClientMessageHandler extends ChannelInboundHandlerAdapter
 {
     private final Queue<ByteBuf> outboundQueue;
-    private boolean isCloseRequested;
+    private volatile boolean isCloseRequested;
+    private ChannelHandlerContext context;
+
+    /**
+     * Polls the queue again, after the event-loop has had a chance to read from the channel
+     */
+    private final Runnable writeTask = () -> writeIfPossible(context);
 
     /**
      * Constructor
@@ -40,6 +46,7 @@ public class DigitsClientMessageHandler extends ChannelInboundHandlerAdapter
     @Override
     public void channelActive(final ChannelHandlerContext ctx)
     {
+        context = ctx;
         writeIfPossible(ctx);
     }
 
@@ -61,17 +68,18 @@ public class DigitsClientMessageHandler extends ChannelInboundHandlerAdapter
                 // send message
                 ctx.write(buf, ctx.voidPromise());
                 needsFlush = true;
-            } else if (needsFlush) {
-                // no new message, so flush previous messages
-                ctx.flush();
-                needsFlush = false;
-            }
-
-            if (isCloseRequested && outboundQueue.isEmpty()) {
+            } else {
                 if (needsFlush) {
+                    // no new message, so flush previous messages
                     ctx.flush();
                 }
-                ctx.close();
+                if (isCloseRequested && outboundQueue.isEmpty()) {
+                    // numbers queued before the close request are visible after reading the volatile flag
+                    ctx.close();
+                } else {
+                    // poll again from a task, rather than spinning here, so that the event-loop also reads acks
+                    ctx.executor().execute(writeTask);
+                }
                 return;
             }
         }
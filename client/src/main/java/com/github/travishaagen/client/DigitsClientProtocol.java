@@ -0,0 +1,46 @@
+package com.github.travishaagen.client;
+
+/**
+ * Wire protocols that a {@link DigitsClient} can use to send numbers to the server.
+ */
+public enum DigitsClientProtocol
+{
+    /**
+     * Nine zero-padded UTF-8 digits followed by a newline character, for each number (10 bytes per number)
+     */
+    TEXT((byte) 0),
+
+    /**
+     * 4-byte big-endian integer for each number, after a binary preamble
+     */
+    BINARY_INTS((byte) 'I'),
+
+    /**
+     * Frames of 4-byte big-endian integers, after a binary preamble, where each frame has a 1-byte type and a 4-byte
+     * big-endian payload length
+     */
+    BINARY_FRAMES((byte) 'F');
+
+    /**
+     * Bytes that start a binary connection, followed by the mode byte
+     */
+    static final byte[] BINARY_PREAMBLE_PREFIX = {0, 'D', 'G'};
+
+    static final byte INTS_FRAME = 'I';
+    static final byte DELTAS_FRAME = 'D';
+    static final byte TERMINATE_FRAME = 'T';
+
+    static final int TERMINATE_VALUE = -1;
+
+    static final int FRAME_HEADER_LENGTH = 5;
+
+    /**
+     * Mode byte sent at the end of the binary preamble
+     */
+    final byte mode;
+
+    DigitsClientProtocol(final byte mode)
+    {
+        this.mode = mode;
+    }
+}
@@ -3,9 +3,7 @@ package com.github.travishaagen.client;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,13 +29,13 @@ public class LoadTestApp {
             return;
         }
         final String host = args[0];
-        LOGGER.info("Client connecting to host at {}:4000", host);
+        LOGGER.info("Client connecting to host at {}:4000 with {} transport", host, ClientTransport.DEFAULT);
 
         final int availableProcessors = Runtime.getRuntime().availableProcessors();
         final ChannelHandler channelHandler = new LoadTestMessageHandler();
 
         // group with default number of threads
-        final EventLoopGroup group = new NioEventLoopGroup(availableProcessors);
+        final EventLoopGroup group = ClientTransport.DEFAULT.newEventLoopGroup(availableProcessors);
         final Bootstrap bootstrap = new Bootstrap();
         bootstrap.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
         bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(8 * 1024, 16 * 1024));
@@ -46,7 +44,7 @@ public class LoadTestApp {
         bootstrap.option(ChannelOption.WRITE_SPIN_COUNT, 32);
         bootstrap.option(ChannelOption.TCP_NODELAY, true);
         bootstrap.group(group);
-        bootstrap.channel(NioSocketChannel.class);
+        bootstrap.channel(ClientTransport.DEFAULT.socketChannelClass());
         bootstrap.option(ChannelOption.TCP_NODELAY, true);
         bootstrap.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
         bootstrap.handler(new ChannelInitializer<SocketChannel>() {
@@ -0,0 +1,123 @@
+package com.github.travishaagen.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link DigitsClient}.
+ */
+public class DigitsClientTest
+{
+    /**
+     * Tests that digits lines match {@link String#format(String, Object...)} at the boundaries of each digit count,
+     * and for a random sample of values.
+     */
+    @Test
+    public void writeDigitsLineTest()
+    {
+        final int[] boundaries = {0, 1, 9, 10, 99, 100, 9999, 10000, 99999999, 100000000, 100000001, 123456789,
+                999999999};
+        for (final int value : boundaries) {
+            assertDigitsLine(value);
+        }
+        final Random random = new Random(42);
+        for (int i = 0; i < 100000; ++i) {
+            assertDigitsLine(random.nextInt(DigitsClient.MAX_VALUE + 1));
+        }
+    }
+
+    private static void assertDigitsLine(final int value)
+    {
+        final ByteBuf buf = Unpooled.buffer(10);
+        DigitsClient.writeDigitsLine(buf, value);
+        Assert.assertEquals(String.format("%09d\n", value), buf.toString(CharsetUtil.UTF_8));
+    }
+
+    /**
+     * Tests that numbers sent one at a time stay in the write buffer until it is flushed, and are then handed off as
+     * text lines.
+     */
+    @Test
+    public void sendTextTest() throws Exception
+    {
+        final EmbeddedChannel channel = newChannel();
+        final Queue<ByteBuf> outboundQueue = outboundQueue(channel);
+        final DigitsClient client = new DigitsClient(channel);
+
+        client.send(0);
+        client.send(999999999);
+        client.send(42);
+        Assert.assertTrue(outboundQueue.isEmpty());
+        Assert.assertEquals(3, client.getSentCount());
+
+        client.flush();
+        Assert.assertEquals("000000000\n999999999\n000000042\n", outboundQueue.poll().toString(CharsetUtil.UTF_8));
+        Assert.assertTrue(outboundQueue.isEmpty());
+
+        // nothing to hand off
+        client.flush();
+        Assert.assertTrue(outboundQueue.isEmpty());
+    }
+
+    /**
+     * Tests that numbers sent one at a time with the binary frames protocol are written after the preamble into an
+     * integers frame, whose payload length is set when the write buffer is flushed, and that the next number opens a
+     * new frame.
+     */
+    @Test
+    public void sendBinaryFramesTest() throws Exception
+    {
+        final EmbeddedChannel channel = newChannel();
+        final Queue<ByteBuf> outboundQueue = outboundQueue(channel);
+        final DigitsClient client = new DigitsClient(channel, DigitsClientProtocol.BINARY_FRAMES);
+
+        client.send(1);
+        client.send(999999999);
+        client.flush();
+        final ByteBuf expected = Unpooled.buffer()
+                .writeBytes(new byte[]{0, 'D', 'G', DigitsClientProtocol.BINARY_FRAMES.mode})
+                .writeByte(DigitsClientProtocol.INTS_FRAME).writeInt(8).writeInt(1).writeInt(999999999);
+        Assert.assertEquals(expected, outboundQueue.poll());
+
+        client.send(7);
+        client.flush();
+        Assert.assertEquals(Unpooled.buffer().writeByte(DigitsClientProtocol.INTS_FRAME).writeInt(4).writeInt(7),
+                outboundQueue.poll());
+
+        // an open frame is closed before the terminate frame
+        client.send(8);
+        client.terminate();
+        Assert.assertEquals(Unpooled.buffer().writeByte(DigitsClientProtocol.INTS_FRAME).writeInt(4).writeInt(8)
+                .writeByte(DigitsClientProtocol.TERMINATE_FRAME).writeInt(0), outboundQueue.poll());
+        Assert.assertTrue(outboundQueue.isEmpty());
+    }
+
+    /**
+     * Creates a channel whose message handler does not poll its outbound queue, so that tests read the buffers that
+     * are handed off to it.
+     */
+    private static EmbeddedChannel newChannel()
+    {
+        return new EmbeddedChannel(new DigitsClientMessageHandler()
+        {
+            @Override
+            public void channelActive(final ChannelHandlerContext ctx)
+            {
+                // does not start writing
+            }
+        });
+    }
+
+    private static Queue<ByteBuf> outboundQueue(final EmbeddedChannel channel)
+    {
+        return ((DigitsClientMessageHandler) channel.pipeline().first()).getOutboundQueue();
+    }
+}
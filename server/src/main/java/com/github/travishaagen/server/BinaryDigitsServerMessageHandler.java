@@ -0,0 +1,296 @@
+package com.github.travishaagen.server;
+
+import com.github.travishaagen.server.journal.DigitsJournal;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DecoderException;
+
+import java.util.List;
+
+/**
+ * Server-side handler for binary <em>digits</em> messages, which is installed by {@link ProtocolDetectionHandler}
+ * when a client starts its connection with {@link #PREAMBLE}. Binary messages need no digit parsing and use 60% less
+ * bandwidth than text lines. There are two binary modes, selected by the last byte of the preamble:
+ * <ul>
+ * <li>{@link #INTS_MODE}, where each number is a 4-byte big-endian integer, and {@link #TERMINATE_VALUE} requests
+ * server shutdown</li>
+ * <li>{@link #FRAMES_MODE}, where numbers are sent in frames, which have a 1-byte frame type and a 4-byte big-endian
+ * payload length, followed by the payload</li>
+ * </ul>
+ * Frame types are,
+ * <ul>
+ * <li>{@link #INTS_FRAME}, with a payload of 4-byte big-endian integers</li>
+ * <li>{@link #DELTAS_FRAME}, with a payload of one 4-byte big-endian base integer followed by the differences
+ * between consecutive numbers, as zig-zag encoded unsigned LEB128 variable-length integers, which is about 1 byte
+ * per number for sequential values</li>
+ * <li>{@link #TERMINATE_FRAME}, with an empty payload, which requests server shutdown</li>
+ * </ul>
+ * A number outside of the range of keys, which is [0, 999999999] for nine-digit keys, or a malformed frame, is an
+ * invalid message. Keys with more than nine digits can only be sent in binary if they fit in a 4-byte integer.
+ * <p>
+ * In ack mode, numbers are acknowledged with text lines, once the journal has committed them (see
+ * {@link JournalAcknowledger}).
+ * </p>
+ */
+public class BinaryDigitsServerMessageHandler extends ByteToMessageDecoder {
+    /**
+     * Bytes that start a binary connection, where the last byte is the mode. The first byte can never start a text
+     * message.
+     */
+    public static final byte[] PREAMBLE = {0, 'D', 'G', 0};
+
+    /**
+     * Index of the mode byte within {@link #PREAMBLE}
+     */
+    public static final int PREAMBLE_MODE_INDEX = 3;
+
+    public static final byte INTS_MODE = 'I';
+    public static final byte FRAMES_MODE = 'F';
+
+    public static final byte INTS_FRAME = 'I';
+    public static final byte DELTAS_FRAME = 'D';
+    public static final byte TERMINATE_FRAME = 'T';
+
+    public static final int TERMINATE_VALUE = -1;
+
+    /**
+     * Length of a frame type and payload length
+     */
+    public static final int FRAME_HEADER_LENGTH = 5;
+
+    /**
+     * Largest payload accepted in one frame
+     */
+    public static final int MAX_FRAME_PAYLOAD_LENGTH = 1024 * 1024;
+
+    /**
+     * Thread-safe journal for writing unique digits messages to a file
+     */
+    private final DigitsJournal journal;
+
+    /**
+     * Binary mode, either {@link #INTS_MODE} or {@link #FRAMES_MODE}
+     */
+    private final byte mode;
+
+    /**
+     * Largest valid number
+     */
+    private final long maxValue;
+
+    /**
+     * Buffer of decoded digits-messages that are written to the journal as a batch, which we reuse while this
+     * channel is open
+     */
+    private final long[] batch = new long[DigitsServerMessageHandler.MAX_BATCH_SIZE];
+
+    private int batchCount;
+
+    /**
+     * Suspends reading from this channel while the journal is falling behind
+     */
+    private final JournalBackpressure backpressure;
+
+    /**
+     * Acknowledges committed numbers, or {@code null} if the client did not request acks
+     */
+    private final JournalAcknowledger acknowledger;
+
+    /**
+     * Constructor for nine-digit keys
+     *
+     * @param journal digits journal, for persisting unique digits to disk
+     * @param mode    binary mode, either {@link #INTS_MODE} or {@link #FRAMES_MODE}
+     */
+    public BinaryDigitsServerMessageHandler(final DigitsJournal journal, final byte mode) {
+        this(journal, NineDigitsKeyCodec.INSTANCE, mode);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param journal  digits journal, for persisting unique digits to disk
+     * @param keyCodec codec of the server's keys, which limits the range of valid numbers
+     * @param mode     binary mode, either {@link #INTS_MODE} or {@link #FRAMES_MODE}
+     */
+    public BinaryDigitsServerMessageHandler(final DigitsJournal journal, final DigitsKeyCodec keyCodec,
+                                            final byte mode) {
+        this(journal, keyCodec, mode, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param journal   digits journal, for persisting unique digits to disk
+     * @param keyCodec  codec of the server's keys, which limits the range of valid numbers
+     * @param mode      binary mode, either {@link #INTS_MODE} or {@link #FRAMES_MODE}
+     * @param isAckMode set to {@code true} to acknowledge numbers once the journal has committed them
+     * @throws UnsupportedOperationException if ack mode is requested and the journal does not track commits
+     */
+    public BinaryDigitsServerMessageHandler(final DigitsJournal journal, final DigitsKeyCodec keyCodec,
+                                            final byte mode, final boolean isAckMode) {
+        this.journal = journal;
+        this.mode = mode;
+        this.maxValue = Math.min(keyCodec.keyCount() - 1, Integer.MAX_VALUE);
+        this.backpressure = new JournalBackpressure(journal);
+        this.acknowledger = isAckMode ? new JournalAcknowledger(journal) : null;
+    }
+
+    @Override
+    protected void decode(final ChannelHandlerContext ctx, final ByteBuf in, final List<Object> out)
+            throws TerminateServerException, InvalidMessageException {
+        try {
+            if (mode == INTS_MODE) {
+                readInts(in, in.readableBytes() >>> 2);
+            } else {
+                readFrames(in);
+            }
+        } finally {
+            flushBatch();
+        }
+    }
+
+    /**
+     * Reads complete frames, and leaves an incomplete frame in the buffer until more bytes arrive.
+     *
+     * @param in buffer of frames
+     * @throws TerminateServerException client requested server shutdown
+     * @throws InvalidMessageException  client sent invalid message and should be disconnected
+     */
+    private void readFrames(final ByteBuf in) throws TerminateServerException, InvalidMessageException {
+        while (in.readableBytes() >= FRAME_HEADER_LENGTH) {
+            final int readerIndex = in.readerIndex();
+            final byte frameType = in.getByte(readerIndex);
+            final int payloadLength = in.getInt(readerIndex + 1);
+            if (payloadLength < 0 || payloadLength > MAX_FRAME_PAYLOAD_LENGTH) {
+                throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+            }
+            if (in.readableBytes() < FRAME_HEADER_LENGTH + payloadLength) {
+                // incomplete frame
+                return;
+            }
+            in.skipBytes(FRAME_HEADER_LENGTH);
+
+            switch (frameType) {
+                case INTS_FRAME:
+                    if ((payloadLength & 3) != 0) {
+                        throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+                    }
+                    readInts(in, payloadLength >>> 2);
+                    break;
+                case DELTAS_FRAME:
+                    readDeltas(in, payloadLength);
+                    break;
+                case TERMINATE_FRAME:
+                    throw DigitsServerMessageHandler.TERMINATE_SERVER_EXCEPTION;
+                default:
+                    throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+            }
+        }
+    }
+
+    /**
+     * Reads 4-byte big-endian integers into the journal batch.
+     *
+     * @param in    buffer of integers
+     * @param count number of integers to read
+     * @throws TerminateServerException client requested server shutdown
+     * @throws InvalidMessageException  client sent invalid message and should be disconnected
+     */
+    private void readInts(final ByteBuf in, final int count) throws TerminateServerException, InvalidMessageException {
+        int value;
+        for (int i = 0; i < count; ++i) {
+            value = in.readInt();
+            if (value < 0 || value > maxValue) {
+                if (value == TERMINATE_VALUE && mode == INTS_MODE) {
+                    throw DigitsServerMessageHandler.TERMINATE_SERVER_EXCEPTION;
+                }
+                throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+            }
+            batch[batchCount++] = value;
+            if (batchCount == batch.length) {
+                flushBatch();
+            }
+        }
+    }
+
+    /**
+     * Reads a base integer followed by zig-zag variable-length deltas into the journal batch.
+     *
+     * @param in            buffer of integers
+     * @param payloadLength number of bytes to read
+     * @throws InvalidMessageException client sent invalid message and should be disconnected
+     */
+    private void readDeltas(final ByteBuf in, final int payloadLength) throws InvalidMessageException {
+        if (payloadLength < 4) {
+            throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+        }
+        final int endIndex = in.readerIndex() + payloadLength;
+        int value = in.readInt();
+        int varint, shift;
+        byte b;
+        while (true) {
+            if (value < 0 || value > maxValue) {
+                throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+            }
+            batch[batchCount++] = value;
+            if (batchCount == batch.length) {
+                flushBatch();
+            }
+
+            if (in.readerIndex() == endIndex) {
+                return;
+            }
+
+            // read unsigned LEB128, which must end within the payload and fit in 32 bits, so a 5th byte can only hold
+            // the top 4 bits and must be the last byte
+            varint = 0;
+            shift = 0;
+            do {
+                if (in.readerIndex() == endIndex) {
+                    throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+                }
+                b = in.readByte();
+                if (shift == 28 && (b & 0xF0) != 0) {
+                    throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+                }
+                varint |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            // zig-zag decode
+            value += (varint >>> 1) ^ -(varint & 1);
+        }
+    }
+
+    /**
+     * Writes buffered digits-messages to the journal.
+     */
+    private void flushBatch() {
+        if (batchCount != 0) {
+            journal.writeBatch(batch, batchCount);
+            if (acknowledger != null) {
+                acknowledger.received(batchCount);
+            }
+            batchCount = 0;
+        }
+    }
+
+    @Override
+    public void channelReadComplete(final ChannelHandlerContext ctx) throws Exception {
+        super.channelReadComplete(ctx);
+        if (acknowledger != null) {
+            acknowledger.afterRead(ctx);
+            ctx.flush();
+        }
+        backpressure.afterRead(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
+        // decode exceptions are wrapped by the super-class
+        DigitsServerMessageHandler.handleException(ctx,
+                cause instanceof DecoderException && cause.getCause() != null ? cause.getCause() : cause);
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.travishaagen.server;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Decodes and encodes <em>digits</em> lines for keys with a configured number of UTF-8 digits, followed by a
+ * {@code \n} newline character. Keys have from 1 to {@link #MAX_DIGIT_COUNT} digits, so that every key fits in a
+ * {@code long}, and keys are zero-padded to the full number of digits.
+ */
+public interface DigitsKeyCodec {
+    /**
+     * Most digits in a key.
+     */
+    int MAX_DIGIT_COUNT = 18;
+
+    /**
+     * Value returned by {@link #decode(ByteBuf, int)} when bytes are not a valid digits line.
+     */
+    long INVALID_LINE = -1L;
+
+    /**
+     * @return number of digits in a line
+     */
+    int digitCount();
+
+    /**
+     * @return number of bytes in a line, including the newline character
+     */
+    int lineLength();
+
+    /**
+     * @return number of possible keys, so that valid keys are in the range [0, keyCount - 1]
+     */
+    long keyCount();
+
+    /**
+     * Validates and converts one digits line into a key. The buffer must have at least {@link #lineLength()} bytes
+     * available starting at {@code index}, and its indexes are not modified.
+     *
+     * @param buf   buffer containing a digits line
+     * @param index absolute index of the first digit
+     * @return key in the range [0, keyCount - 1], or {@link #INVALID_LINE} if bytes are not digits followed by a
+     * newline character
+     */
+    long decode(ByteBuf buf, int index);
+
+    /**
+     * Writes the zero-padded UTF-8 digits of a key into a byte array, without a trailing newline.
+     *
+     * @param key    key in the range [0, keyCount - 1]
+     * @param bytes  destination array
+     * @param offset index of the first digit within {@code bytes}
+     */
+    void encode(long key, byte[] bytes, int offset);
+
+    /**
+     * Creates a codec for keys with the given number of digits, which is the nine-digit {@link DigitsLineCodec} when
+     * there are nine digits.
+     *
+     * @param digitCount number of digits in a line
+     * @return codec
+     * @throws IllegalArgumentException if there are not from 1 to {@link #MAX_DIGIT_COUNT} digits
+     */
+    static DigitsKeyCodec forDigitCount(final int digitCount) {
+        if (digitCount == DigitsLineCodec.DIGIT_COUNT) {
+            return NineDigitsKeyCodec.INSTANCE;
+        }
+        return new VariableDigitsKeyCodec(digitCount);
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.travishaagen.server;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Decodes and encodes <em>digits</em> lines, which are nine UTF-8 digits followed by a {@code \n} newline character.
+ * <p>
+ * Decoding is done with SIMD-within-a-register (SWAR) arithmetic, by loading the first eight digits of a line as a
+ * single little-endian {@code long} and the last digit plus newline as a {@code short}, so that a whole line can be
+ * validated and converted to an {@code int} with a handful of mask and multiply operations, rather than inspecting
+ * each byte individually.
+ * </p>
+ */
+public final class DigitsLineCodec {
+    /**
+     * Number of digits in a line.
+     */
+    public static final int DIGIT_COUNT = 9;
+
+    /**
+     * Number of bytes in a line, including the newline character.
+     */
+    public static final int LINE_LENGTH = DIGIT_COUNT + 1;
+
+    /**
+     * Value returned by {@link #decode(ByteBuf, int)} when bytes are not a valid digits line.
+     */
+    public static final int INVALID_LINE = -1;
+
+    private static final byte ZERO_CHAR_BYTE = '0';
+    private static final byte NEWLINE_CHAR_BYTE = '\n';
+
+    private static final long HIGH_NIBBLES_MASK = 0xF0F0F0F0F0F0F0F0L;
+    private static final long ZERO_CHARS = 0x3030303030303030L;
+    private static final long SIX_PER_BYTE = 0x0606060606060606L;
+
+    /**
+     * Expected value of each byte after combining the high nibble of a digit character, {@code 3}, with the high
+     * nibble of that character plus six, which is also {@code 3} only if the character is in the range ['0', '9'].
+     */
+    private static final long DIGIT_CHECK_BYTES = 0x3333333333333333L;
+
+    /**
+     * Expected value of the last digit and newline after applying the same check as {@link #DIGIT_CHECK_BYTES}
+     * to the digit's byte and keeping the newline's byte unchanged.
+     */
+    private static final int LAST_DIGIT_AND_NEWLINE_CHECK = (NEWLINE_CHAR_BYTE << 8) | 0x33;
+
+    /**
+     * Hidden constructor
+     */
+    private DigitsLineCodec() {
+        // empty
+    }
+
+    /**
+     * Validates and converts one digits line into an integer. The buffer must have at least {@link #LINE_LENGTH}
+     * bytes available starting at {@code index}, and its indexes are not modified.
+     *
+     * @param buf   buffer containing a digits line
+     * @param index absolute index of the first digit
+     * @return value in the range [0, 999999999], or {@link #INVALID_LINE} if bytes are not nine digits followed by a
+     * newline character
+     */
+    public static int decode(final ByteBuf buf, final int index) {
+        final long digits = buf.getLongLE(index);
+        final int lastDigitAndNewline = buf.getUnsignedShortLE(index + 8);
+
+        // bytes of the first eight characters must all be digits
+        final long digitsCheck = (digits & HIGH_NIBBLES_MASK) | (((digits + SIX_PER_BYTE) & HIGH_NIBBLES_MASK) >>> 4);
+
+        // last character must be a digit, followed by a newline
+        final int lastCheck = (lastDigitAndNewline & 0xFFF0) | (((lastDigitAndNewline + 0x06) & 0xF0) >>> 4);
+
+        if (((digitsCheck ^ DIGIT_CHECK_BYTES) | (lastCheck ^ LAST_DIGIT_AND_NEWLINE_CHECK)) != 0) {
+            return INVALID_LINE;
+        }
+
+        return (int) combineDigits(digits) * 10 + (lastDigitAndNewline & 0x0F);
+    }
+
+    /**
+     * Validates and converts eight UTF-8 digits, which were loaded as a little-endian {@code long}, with the same
+     * arithmetic as {@link #decode(ByteBuf, int)}.
+     *
+     * @param digits eight characters
+     * @return value in the range [0, 99999999], or {@link #INVALID_LINE} if any character is not a digit
+     */
+    static long decodeEightDigits(final long digits) {
+        final long digitsCheck = (digits & HIGH_NIBBLES_MASK) | (((digits + SIX_PER_BYTE) & HIGH_NIBBLES_MASK) >>> 4);
+        return (digitsCheck ^ DIGIT_CHECK_BYTES) == 0 ? combineDigits(digits) : INVALID_LINE;
+    }
+
+    /**
+     * Converts eight validated digits, from a little-endian {@code long}, into their value.
+     */
+    private static long combineDigits(final long digits) {
+        // combine adjacent digits pairwise, from single digits, to pairs, to quads, and then the final eight digits
+        long value = digits - ZERO_CHARS;
+        value = (value * 10 + (value >>> 8)) & 0x00FF00FF00FF00FFL;
+        value = (value * 100 + (value >>> 16)) & 0x0000FFFF0000FFFFL;
+        return (value * 10000 + (value >>> 32)) & 0x00000000FFFFFFFFL;
+    }
+
+    /**
+     * Writes the nine zero-padded UTF-8 digits of a value into a byte array, without a trailing newline.
+     *
+     * @param value  value in the range [0, 999999999]
+     * @param bytes  destination array
+     * @param offset index of the first digit within {@code bytes}
+     */
+    public static void encode(int value, final byte[] bytes, final int offset) {
+        for (int i = offset + DIGIT_COUNT - 1; i >= offset; --i) {
+            final int quotient = value / 10;
+            bytes[i] = (byte) (ZERO_CHAR_BYTE + value - quotient * 10);
+            value = quotient;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.travishaagen.server;
+
+import com.github.travishaagen.server.filter.DigitsQuery;
+import com.github.travishaagen.server.journal.DigitsJournal;
+
+/**
+ * Namespace that a client channel writes numbers to and queries, such as one tenant of the server.
+ */
+public final class DigitsNamespace {
+    private final DigitsJournal journal;
+    private final DigitsQuery query;
+
+    /**
+     * Constructor
+     *
+     * @param journal journal of the namespace's unique numbers
+     * @param query   queries of the namespace's filter, or {@code null} if its filter does not support queries
+     */
+    public DigitsNamespace(final DigitsJournal journal, final DigitsQuery query) {
+        this.journal = journal;
+        this.query = query;
+    }
+
+    public DigitsJournal getJournal() {
+        return journal;
+    }
+
+    public DigitsQuery getQuery() {
+        return query;
+    }
+}
@@ -1,42 +1,90 @@
 package com.github.travishaagen.server;
 
+import com.github.travishaagen.server.filter.AtomicBitSetDigitsFilter;
+import com.github.travishaagen.server.filter.ByteArrayDigitsFilter;
+import com.github.travishaagen.server.filter.ByteBufferDigitsFilter;
+import com.github.travishaagen.server.filter.DigitsFilter;
+import com.github.travishaagen.server.filter.DigitsQuery;
+import com.github.travishaagen.server.filter.HashDigitsFilter;
+import com.github.travishaagen.server.filter.LongArrayDigitsFilter;
+import com.github.travishaagen.server.filter.MappedFileDigitsFilter;
+import com.github.travishaagen.server.filter.PagedDigitsFilter;
+import com.github.travishaagen.server.filter.PartitionDigitsFilter;
+import com.github.travishaagen.server.filter.PartitionedDigitsQuery;
+import com.github.travishaagen.server.filter.RoaringDigitsFilter;
+import com.github.travishaagen.server.filter.SnapshotDigitsFilter;
+import com.github.travishaagen.server.filter.UniqueCountDigitsQuery;
+import com.github.travishaagen.server.filter.WindowedDigitsFilter;
 import com.github.travishaagen.server.journal.DigitsJournal;
+import com.github.travishaagen.server.journal.FilterSnapshotter;
+import com.github.travishaagen.server.journal.FilteringDigitsJournal;
+import com.github.travishaagen.server.journal.JournalRecovery;
+import com.github.travishaagen.server.journal.JournalSyncPolicy;
+import com.github.travishaagen.server.journal.MappedJournalWriter;
+import com.github.travishaagen.server.journal.PartitionedDigitsJournal;
 import com.github.travishaagen.server.journal.RingBufferDigitsJournal;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
 /**
- * Server that reads lines of nine UTF-8 digits followed by a system-dependent newline sequence. A single line
- * containing the word {@code terminate}, followed by a newline, will cause the server to shutdown immediately.
+ * Server that reads lines of nine UTF-8 digits, or another configured number of digits up to 18, followed by a
+ * newline character. A single line containing the word {@code terminate}, followed by a newline, will cause the server
+ * to shutdown immediately.
  * <p/>
  * By default, the server runs on port 4000 and unique digits are written to {@code numbers.log} in the default JVM
  * temporary directory.
+ * <p/>
+ * Clients may instead send 4-byte binary integers, after a preamble (see {@link BinaryDigitsServerMessageHandler}).
  * <p>
  * Optional runtime JVM arguments allow one to override the default port, journal-file directory, journal
- * ring-buffer wait-strategy, and running a single-threaded event-loop (false by default):
+ * ring-buffer wait-strategy, duplicate filter, number of journal partitions, Netty transport, number of acceptor
+ * threads, and running a single-threaded event-loop (false by default):
  * </p>
  * <ul>
  * <li>-Dserver.port=4000</li>
+ * <li>-Dserver.transport=Auto</li>
+ * <li>-Dserver.acceptorCount=1</li>
  * <li>-Djournal.directory=/some/dir</li>
  * <li>-Djournal.waitStrategy=Sleep</li>
+ * <li>-Djournal.filter=ByteBuffer</li>
+ * <li>-Djournal.filterMsyncIntervalMs=1000</li>
+ * <li>-Djournal.windowGenerations=4</li>
+ * <li>-Djournal.windowRotationMs=60000</li>
+ * <li>-Djournal.keyDigits=9</li>
+ * <li>-Djournal.partitions=1</li>
+ * <li>-Djournal.recover=false</li>
+ * <li>-Djournal.snapshotIntervalMs=60000</li>
+ * <li>-Djournal.sync=None</li>
+ * <li>-Djournal.syncIntervalMs=10</li>
  * <li>-Dserver.isSingleThreadedEventLoop=false</li>
+ * <li>-Dserver.namespaces=alpha:4001,beta</li>
  * </ul>
  * Options for the ring-buffer <a href="https://github.com/LMAX-Exchange/disruptor/wiki/Getting-Started#alternative-wait-strategies">
  * wait-strategy</a> are,
@@ -46,6 +94,28 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * <li>Busy</li>
  * <li>Block</li>
  * </ul>
+ * Options for the duplicate filter are,
+ * <ul>
+ * <li>ByteBuffer (default), which filters on the journal consumer thread</li>
+ * <li>ByteArray, which filters on the journal consumer thread</li>
+ * <li>Concurrent, which filters on the event-loop threads, so only unique numbers are queued to the journal</li>
+ * <li>Hash, which is used automatically when there are more keys than nine digits can hold</li>
+ * <li>Windowed, which only filters numbers seen within the last few rotation intervals</li>
+ * </ul>
+ * Options for the transport are Auto (default), Epoll and Nio, where Auto and Epoll use the native epoll transport
+ * when it is available (Linux), and otherwise fall back to Nio. With the epoll transport, more than one acceptor
+ * thread will bind that many listening sockets to the same port with {@code SO_REUSEPORT}, each on its own
+ * event-loop, so that the kernel load-balances new connections across them.
+ * <p>
+ * When there is more than one journal partition, each partition has its own ring-buffer, consumer thread and filter
+ * slice, and writes to its own {@code numbers-N.log} segment file rather than {@code numbers.log}.
+ * </p>
+ * <p>
+ * Each namespace, such as a tenant, has its own filter, statistics and journal files, in a sub-directory of the journal
+ * directory that is named after the namespace. A client's namespace is selected by the port that it connects to, or by
+ * a handshake line (see {@link ProtocolDetectionHandler}), and clients that do neither use the default namespace, whose
+ * journal files are in the journal directory itself. Namespaces share the event-loop and journal consumer threads.
+ * </p>
  */
 public class DigitsServer {
     private static final Logger LOGGER = LoggerFactory.getLogger(DigitsServer.class);
@@ -55,11 +125,27 @@ public class DigitsServer {
      */
     private static final int PORT;
 
+    /**
+     * Netty transport, which is native epoll by default when available
+     */
+    private static final ServerTransport TRANSPORT;
+
+    /**
+     * Number of listening sockets bound with {@code SO_REUSEPORT}, each with its own acceptor thread ({@code 1} by
+     * default)
+     */
+    private static final int ACCEPTOR_COUNT;
+
     /**
      * Number of threads used to concurrently process client connections
      */
     private static final int WORKER_THREAD_COUNT = 5;
 
+    /**
+     * Seconds to wait on shutdown for worker threads to terminate, after which filters are left open
+     */
+    private static final long WORKER_TERMINATION_TIMEOUT_SECONDS = 30;
+
     /**
      * Maximum number of nine-digit messages to queue.
      */
@@ -81,43 +167,146 @@ public class DigitsServer {
      */
     private static final String RING_BUFFER_WAIT_STRATEGY;
 
+    /**
+     * Duplicate filter implementation, or {@code null} to use default (ByteBuffer).
+     */
+    private static final String DIGITS_FILTER;
+
+    /**
+     * Codec for keys with the configured number of digits ({@code 9} by default)
+     */
+    private static final DigitsKeyCodec KEY_CODEC;
+
+    /**
+     * When {@code true}, existing journal files are replayed into the duplicate filter and appended to, rather than
+     * deleted ({@code false} by default)
+     */
+    private static final boolean RECOVER_JOURNAL;
+
+    /**
+     * Minimum milliseconds between snapshots of the duplicate filter, when recovery is enabled, or {@code 0} to not
+     * save snapshots ({@code 60000} by default)
+     */
+    private static final long SNAPSHOT_INTERVAL_MS;
+
+    /**
+     * Milliseconds between forcing dirty pages of a Mapped filter's bitset file to disk, or {@code 0} to leave that to
+     * the operating system ({@code 1000} by default)
+     */
+    private static final long FILTER_MSYNC_INTERVAL_MS;
+
+    /**
+     * Number of bitset generations of a Windowed filter ({@code 4} by default)
+     */
+    private static final int WINDOW_GENERATIONS;
+
+    /**
+     * Milliseconds between rotations of a Windowed filter's generations ({@code 60000} by default)
+     */
+    private static final long WINDOW_ROTATION_MS;
+
+    /**
+     * Policy for forcing journal file writes to disk, which is none by default
+     */
+    private static final JournalSyncPolicy JOURNAL_SYNC_POLICY;
+
+    /**
+     * Number of journal partitions, each with its own consumer thread and segment file ({@code 1} by default)
+     */
+    private static final int JOURNAL_PARTITION_COUNT;
+
     /**
      * When {@code true}, Netty event-loop will be single-threaded ({@code false} by default)
      */
     private static final boolean SINGLE_THREADED_EVENT_LOOP;
 
+    /**
+     * Name of the namespace of clients that connect to the server port without a handshake
+     */
+    private static final String DEFAULT_NAMESPACE = "default";
+
+    /**
+     * Valid namespace names, which are also journal sub-directory names
+     */
+    private static final Pattern NAMESPACE_NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+
+    /**
+     * Namespaces in addition to the default namespace, in configured order, mapped to their own listen ports or
+     * {@code null} if they are only selected by a handshake (none by default)
+     */
+    private static final Map<String, Integer> NAMESPACES;
+
     static {
         // load runtime properties set as JVM arguments, or fallback to defaults
         PORT = NumberUtils.toInt(System.getProperty("server.port"), 4000);
 
+        TRANSPORT = ServerTransport.select(StringUtils.trimToNull(System.getProperty("server.transport")));
+
+        ACCEPTOR_COUNT = Math.max(1, NumberUtils.toInt(System.getProperty("server.acceptorCount"), 1));
+
         JOURNAL_FILE_DIRECTORY = StringUtils.defaultString(StringUtils.trimToNull(System.getProperty("journal.directory")),
                 System.getProperty("java.io.tmpdir"));
 
         RING_BUFFER_WAIT_STRATEGY = StringUtils.trimToNull(System.getProperty("journal.waitStrategy"));
 
+        DIGITS_FILTER = StringUtils.trimToNull(System.getProperty("journal.filter"));
+
+        KEY_CODEC = DigitsKeyCodec.forDigitCount(NumberUtils.toInt(System.getProperty("journal.keyDigits"),
+                DigitsLineCodec.DIGIT_COUNT));
+
+        RECOVER_JOURNAL = BooleanUtils.toBoolean(System.getProperty("journal.recover"));
+
+        SNAPSHOT_INTERVAL_MS = NumberUtils.toLong(System.getProperty("journal.snapshotIntervalMs"), 60000);
+
+        FILTER_MSYNC_INTERVAL_MS = NumberUtils.toLong(System.getProperty("journal.filterMsyncIntervalMs"), 1000);
+
+        WINDOW_GENERATIONS = NumberUtils.toInt(System.getProperty("journal.windowGenerations"), 4);
+
+        WINDOW_ROTATION_MS = NumberUtils.toLong(System.getProperty("journal.windowRotationMs"), 60000);
+
+        JOURNAL_SYNC_POLICY = JournalSyncPolicy.select(StringUtils.trimToNull(System.getProperty("journal.sync")),
+                NumberUtils.toLong(System.getProperty("journal.syncIntervalMs"), 10));
+
+        JOURNAL_PARTITION_COUNT = Math.max(1, NumberUtils.toInt(System.getProperty("journal.partitions"), 1));
+
         SINGLE_THREADED_EVENT_LOOP = BooleanUtils.toBoolean(System.getProperty("server.isSingleThreadedEventLoop"));
+
+        NAMESPACES = parseNamespaces(StringUtils.trimToNull(System.getProperty("server.namespaces")), PORT);
     }
 
     private AtomicBoolean shutdownFlag = new AtomicBoolean();
     private EventLoopGroup acceptorGroup;
     private EventLoopGroup workerGroup;
     private DigitsJournal journal;
+    private final List<RingBufferDigitsJournal> journalLanes = new ArrayList<>();
+    private final List<StatisticsPrinter> namespaceStatisticsPrinters = new ArrayList<>();
+    private final List<Closeable> closeableFilters = new ArrayList<>();
     protected StatisticsPrinter statisticsPrinter;
 
     /**
      * Runs the server event-loop.
      */
     public void run() {
-        LOGGER.info("Starting server on port {} with {} threaded event-loop", PORT,
-                SINGLE_THREADED_EVENT_LOOP ? "single" : "multi");
+        LOGGER.info("Starting server on port {} with {} threaded {} event-loop, for keys of {}", PORT,
+                SINGLE_THREADED_EVENT_LOOP ? "single" : "multi", TRANSPORT, KEY_CODEC);
 
+        // initialize server bootstrap
+        final ServerBootstrap bootstrap = new ServerBootstrap();
+        int acceptorCount = 1;
         if (SINGLE_THREADED_EVENT_LOOP) {
             // single thread will accept and select socket data
-            acceptorGroup = workerGroup = new NioEventLoopGroup(1);
+            acceptorGroup = workerGroup = TRANSPORT.newEventLoopGroup(1);
         } else {
+            if (ACCEPTOR_COUNT > 1) {
+                if (TRANSPORT.enableReusePort(bootstrap)) {
+                    acceptorCount = ACCEPTOR_COUNT;
+                } else {
+                    LOGGER.warn("SO_REUSEPORT is not supported by {} transport, so using a single acceptor", TRANSPORT);
+                }
+            }
             // (default) use one thread to accept and multiple threads to select socket data concurrently
-            acceptorGroup = new NioEventLoopGroup(1);
-            workerGroup = new NioEventLoopGroup(WORKER_THREAD_COUNT);
+            acceptorGroup = TRANSPORT.newEventLoopGroup(acceptorCount);
+            workerGroup = TRANSPORT.newEventLoopGroup(WORKER_THREAD_COUNT);
         }
         statisticsPrinter = new StatisticsPrinter();
 
@@ -125,22 +314,123 @@ public class DigitsServer {
         Runtime.getRuntime().addShutdownHook(new Thread(this::shutdownGracefully, "shutdownHook"));
 
         try {
+            // the default namespace is followed by the configured namespaces, which each print their own statistics
+            final int namespaceCount = NAMESPACES.size() + 1;
+            final String[] namespaceNames = new String[namespaceCount];
+            final Path[] namespaceDirectories = new Path[namespaceCount];
+            final StatisticsPrinter[] namespacePrinters = new StatisticsPrinter[namespaceCount];
+            namespaceNames[0] = DEFAULT_NAMESPACE;
+            namespaceDirectories[0] = Paths.get(JOURNAL_FILE_DIRECTORY);
+            namespacePrinters[0] = statisticsPrinter;
+            int n = 1;
+            for (final String namespace : NAMESPACES.keySet()) {
+                namespaceNames[n] = namespace;
+                namespaceDirectories[n] = Files.createDirectories(Paths.get(JOURNAL_FILE_DIRECTORY, namespace));
+                namespacePrinters[n] = new StatisticsPrinter(namespace);
+                ++n;
+            }
+            namespaceStatisticsPrinters.addAll(Arrays.asList(namespacePrinters));
+
             // start printing statistics
-            statisticsPrinter.startAsync();
+            for (final StatisticsPrinter namespacePrinter : namespacePrinters) {
+                namespacePrinter.startAsync();
+            }
 
-            // delete journal file if it already exists
-            final Path journalPath = Paths.get(JOURNAL_FILE_DIRECTORY, JOURNAL_FILE_NAME);
-            Files.deleteIfExists(journalPath);
-            LOGGER.info("Created journal file at {}", journalPath.toString());
+            // a concurrent filter is applied by the event-loop threads, so the journal consumers do not filter
+            boolean isConcurrentFilter = "Concurrent".equalsIgnoreCase(DIGITS_FILTER);
+            if (isConcurrentFilter && KEY_CODEC.keyCount() > DigitsFilter.VALUE_COUNT) {
+                LOGGER.warn("Concurrent filter does not support {} keys, so filtering on the journal consumers",
+                        KEY_CODEC);
+                isConcurrentFilter = false;
+            }
+            final DigitsFilter[] concurrentFilters = new DigitsFilter[namespaceCount];
+            if (isConcurrentFilter) {
+                for (int namespace = 0; namespace < namespaceCount; ++namespace) {
+                    concurrentFilters[namespace] = createDigitsFilter(DIGITS_FILTER, KEY_CODEC.keyCount(),
+                            namespaceDirectories[namespace].resolve(JOURNAL_FILE_NAME));
+                }
+            }
 
-            //journal = new ArrayBlockingQueueDigitsJournal(MAX_DIGITS_QUEUE_SIZE, statisticsPrinter, journalPath.toFile());
-            journal = new RingBufferDigitsJournal(MAX_DIGITS_QUEUE_SIZE, RING_BUFFER_WAIT_STRATEGY,
-                    SINGLE_THREADED_EVENT_LOOP, statisticsPrinter, journalPath.toFile());
+            // each partition filters its own slice of values, and writes its own segment file, and has one ring-buffer
+            // and consumer thread that is shared by every namespace
+            final long partitionValueCount = PartitionDigitsFilter.valueCount(KEY_CODEC.keyCount(),
+                    JOURNAL_PARTITION_COUNT);
+            final DigitsFilter[][] sliceFilters = new DigitsFilter[namespaceCount][JOURNAL_PARTITION_COUNT];
+            final MappedJournalWriter[][] namespaceWriters =
+                    new MappedJournalWriter[namespaceCount][JOURNAL_PARTITION_COUNT];
+            for (int i = 0; i < JOURNAL_PARTITION_COUNT; ++i) {
+                final String fileName = JOURNAL_PARTITION_COUNT == 1 ? JOURNAL_FILE_NAME : "numbers-" + i + ".log";
+                final DigitsFilter[] consumerFilters = new DigitsFilter[namespaceCount];
+                final MappedJournalWriter[] journalWriters = new MappedJournalWriter[namespaceCount];
+                for (int namespace = 0; namespace < namespaceCount; ++namespace) {
+                    final Path journalPath = namespaceDirectories[namespace].resolve(fileName);
+                    if (isConcurrentFilter) {
+                        journalWriters[namespace] = createJournalWriter(journalPath, concurrentFilters[namespace],
+                                null, 1, namespacePrinters[namespace]);
+                    } else {
+                        final DigitsFilter sliceFilter = createDigitsFilter(DIGITS_FILTER,
+                                JOURNAL_PARTITION_COUNT == 1 ? KEY_CODEC.keyCount() : partitionValueCount,
+                                journalPath);
+                        sliceFilters[namespace][i] = sliceFilter;
+                        consumerFilters[namespace] = JOURNAL_PARTITION_COUNT == 1 ? sliceFilter
+                                : new PartitionDigitsFilter(sliceFilter, JOURNAL_PARTITION_COUNT);
+                        journalWriters[namespace] = createJournalWriter(journalPath, consumerFilters[namespace],
+                                sliceFilter, JOURNAL_PARTITION_COUNT, namespacePrinters[namespace]);
+                    }
+                    namespaceWriters[namespace][i] = journalWriters[namespace];
+                }
+                //journalLanes.add(new ArrayBlockingQueueDigitsJournal(MAX_DIGITS_QUEUE_SIZE, consumerFilters[0],
+                //        statisticsPrinter, journalWriters[0]));
+                journalLanes.add(new RingBufferDigitsJournal(MAX_DIGITS_QUEUE_SIZE, RING_BUFFER_WAIT_STRATEGY,
+                        SINGLE_THREADED_EVENT_LOOP, consumerFilters, namespacePrinters, journalWriters));
+            }
 
-            // initialize server and bind to port
-            final ServerBootstrap bootstrap = new ServerBootstrap();
+            // each namespace writes to its own journal files through the shared ring-buffers
+            final Map<String, DigitsNamespace> namespaces = new HashMap<>();
+            for (int namespace = 0; namespace < namespaceCount; ++namespace) {
+                DigitsJournal namespaceJournal;
+                if (JOURNAL_PARTITION_COUNT == 1) {
+                    namespaceJournal = journalLanes.get(0).namespace(namespace);
+                } else {
+                    final DigitsJournal[] partitions = new DigitsJournal[JOURNAL_PARTITION_COUNT];
+                    for (int i = 0; i < partitions.length; ++i) {
+                        partitions[i] = journalLanes.get(i).namespace(namespace);
+                    }
+                    namespaceJournal = new PartitionedDigitsJournal(partitions);
+                }
+                if (isConcurrentFilter) {
+                    namespaceJournal = new FilteringDigitsJournal(namespaceJournal, concurrentFilters[namespace],
+                            namespacePrinters[namespace]);
+                }
+                DigitsQuery query = isConcurrentFilter ? createDigitsQuery(concurrentFilters[namespace])
+                        : createDigitsQuery(sliceFilters[namespace]);
+                if (query != null) {
+                    // journal files hold exactly the unique values, so count queries never scan the whole filter
+                    final MappedJournalWriter[] writers = namespaceWriters[namespace];
+                    query = new UniqueCountDigitsQuery(query, () -> {
+                        long lineCount = 0;
+                        for (final MappedJournalWriter writer : writers) {
+                            lineCount += writer.lineCount();
+                        }
+                        return lineCount;
+                    });
+                }
+                namespaces.put(namespaceNames[namespace], new DigitsNamespace(namespaceJournal, query));
+            }
+            journal = namespaces.get(DEFAULT_NAMESPACE).getJournal();
+
+            // the port that a client connects to selects its namespace, unless the client sends a handshake
+            final Map<Integer, DigitsNamespace> portNamespaces = new LinkedHashMap<>();
+            portNamespaces.put(PORT, namespaces.get(DEFAULT_NAMESPACE));
+            for (final Map.Entry<String, Integer> namespacePort : NAMESPACES.entrySet()) {
+                if (namespacePort.getValue() != null) {
+                    portNamespaces.put(namespacePort.getValue(), namespaces.get(namespacePort.getKey()));
+                }
+            }
+
+            // bind to ports
             bootstrap.group(acceptorGroup, workerGroup);
-            bootstrap.channel(NioServerSocketChannel.class);
+            bootstrap.channel(TRANSPORT.serverChannelClass());
             bootstrap.childOption(ChannelOption.SO_SNDBUF, 16 * 1024);
             bootstrap.childOption(ChannelOption.SO_RCVBUF, 16 * 1024);
             bootstrap.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
@@ -148,17 +438,194 @@ public class DigitsServer {
             bootstrap.childHandler(new ChannelInitializer<SocketChannel>() {
                 @Override
                 public void initChannel(final SocketChannel ch) throws Exception {
-                    // processes messages
-                    ch.pipeline().addLast(new DigitsServerMessageHandler(journal));
+                    // detects text or binary protocol, and then replaces itself with a handler that processes messages
+                    ch.pipeline().addLast(new ProtocolDetectionHandler(portNamespaces.get(ch.localAddress().getPort()),
+                            KEY_CODEC, namespaces));
                 }
             });
-            bootstrap.bind(PORT).sync().channel().closeFuture().sync();
+
+            // each bind registers a listening socket on the next acceptor event-loop
+            final List<Channel> serverChannels = new ArrayList<>();
+            for (final int port : portNamespaces.keySet()) {
+                for (int i = 0; i < acceptorCount; ++i) {
+                    serverChannels.add(bootstrap.bind(port).sync().channel());
+                }
+            }
+            for (final Channel serverChannel : serverChannels) {
+                serverChannel.closeFuture().sync();
+            }
         } catch (Exception e) {
             LOGGER.error("Unable to start server", e);
             shutdownGracefully();
         }
     }
 
+    /**
+     * Creates a new journal writer. When recovery is enabled, the filter is loaded from a snapshot, if there is
+     * one, and the rest of an existing journal file is replayed into the filter and then appended to, or if the
+     * filter is a persistent {@link MappedFileDigitsFilter} that was closed cleanly, or a {@link WindowedDigitsFilter},
+     * the journal file is appended to without replaying it. Otherwise, an existing journal file and its snapshot are
+     * deleted.
+     *
+     * @param journalPath       journal file path, within a namespace's journal directory
+     * @param digitsFilter      filter for values in this journal file
+     * @param snapshotFilter    the underlying filter state of {@code digitsFilter}, which is saved in snapshots or is
+     *                          persistent, or {@code null} if the filter is shared with other journals
+     * @param valueStride       number of values per filter index (see {@link JournalRecovery})
+     * @param statisticsPrinter statistics printer of the namespace
+     * @return new {@code MappedJournalWriter} instance
+     * @throws IOException unable to recover or delete an existing journal file
+     */
+    private MappedJournalWriter createJournalWriter(final Path journalPath, final DigitsFilter digitsFilter,
+                                                    final DigitsFilter snapshotFilter, final int valueStride,
+                                                    final StatisticsPrinter statisticsPrinter) throws IOException {
+        final Path snapshotPath = Paths.get(journalPath + ".snapshot");
+        final FilterSnapshotter snapshotter = RECOVER_JOURNAL && SNAPSHOT_INTERVAL_MS > 0
+                && snapshotFilter instanceof SnapshotDigitsFilter ? new FilterSnapshotter(snapshotPath.toFile(),
+                (SnapshotDigitsFilter) snapshotFilter, SNAPSHOT_INTERVAL_MS) : null;
+
+        long offset = 0;
+        final boolean isPersistentFilterCurrent = snapshotFilter instanceof MappedFileDigitsFilter
+                && !((MappedFileDigitsFilter) snapshotFilter).isCleared();
+        if (RECOVER_JOURNAL && Files.exists(journalPath) && (isPersistentFilterCurrent
+                || snapshotFilter instanceof WindowedDigitsFilter)) {
+            // persistent filter is already up to date, and journal lines have no times to replay into a window
+            offset = JournalRecovery.linesLength(journalPath.toFile(), KEY_CODEC);
+            LOGGER.info("Appending to journal file at {} with sync policy {}", journalPath.toString(),
+                    JOURNAL_SYNC_POLICY);
+        } else if (RECOVER_JOURNAL && Files.exists(journalPath)) {
+            final long snapshotOffset = snapshotter != null
+                    ? FilterSnapshotter.load(snapshotPath.toFile(), (SnapshotDigitsFilter) snapshotFilter) : 0;
+            // a hash filter can not be populated concurrently in stripes, unlike bitsets
+            final int threadCount = snapshotFilter instanceof HashDigitsFilter ? 1
+                    : Runtime.getRuntime().availableProcessors();
+            offset = JournalRecovery.recover(journalPath.toFile(), KEY_CODEC, digitsFilter, valueStride, threadCount,
+                    snapshotOffset);
+            LOGGER.info("Appending to journal file at {} with sync policy {}", journalPath.toString(),
+                    JOURNAL_SYNC_POLICY);
+        } else {
+            Files.deleteIfExists(journalPath);
+            Files.deleteIfExists(snapshotPath);
+            LOGGER.info("Created journal file at {} with sync policy {}", journalPath.toString(), JOURNAL_SYNC_POLICY);
+        }
+        return new MappedJournalWriter(journalPath.toFile(), offset, KEY_CODEC, JOURNAL_SYNC_POLICY, snapshotter,
+                statisticsPrinter);
+    }
+
+    /**
+     * Creates the queries of a namespace's filter, from the filter slices of its partitions.
+     *
+     * @param sliceFilters filter slice of each partition, in partition order
+     * @return queries of the filter, or {@code null} if any of the slices does not support queries
+     */
+    private static DigitsQuery createDigitsQuery(final DigitsFilter... sliceFilters) {
+        final DigitsQuery[] sliceQueries = new DigitsQuery[sliceFilters.length];
+        for (int i = 0; i < sliceFilters.length; ++i) {
+            if (!(sliceFilters[i] instanceof DigitsQuery)) {
+                return null;
+            }
+            sliceQueries[i] = (DigitsQuery) sliceFilters[i];
+        }
+        return sliceQueries.length == 1 ? sliceQueries[0] : new PartitionedDigitsQuery(sliceQueries);
+    }
+
+    /**
+     * Creates a new {@code DigitsFilter} instance, based on the given supported values,
+     * <ul>
+     * <li>ByteBuffer (default)</li>
+     * <li>ByteArray</li>
+     * <li>Concurrent</li>
+     * <li>Mapped</li>
+     * <li>Paged</li>
+     * <li>Roaring</li>
+     * <li>LongArray</li>
+     * <li>Hash</li>
+     * <li>Windowed</li>
+     * </ul>
+     * Bitset filters are only used for up to {@link DigitsFilter#VALUE_COUNT} values, which is a 119 MB bitset, and
+     * a Hash filter is used for more values, such as keys with more than nine digits.
+     *
+     * @param digitsFilter    filter implementation name
+     * @param valueCount      number of values the filter can track
+     * @param journalPath     path of the journal file that the filter is used for, which also names the bitset file
+     *                        of a Mapped filter
+     * @return new {@code DigitsFilter} instance
+     * @throws IOException unable to create a Mapped filter's bitset file
+     */
+    private DigitsFilter createDigitsFilter(final String digitsFilter, final long valueCount,
+                                            final Path journalPath) throws IOException {
+        if ("Hash".equalsIgnoreCase(digitsFilter) || valueCount > DigitsFilter.VALUE_COUNT) {
+            if (digitsFilter != null && !"Hash".equalsIgnoreCase(digitsFilter)) {
+                LOGGER.warn("{} filter does not support {} values, so using a Hash filter", digitsFilter, valueCount);
+            }
+            return new HashDigitsFilter(valueCount);
+        }
+        final int bitsetValueCount = (int) valueCount;
+        if ("Mapped".equalsIgnoreCase(digitsFilter)) {
+            final Path bitsetPath = Paths.get(journalPath + ".bitset");
+            if (!RECOVER_JOURNAL || !Files.exists(journalPath)) {
+                // bitset only survives restarts along with its journal
+                Files.deleteIfExists(bitsetPath);
+            }
+            final MappedFileDigitsFilter mappedFilter = new MappedFileDigitsFilter(bitsetPath.toFile(),
+                    bitsetValueCount, FILTER_MSYNC_INTERVAL_MS);
+            closeableFilters.add(mappedFilter);
+            return mappedFilter;
+        } else if ("Windowed".equalsIgnoreCase(digitsFilter)) {
+            final WindowedDigitsFilter windowedFilter = new WindowedDigitsFilter(bitsetValueCount, WINDOW_GENERATIONS,
+                    WINDOW_ROTATION_MS);
+            closeableFilters.add(windowedFilter);
+            return windowedFilter;
+        } else if ("Paged".equalsIgnoreCase(digitsFilter)) {
+            return new PagedDigitsFilter(bitsetValueCount);
+        } else if ("Roaring".equalsIgnoreCase(digitsFilter)) {
+            return new RoaringDigitsFilter(bitsetValueCount);
+        } else if ("LongArray".equalsIgnoreCase(digitsFilter)) {
+            return new LongArrayDigitsFilter(bitsetValueCount);
+        } else if ("ByteArray".equalsIgnoreCase(digitsFilter)) {
+            return new ByteArrayDigitsFilter(bitsetValueCount);
+        } else if ("Concurrent".equalsIgnoreCase(digitsFilter)) {
+            return new AtomicBitSetDigitsFilter(bitsetValueCount);
+        }
+        // default (off-heap memory)
+        return new ByteBufferDigitsFilter(bitsetValueCount);
+    }
+
+    /**
+     * Parses a comma separated list of namespaces, where each namespace is a name that is optionally followed by a
+     * colon and its own listen port, such as {@code alpha:4001,beta}.
+     *
+     * @param namespaces namespaces list, or {@code null} for none
+     * @param serverPort listen port of the default namespace, which other namespaces cannot listen on
+     * @return namespaces mapped to their listen ports, or to {@code null} if they have none, in list order
+     * @throws IllegalArgumentException if a namespace is invalid or repeated, a listen port is repeated or is the
+     *                                  server port, or there are too many namespaces
+     */
+    static Map<String, Integer> parseNamespaces(final String namespaces, final int serverPort) {
+        if (namespaces == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Integer> namespacePorts = new LinkedHashMap<>();
+        for (final String namespace : StringUtils.split(namespaces, ',')) {
+            final String name = StringUtils.trim(StringUtils.substringBefore(namespace, ":"));
+            final String port = StringUtils.trimToNull(StringUtils.substringAfter(namespace, ":"));
+            if (!NAMESPACE_NAME_PATTERN.matcher(name).matches() || DEFAULT_NAMESPACE.equals(name)
+                    || namespacePorts.containsKey(name) || (port != null && !NumberUtils.isDigits(port))) {
+                throw new IllegalArgumentException("Invalid namespace: " + namespace);
+            }
+            final Integer portNumber = port == null ? null : Integer.valueOf(port);
+            if (portNumber != null && (portNumber == serverPort || namespacePorts.containsValue(portNumber))) {
+                throw new IllegalArgumentException("Namespace port is already in use: " + namespace);
+            }
+            namespacePorts.put(name, portNumber);
+        }
+        if (namespacePorts.size() >= RingBufferDigitsJournal.MAX_NAMESPACES) {
+            throw new IllegalArgumentException("At most " + (RingBufferDigitsJournal.MAX_NAMESPACES - 1)
+                    + " namespaces can be added to the default namespace");
+        }
+        return namespacePorts;
+    }
+
     /**
      * Starts {@code DigitsServer} from command-line.
      *
@@ -176,11 +643,30 @@ public class DigitsServer {
     public void shutdownGracefully() {
         if (shutdownFlag.compareAndSet(false, true)) {
             acceptorGroup.shutdownGracefully();
-            workerGroup.shutdownGracefully();
-            if (journal != null) {
-                journal.shutdown();
+            // waits here rather than in a listener, because listeners run on a daemon thread that the shutdown-hook
+            // does not wait for
+            final boolean isWorkerGroupTerminated = workerGroup.shutdownGracefully()
+                    .awaitUninterruptibly(WORKER_TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            // namespace journals share the ring-buffers, which are shut down instead
+            for (final RingBufferDigitsJournal journalLane : journalLanes) {
+                journalLane.shutdown();
+            }
+            if (isWorkerGroupTerminated) {
+                // queries read mapped filters from the event-loops, so they are only unmapped once none is running
+                for (final Closeable closeableFilter : closeableFilters) {
+                    try {
+                        closeableFilter.close();
+                    } catch (IOException e) {
+                        LOGGER.error("Unable to close filter", e);
+                    }
+                }
+            } else if (!closeableFilters.isEmpty()) {
+                LOGGER.warn("Worker threads did not terminate, so filters are left open, and will be rebuilt from the "
+                        + "journals on restart");
+            }
+            for (final StatisticsPrinter namespacePrinter : namespaceStatisticsPrinters) {
+                namespacePrinter.stopAsync();
             }
-            statisticsPrinter.stopAsync();
         }
     }
 }
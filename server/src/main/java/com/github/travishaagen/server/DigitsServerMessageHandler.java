@@ -1,8 +1,8 @@
 package com.github.travishaagen.server;
 
+import com.github.travishaagen.server.filter.DigitsQuery;
 import com.github.travishaagen.server.journal.DigitsJournal;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufProcessor;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
@@ -14,6 +14,25 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Server-side handler for <em>digits</em> messages.
+ * <p>
+ * Clients can also send query lines, between digits lines, which are answered from the filter of unique numbers
+ * seen so far:
+ * </p>
+ * <ul>
+ * <li>{@code ?<number>} answers {@code 1} if the number has been seen, and {@code 0} otherwise</li>
+ * <li>{@code count} answers the number of unique numbers seen</li>
+ * <li>{@code range <first> <last>} answers the number of unique numbers seen from first to last, inclusive, for at
+ * most {@link #MAX_QUERY_RANGE} numbers</li>
+ * </ul>
+ * <p>
+ * Each answer is a decimal number followed by a newline, or {@code unsupported} when the filter cannot be queried.
+ * Queries can be pipelined, and the answers to all queries in the bytes read at once are sent as one write, which is
+ * flushed when reading completes. Answers are read from the live filter, so numbers sent just before a query may not
+ * be included yet.
+ * </p>
+ * <p>
+ * In ack mode, numbers are acknowledged once the journal has committed them (see {@link JournalAcknowledger}).
+ * </p>
  */
 public class DigitsServerMessageHandler extends ChannelInboundHandlerAdapter {
     private static final Logger LOGGER = LoggerFactory.getLogger(DigitsServerMessageHandler.class);
@@ -23,48 +42,152 @@ public class DigitsServerMessageHandler extends ChannelInboundHandlerAdapter {
      * Exception thrown when a client requests that the server be completely shutdown. This object is pre-allocated
      * for maximum speed.
      */
-    private static final TerminateServerException TERMINATE_SERVER_EXCEPTION = new TerminateServerException();
+    static final TerminateServerException TERMINATE_SERVER_EXCEPTION = new TerminateServerException();
 
     /**
      * Exception thrown when a client sends an invalid message and should be disconnected. This object is pre-allocated
      * for maximum speed.
      */
-    private static final InvalidMessageException INVALID_MESSAGE_EXCEPTION = new InvalidMessageException();
+    static final InvalidMessageException INVALID_MESSAGE_EXCEPTION = new InvalidMessageException();
 
     static {
         TERMINATE_SERVER_EXCEPTION.setStackTrace(new StackTraceElement[0]);
         INVALID_MESSAGE_EXCEPTION.setStackTrace(new StackTraceElement[0]);
     }
 
-    private static final byte ZERO_CHAR_BYTE = '\u0030';
-    private static final byte NINE_CHAR_BYTE = '\u0039';
-    private static final byte NEWLINE_CHAR_BYTE = '\n';
     private static final byte[] TERMINATE_BYTES = ("terminate\n").getBytes(CharsetUtil.UTF_8);
-    private static final int MESSAGE_DIGIT_COUNT = 9;
-    public static final int MESSAGE_LINE_LENGTH = MESSAGE_DIGIT_COUNT + 1;
+
+    private static final byte[] COUNT_BYTES = "count".getBytes(CharsetUtil.UTF_8);
+    private static final byte[] RANGE_BYTES = "range ".getBytes(CharsetUtil.UTF_8);
+    private static final byte[] UNSUPPORTED_BYTES = "unsupported\n".getBytes(CharsetUtil.UTF_8);
+
+    /**
+     * Maximum length of a query line, including its newline
+     */
+    static final int MAX_QUERY_LINE_LENGTH = 64;
+
+    /**
+     * Maximum number of digits in a query's number, so that it fits in a {@code long}
+     */
+    private static final int MAX_QUERY_DIGITS = 18;
+
+    /**
+     * Maximum number of numbers that a range query can count, which bounds the time that the event-loop thread spends
+     * counting a range to that of a 2 MB slice of a bitset filter
+     */
+    static final long MAX_QUERY_RANGE = 1L << 24;
+
+    /**
+     * Initial capacity of the buffer of answers to queries
+     */
+    private static final int RESPONSES_CAPACITY = 256;
+
+    /**
+     * Maximum number of digits-messages to write to the journal in one batch
+     */
+    static final int MAX_BATCH_SIZE = 1024;
 
     /**
      * Thread-safe journal for writing unique digits messages to a file
      */
     private final DigitsJournal journal;
 
+    /**
+     * Codec for the digits of each line
+     */
+    private final DigitsKeyCodec keyCodec;
+
+    /**
+     * Number of bytes in each line, including the newline character
+     */
+    private final int lineLength;
+
     /**
      * Buffer for incomplete message frames, which we reuse while this channel is open
      */
-    private ByteBuf singleFrameBuf = Unpooled.buffer(MESSAGE_LINE_LENGTH, MESSAGE_LINE_LENGTH);
+    private final ByteBuf singleFrameBuf;
 
     /**
-     * Processor for validating digit-messages, which we reuse while this channel is open
+     * Buffer of decoded digits-messages that are written to the journal as a batch, which we reuse while this
+     * channel is open
      */
-    final DigitLineProcessor digitLineProcessor = new DigitLineProcessor();
+    private final long[] batch = new long[MAX_BATCH_SIZE];
 
     /**
-     * Constructor
+     * Suspends reading from this channel while the journal is falling behind
+     */
+    private final JournalBackpressure backpressure;
+
+    /**
+     * Queries of the filter of unique numbers, or {@code null} if the filter does not support queries
+     */
+    private final DigitsQuery query;
+
+    /**
+     * Buffer for an incomplete query line, which we reuse while this channel is open
+     */
+    private final ByteBuf queryLineBuf = Unpooled.buffer(MAX_QUERY_LINE_LENGTH, MAX_QUERY_LINE_LENGTH);
+
+    /**
+     * Answers to queries that have not been written yet, which is allocated by the first query of each read
+     */
+    private ByteBuf responses;
+
+    /**
+     * Acknowledges committed numbers, or {@code null} if the client did not request acks
+     */
+    private final JournalAcknowledger acknowledger;
+
+    /**
+     * Constructor for nine-digit keys
      *
      * @param journal digits journal, for persisting unique digits to disk
      */
     public DigitsServerMessageHandler(final DigitsJournal journal) {
+        this(journal, NineDigitsKeyCodec.INSTANCE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param journal  digits journal, for persisting unique digits to disk
+     * @param keyCodec codec for the digits of each line
+     */
+    public DigitsServerMessageHandler(final DigitsJournal journal, final DigitsKeyCodec keyCodec) {
+        this(journal, keyCodec, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param journal  digits journal, for persisting unique digits to disk
+     * @param keyCodec codec for the digits of each line
+     * @param query    queries of the filter of unique numbers, or {@code null} if the filter does not support queries
+     */
+    public DigitsServerMessageHandler(final DigitsJournal journal, final DigitsKeyCodec keyCodec,
+                                      final DigitsQuery query) {
+        this(journal, keyCodec, query, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param journal   digits journal, for persisting unique digits to disk
+     * @param keyCodec  codec for the digits of each line
+     * @param query     queries of the filter of unique numbers, or {@code null} if the filter does not support
+     *                  queries
+     * @param isAckMode set to {@code true} to acknowledge numbers once the journal has committed them
+     * @throws UnsupportedOperationException if ack mode is requested and the journal does not track commits
+     */
+    public DigitsServerMessageHandler(final DigitsJournal journal, final DigitsKeyCodec keyCodec,
+                                      final DigitsQuery query, final boolean isAckMode) {
         this.journal = journal;
+        this.acknowledger = isAckMode ? new JournalAcknowledger(journal) : null;
+        this.query = query;
+        this.keyCodec = keyCodec;
+        this.lineLength = keyCodec.lineLength();
+        this.singleFrameBuf = Unpooled.buffer(lineLength, lineLength);
+        this.backpressure = new JournalBackpressure(journal);
     }
 
     @Override
@@ -72,12 +195,17 @@ public class DigitsServerMessageHandler extends ChannelInboundHandlerAdapter {
         try {
             final ByteBuf buf = (ByteBuf) msg;
             if (buf.readableBytes() != 0) {
-                if (singleFrameBuf.readableBytes() != 0) {
+                if (queryLineBuf.readableBytes() != 0) {
+                    // we previously had a partial query line, so now we fill in the rest of the line
+                    if (completeQueryLine(ctx, buf) && buf.readableBytes() != 0) {
+                        handleMessage(ctx, buf);
+                    }
+                } else if (singleFrameBuf.readableBytes() != 0) {
                     // we previously had a partial frame, so now we fill in the remaining bytes
                     int writeCount = Math.min(singleFrameBuf.writableBytes(), buf.readableBytes());
                     singleFrameBuf.writeBytes(buf, buf.readerIndex(), writeCount);
                     buf.skipBytes(writeCount);
-                    if (singleFrameBuf.readableBytes() == MESSAGE_LINE_LENGTH) {
+                    if (singleFrameBuf.readableBytes() == lineLength) {
                         // now the frame is full, so handle that message
                         handleMessage(ctx, singleFrameBuf);
                         if (buf.readableBytes() != 0) {
@@ -106,48 +234,270 @@ public class DigitsServerMessageHandler extends ChannelInboundHandlerAdapter {
      */
     protected void handleMessage(final ChannelHandlerContext ctx, final ByteBuf buf)
             throws TerminateServerException, InvalidMessageException {
-        // index of last matched character (may not have been a full line match)
-        int index;
-        while (buf.readableBytes() != 0) {
-            if (buf.readableBytes() < MESSAGE_LINE_LENGTH) {
+        while (true) {
+            // validate and decode all complete lines, handing them to the journal one batch at a time
+            int count = 0;
+            long value;
+            while (buf.readableBytes() >= lineLength) {
+                value = keyCodec.decode(buf, buf.readerIndex());
+                if (value == DigitsKeyCodec.INVALID_LINE) {
+                    break;
+                }
+                batch[count++] = value;
+                buf.skipBytes(lineLength);
+                if (count == batch.length) {
+                    writeBatch(count);
+                    count = 0;
+                }
+            }
+            if (count != 0) {
+                writeBatch(count);
+            }
+
+            if (buf.readableBytes() == 0) {
+                return;
+            }
+            if (isQueryLine(buf)) {
+                if (!handleQueryLine(ctx, buf)) {
+                    return;
+                }
+                // continue with the lines that follow the query
+                continue;
+            }
+
+            if (buf.readableBytes() < lineLength && !isTerminateLine(buf)) {
                 // could be an incomplete frame, so store the bytes
                 singleFrameBuf.clear();
                 singleFrameBuf.writeBytes(buf);
                 return;
             }
 
-            index = buf.forEachByte(digitLineProcessor);
-            if (index != -1 && index - buf.readerIndex() + 1 == MESSAGE_LINE_LENGTH) {
-                // valid digits-message, so write to the journal
-                journal.write(buf);
+            // invalid digits-message, so check for terminate-message
+            if (isTerminateLine(buf)) {
+                throw TERMINATE_SERVER_EXCEPTION;
+            } else {
+                throw INVALID_MESSAGE_EXCEPTION;
+            }
+        }
+    }
 
-                // skip over newline byte
-                buf.skipBytes(1);
+    private void writeBatch(final int count) {
+        journal.writeBatch(batch, count);
+        if (acknowledger != null) {
+            acknowledger.received(count);
+        }
+    }
 
-                // reset digit-line processor for next iteration
-                digitLineProcessor.reset();
-            } else {
-                // invalid digits-message, so check for terminate-message
-                index = buf.forEachByte(new TerminateLineProcessor());
-                if (index != -1 && index - buf.readerIndex() + 1 == TERMINATE_BYTES.length) {
-                    throw TERMINATE_SERVER_EXCEPTION;
-                } else {
-                    throw INVALID_MESSAGE_EXCEPTION;
-                }
+    /**
+     * Determines if the readable bytes start with a query line, by its first character, which is never a digit.
+     *
+     * @param buf message bytes, with at least one readable byte
+     * @return {@code true} if the bytes start with a query line, which may be incomplete
+     */
+    private static boolean isQueryLine(final ByteBuf buf) {
+        final byte first = buf.getByte(buf.readerIndex());
+        return first == '?' || first == COUNT_BYTES[0] || first == RANGE_BYTES[0];
+    }
+
+    /**
+     * Answers the query line at the start of the readable bytes, or stores the bytes if the line is incomplete.
+     *
+     * @param ctx channel context
+     * @param buf message bytes, which start with a query line
+     * @return {@code true} if a query was answered, or {@code false} if the line was incomplete and all readable bytes
+     * were stored
+     * @throws InvalidMessageException client sent an invalid query line
+     */
+    private boolean handleQueryLine(final ChannelHandlerContext ctx, final ByteBuf buf)
+            throws InvalidMessageException {
+        final int length = Math.min(buf.readableBytes(), MAX_QUERY_LINE_LENGTH);
+        final int newlineIndex = buf.indexOf(buf.readerIndex(), buf.readerIndex() + length, (byte) '\n');
+        if (newlineIndex == -1) {
+            if (buf.readableBytes() >= MAX_QUERY_LINE_LENGTH) {
+                throw INVALID_MESSAGE_EXCEPTION;
+            }
+            queryLineBuf.clear();
+            queryLineBuf.writeBytes(buf);
+            return false;
+        }
+        answerQuery(ctx, buf, buf.readerIndex(), newlineIndex);
+        buf.readerIndex(newlineIndex + 1);
+        return true;
+    }
+
+    /**
+     * Fills in the rest of a stored partial query line, and answers the query once the line is complete.
+     *
+     * @param ctx channel context
+     * @param buf message bytes, which continue the stored line
+     * @return {@code true} if the query was answered, or {@code false} if all readable bytes were stored and the line
+     * is still incomplete
+     * @throws InvalidMessageException client sent an invalid query line
+     */
+    private boolean completeQueryLine(final ChannelHandlerContext ctx, final ByteBuf buf)
+            throws InvalidMessageException {
+        final int length = Math.min(buf.readableBytes(), queryLineBuf.writableBytes());
+        final int newlineIndex = buf.indexOf(buf.readerIndex(), buf.readerIndex() + length, (byte) '\n');
+        if (newlineIndex == -1) {
+            if (buf.readableBytes() >= queryLineBuf.writableBytes()) {
+                throw INVALID_MESSAGE_EXCEPTION;
+            }
+            queryLineBuf.writeBytes(buf);
+            return false;
+        }
+        queryLineBuf.writeBytes(buf, buf.readerIndex(), newlineIndex - buf.readerIndex());
+        buf.readerIndex(newlineIndex + 1);
+        answerQuery(ctx, queryLineBuf, queryLineBuf.readerIndex(), queryLineBuf.writerIndex());
+        queryLineBuf.clear();
+        return true;
+    }
+
+    /**
+     * Parses a query line, and appends its answer to the responses that are written when reading completes.
+     *
+     * @param ctx   channel context
+     * @param buf   bytes of the query line
+     * @param start index of the first byte of the line
+     * @param end   index of the newline, or the end of the line without its newline
+     * @throws InvalidMessageException client sent an invalid query line
+     */
+    private void answerQuery(final ChannelHandlerContext ctx, final ByteBuf buf, final int start, final int end)
+            throws InvalidMessageException {
+        final long answer;
+        if (buf.getByte(start) == '?') {
+            final long value = parseNumber(buf, start + 1, end);
+            answer = query == null ? -1 : (query.contains(value) ? 1 : 0);
+        } else if (startsWith(buf, start, end, COUNT_BYTES) && end - start == COUNT_BYTES.length) {
+            answer = query == null ? -1 : query.count();
+        } else if (startsWith(buf, start, end, RANGE_BYTES)) {
+            final int firstStart = start + RANGE_BYTES.length;
+            final int separatorIndex = buf.indexOf(firstStart, end, (byte) ' ');
+            if (separatorIndex == -1) {
+                throw INVALID_MESSAGE_EXCEPTION;
+            }
+            final long first = parseNumber(buf, firstStart, separatorIndex);
+            final long last = parseNumber(buf, separatorIndex + 1, end);
+            if (last - first >= MAX_QUERY_RANGE) {
+                throw INVALID_MESSAGE_EXCEPTION;
+            }
+            // the range is inclusive, and last is at most 18 digits so last + 1 cannot overflow
+            answer = query == null ? -1 : query.countRange(first, last + 1);
+        } else {
+            throw INVALID_MESSAGE_EXCEPTION;
+        }
+
+        if (responses == null) {
+            responses = ctx.alloc().buffer(RESPONSES_CAPACITY);
+        }
+        if (answer < 0) {
+            responses.writeBytes(UNSUPPORTED_BYTES);
+        } else {
+            writeDecimal(responses, answer);
+        }
+    }
+
+    private static boolean startsWith(final ByteBuf buf, final int start, final int end, final byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; ++i) {
+            if (buf.getByte(start + i) != prefix[i]) {
+                return false;
             }
         }
+        return true;
+    }
+
+    /**
+     * Parses a number of one to {@link #MAX_QUERY_DIGITS} decimal digits.
+     *
+     * @param buf   bytes of the query line
+     * @param start index of the first digit
+     * @param end   index after the last digit
+     * @return the number
+     * @throws InvalidMessageException if the bytes are not a valid number
+     */
+    private static long parseNumber(final ByteBuf buf, final int start, final int end)
+            throws InvalidMessageException {
+        if (end <= start || end - start > MAX_QUERY_DIGITS) {
+            throw INVALID_MESSAGE_EXCEPTION;
+        }
+        long value = 0;
+        for (int i = start; i < end; ++i) {
+            final int digit = buf.getByte(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw INVALID_MESSAGE_EXCEPTION;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Writes a non-negative number in decimal, followed by a newline, without allocating a {@link String}.
+     *
+     * @param buf   buffer to write to
+     * @param value non-negative number
+     */
+    static void writeDecimal(final ByteBuf buf, final long value) {
+        int digitCount = 1;
+        for (long remaining = value / 10; remaining != 0; remaining /= 10) {
+            ++digitCount;
+        }
+        buf.ensureWritable(digitCount + 1);
+        final int start = buf.writerIndex();
+        long remaining = value;
+        for (int i = digitCount - 1; i >= 0; --i) {
+            buf.setByte(start + i, (int) ('0' + remaining % 10));
+            remaining /= 10;
+        }
+        buf.setByte(start + digitCount, '\n');
+        buf.writerIndex(start + digitCount + 1);
+    }
+
+    /**
+     * Determines if the readable bytes start with a terminate-message, which can be shorter than a digits line when
+     * keys have more than nine digits.
+     *
+     * @param buf message bytes
+     * @return {@code true} if the client requested server shutdown
+     */
+    private static boolean isTerminateLine(final ByteBuf buf) {
+        final int index = buf.forEachByte(new TerminateLineProcessor());
+        return index != -1 && index - buf.readerIndex() + 1 == TERMINATE_BYTES.length;
     }
 
     @Override
     public void channelReadComplete(final ChannelHandlerContext ctx) throws Exception {
+        if (responses != null) {
+            // answers to all of the queries of this read are written at once
+            ctx.write(responses);
+            responses = null;
+        }
+        if (acknowledger != null) {
+            acknowledger.afterRead(ctx);
+        }
+        backpressure.afterRead(ctx);
         ctx.flush();
     }
 
     @Override
     public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
+        handleException(ctx, cause);
+    }
+
+    /**
+     * Handles an exception thrown while processing a client channel's messages, which is shared by the text and binary
+     * message handlers.
+     *
+     * @param ctx   channel context
+     * @param cause exception
+     */
+    static void handleException(final ChannelHandlerContext ctx, final Throwable cause) {
         if (cause instanceof TerminateServerException) {
-            // trigger server shutdown-hook
-            System.exit(0);
+            // trigger server shutdown-hook from another thread, because it waits for this event-loop to terminate
+            new Thread(() -> System.exit(0), "terminate").start();
+            ctx.close();
         } else if (cause instanceof InvalidMessageException) {
             // client sent invalid message so disconnect
             ctx.close();
@@ -161,37 +511,10 @@ public class DigitsServerMessageHandler extends ChannelInboundHandlerAdapter {
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         super.channelInactive(ctx);
         singleFrameBuf.release();
-    }
-
-    /**
-     * Matches one line of nine digits followed by platform specific newline characters.
-     */
-    private static class DigitLineProcessor implements ByteBufProcessor {
-        /**
-         * Number of characters processed
-         */
-        private int charCount;
-
-        @Override
-        public boolean process(final byte value) throws Exception {
-            if (charCount < MESSAGE_DIGIT_COUNT) {
-                // still have digits to match
-                if (value >= ZERO_CHAR_BYTE && value <= NINE_CHAR_BYTE) {
-                    ++charCount;
-                    return true;
-                }
-            } else if (charCount < MESSAGE_LINE_LENGTH) {
-                // matched all digits, so if newline character matches, then return false to end matching at this index
-                return value != NEWLINE_CHAR_BYTE;
-            }
-            return false;
-        }
-
-        /**
-         * Resets state of this class so that it can be reused.
-         */
-        public void reset() {
-            charCount = 0;
+        queryLineBuf.release();
+        if (responses != null) {
+            responses.release();
+            responses = null;
         }
     }
 
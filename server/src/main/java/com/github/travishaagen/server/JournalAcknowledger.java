@@ -0,0 +1,178 @@
+package com.github.travishaagen.server;
+
+import com.github.travishaagen.server.journal.CommitMark;
+import com.github.travishaagen.server.journal.DigitsJournal;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.CharsetUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Acknowledges the numbers that one client channel has sent, once the journal has committed them, by writing
+ * cumulative {@code ack <count>} lines, where the count is the number of numbers received on the channel so far that
+ * have all been committed, including duplicates. Acks are coalesced, so there is at most one ack per read, and at most
+ * two {@link CommitMark}s are pending at once: the mark after the oldest unacknowledged read, and a mark after the
+ * latest read, which is moved forward by every read until the older mark has been committed.
+ * <p>
+ * Acks are checked after each read, and written along with the channel's other responses, which are flushed when
+ * reading completes. While numbers remain unacknowledged and no more reads arrive, commits are checked at a short
+ * interval instead. If the journal fails to write numbers that are waiting to be committed, they will never be
+ * acknowledged, so the channel is closed after the numbers that were committed have been acknowledged.
+ * </p>
+ * <p>
+ * Instances are not thread-safe, and must only be used from the channel's event-loop thread.
+ * </p>
+ */
+final class JournalAcknowledger implements Runnable {
+    /**
+     * Interval between checks of the journal's commits, while numbers are unacknowledged
+     */
+    private static final long COMMIT_CHECK_INTERVAL_MICROS = 100;
+
+    private static final byte[] ACK_PREFIX = "ack ".getBytes(CharsetUtil.UTF_8);
+
+    /**
+     * Maximum length of an ack line, for a count of up to 19 digits
+     */
+    private static final int MAX_ACK_LENGTH = 24;
+
+    private CommitMark pendingMark;
+    private CommitMark latestMark;
+    private long pendingCount;
+    private long latestCount;
+    private boolean isPending;
+    private boolean isLatestPending;
+
+    /**
+     * Number of numbers received, which have been written to the journal
+     */
+    private long receivedCount;
+
+    /**
+     * Number of numbers received before the last mark was updated
+     */
+    private long markedCount;
+
+    private long ackedCount;
+
+    private ChannelHandlerContext ctx;
+    private boolean isCheckScheduled;
+
+    /**
+     * Constructor
+     *
+     * @param journal digits journal, which must track commits
+     * @throws UnsupportedOperationException if the journal does not track commits
+     */
+    JournalAcknowledger(final DigitsJournal journal) {
+        pendingMark = journal.newCommitMark();
+        latestMark = journal.newCommitMark();
+    }
+
+    /**
+     * Counts numbers that have been written to the journal.
+     *
+     * @param count number of numbers
+     */
+    void received(final int count) {
+        receivedCount += count;
+    }
+
+    /**
+     * Marks the numbers of a read, and writes an ack, without flushing, if more numbers have been committed. This
+     * should be called after each read from the channel has been written to the journal, and before the channel is
+     * flushed.
+     *
+     * @param ctx channel context
+     */
+    void afterRead(final ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        if (receivedCount != markedCount) {
+            markedCount = receivedCount;
+            if (!isPending) {
+                pendingMark.update();
+                pendingCount = receivedCount;
+                isPending = true;
+            } else {
+                latestMark.update();
+                latestCount = receivedCount;
+                isLatestPending = true;
+            }
+        }
+        writeAck();
+        if (isPending && pendingMark.isFailed()) {
+            closeOnFailure();
+        } else if (isPending && !isCheckScheduled) {
+            scheduleCommitCheck();
+        }
+    }
+
+    @Override
+    public void run() {
+        isCheckScheduled = false;
+        if (!ctx.channel().isActive()) {
+            // channel closed while numbers were unacknowledged
+            return;
+        }
+        final boolean isAckWritten = writeAck();
+        if (isPending && pendingMark.isFailed()) {
+            closeOnFailure();
+        } else {
+            if (isAckWritten) {
+                ctx.flush();
+            }
+            if (isPending) {
+                scheduleCommitCheck();
+            }
+        }
+    }
+
+    /**
+     * Closes the channel, once any ack that has been written is flushed, because the journal failed to write numbers
+     * that are still unacknowledged.
+     */
+    private void closeOnFailure() {
+        isPending = false;
+        isLatestPending = false;
+        ctx.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    /**
+     * Writes an ack for the pending marks that have been committed.
+     *
+     * @return {@code true} if an ack was written
+     */
+    private boolean writeAck() {
+        long count = ackedCount;
+        while (isPending && pendingMark.isCommitted()) {
+            count = pendingCount;
+            if (isLatestPending) {
+                // the latest mark becomes the pending mark, and the committed mark is reused as the latest mark
+                final CommitMark committedMark = pendingMark;
+                pendingMark = latestMark;
+                latestMark = committedMark;
+                pendingCount = latestCount;
+                isLatestPending = false;
+            } else {
+                isPending = false;
+            }
+        }
+        if (count == ackedCount) {
+            return false;
+        }
+        ackedCount = count;
+        final ByteBuf ack = ctx.alloc().buffer(MAX_ACK_LENGTH);
+        ack.writeBytes(ACK_PREFIX);
+        DigitsServerMessageHandler.writeDecimal(ack, count);
+        ctx.write(ack);
+        return true;
+    }
+
+    private void scheduleCommitCheck() {
+        isCheckScheduled = true;
+        ctx.executor().schedule(this, COMMIT_CHECK_INTERVAL_MICROS, TimeUnit.MICROSECONDS);
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.travishaagen.server;
+
+import com.github.travishaagen.server.journal.DigitsJournal;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies back-pressure to one client channel, by turning off {@code autoRead} when the journal's queue fills past a
+ * high watermark, and turning it back on when the queue drains below a low watermark. This keeps the event-loop thread
+ * free to serve its other channels, rather than blocking it inside of {@link DigitsJournal#writeBatch(int[], int)}
+ * until the journal consumer catches up. Unread bytes stay in the socket's receive buffer, so TCP flow-control then
+ * slows the client down.
+ * <p>
+ * A write can still block when the remaining quarter of the queue is filled by many channels at once, but that is then
+ * a last resort rather than the normal way of slowing clients down.
+ * </p>
+ * <p>
+ * Instances are not thread-safe, and must only be used from the channel's event-loop thread.
+ * </p>
+ */
+final class JournalBackpressure implements Runnable {
+    /**
+     * Interval between checks of the journal's queue, while reading is suspended
+     */
+    private static final long RESUME_CHECK_INTERVAL_MICROS = 500;
+
+    private final DigitsJournal journal;
+
+    /**
+     * Suspend reading when at least this many numbers are queued
+     */
+    private final long highWatermark;
+
+    /**
+     * Resume reading when at most this many numbers are queued
+     */
+    private final long lowWatermark;
+
+    private ChannelHandlerContext ctx;
+    private boolean suspended;
+
+    /**
+     * Constructor, with watermarks at 75% and 25% of the journal's capacity.
+     *
+     * @param journal digits journal
+     */
+    JournalBackpressure(final DigitsJournal journal) {
+        this.journal = journal;
+        final long capacity = journal.capacity();
+        highWatermark = capacity - (capacity >>> 2);
+        lowWatermark = capacity >>> 2;
+    }
+
+    /**
+     * Suspends reading from the channel if the journal's queue is above the high watermark. This should be called
+     * after each read from the channel has been written to the journal.
+     *
+     * @param ctx channel context
+     */
+    void afterRead(final ChannelHandlerContext ctx) {
+        if (!suspended && queuedCount() >= highWatermark) {
+            suspended = true;
+            this.ctx = ctx;
+            ctx.channel().config().setAutoRead(false);
+            scheduleResumeCheck();
+        }
+    }
+
+    @Override
+    public void run() {
+        if (!ctx.channel().isActive()) {
+            // channel closed while suspended
+            suspended = false;
+            return;
+        }
+        if (queuedCount() <= lowWatermark) {
+            // turning autoRead back on also requests the next read
+            suspended = false;
+            ctx.channel().config().setAutoRead(true);
+        } else {
+            scheduleResumeCheck();
+        }
+    }
+
+    private void scheduleResumeCheck() {
+        ctx.executor().schedule(this, RESUME_CHECK_INTERVAL_MICROS, TimeUnit.MICROSECONDS);
+    }
+
+    private long queuedCount() {
+        return journal.capacity() - journal.remainingCapacity();
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.travishaagen.server;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * {@link DigitsKeyCodec} for nine-digit keys, which uses the SWAR arithmetic of {@link DigitsLineCodec}.
+ */
+public final class NineDigitsKeyCodec implements DigitsKeyCodec {
+    /**
+     * Singleton instance
+     */
+    public static final NineDigitsKeyCodec INSTANCE = new NineDigitsKeyCodec();
+
+    /**
+     * Hidden constructor
+     */
+    private NineDigitsKeyCodec() {
+        // empty
+    }
+
+    @Override
+    public int digitCount() {
+        return DigitsLineCodec.DIGIT_COUNT;
+    }
+
+    @Override
+    public int lineLength() {
+        return DigitsLineCodec.LINE_LENGTH;
+    }
+
+    @Override
+    public long keyCount() {
+        return 1000000000L;
+    }
+
+    @Override
+    public long decode(final ByteBuf buf, final int index) {
+        return DigitsLineCodec.decode(buf, index);
+    }
+
+    @Override
+    public void encode(final long key, final byte[] bytes, final int offset) {
+        DigitsLineCodec.encode((int) key, bytes, offset);
+    }
+
+    @Override
+    public String toString() {
+        return "9 digits";
+    }
+}
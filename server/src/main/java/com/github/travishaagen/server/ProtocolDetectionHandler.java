@@ -0,0 +1,195 @@
+package com.github.travishaagen.server;
+
+import com.github.travishaagen.server.journal.DigitsJournal;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.CharsetUtil;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * First handler in a client channel's pipeline, which inspects the first bytes that a client sends, and replaces
+ * itself with either a {@link BinaryDigitsServerMessageHandler}, when the client sends the binary preamble, or
+ * otherwise a text {@link DigitsServerMessageHandler}. Bytes that follow the preamble are passed on to the new
+ * handler.
+ * <p>
+ * A client can first send a {@code namespace <name>} line, to use that namespace rather than the namespace of the port
+ * it connected to, and an {@code ack} line, to have its numbers acknowledged once they have been committed to the
+ * journal, in either order. The connection is closed if acks are requested for a namespace whose journal does not
+ * track commits.
+ * </p>
+ */
+public class ProtocolDetectionHandler extends ByteToMessageDecoder {
+    /**
+     * Start of the line that selects a namespace, which is followed by the namespace name and a newline
+     */
+    public static final byte[] NAMESPACE_HANDSHAKE = "namespace ".getBytes(CharsetUtil.UTF_8);
+
+    /**
+     * Line that requests acknowledgements of committed numbers
+     */
+    public static final byte[] ACK_HANDSHAKE = "ack\n".getBytes(CharsetUtil.UTF_8);
+
+    /**
+     * Maximum length of a namespace handshake line, including its newline
+     */
+    private static final int MAX_HANDSHAKE_LENGTH = 64;
+
+    /**
+     * Namespace of the client, whose thread-safe journal writes unique digits messages to a file, and which a
+     * handshake can replace
+     */
+    private DigitsNamespace namespace;
+
+    /**
+     * Namespaces that a handshake can select, by namespace name
+     */
+    private final Map<String, DigitsNamespace> namespaces;
+
+    private boolean isNamespaceSelected;
+
+    private boolean isAckMode;
+
+    /**
+     * Codec for the digits of text lines
+     */
+    private final DigitsKeyCodec keyCodec;
+
+    /**
+     * Constructor for nine-digit keys
+     *
+     * @param journal digits journal, for persisting unique digits to disk
+     */
+    public ProtocolDetectionHandler(final DigitsJournal journal) {
+        this(journal, NineDigitsKeyCodec.INSTANCE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param journal  digits journal, for persisting unique digits to disk
+     * @param keyCodec codec for the digits of text lines, which also limits the range of binary values
+     */
+    public ProtocolDetectionHandler(final DigitsJournal journal, final DigitsKeyCodec keyCodec) {
+        this(new DigitsNamespace(journal, null), keyCodec, Collections.emptyMap());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param namespace  namespace of the port that the client connected to
+     * @param keyCodec   codec for the digits of text lines, which also limits the range of binary values
+     * @param namespaces namespaces that a handshake can select, by namespace name
+     */
+    public ProtocolDetectionHandler(final DigitsNamespace namespace, final DigitsKeyCodec keyCodec,
+                                    final Map<String, DigitsNamespace> namespaces) {
+        this.namespace = namespace;
+        this.keyCodec = keyCodec;
+        this.namespaces = namespaces;
+    }
+
+    @Override
+    protected void decode(final ChannelHandlerContext ctx, final ByteBuf in, final List<Object> out)
+            throws InvalidMessageException {
+        final byte[] preamble = BinaryDigitsServerMessageHandler.PREAMBLE;
+        final int readerIndex = in.readerIndex();
+        if (!isNamespaceSelected && in.getByte(readerIndex) == NAMESPACE_HANDSHAKE[0]) {
+            selectNamespace(in);
+            return;
+        }
+        if (!isAckMode && in.getByte(readerIndex) == ACK_HANDSHAKE[0]) {
+            if (in.readableBytes() < ACK_HANDSHAKE.length) {
+                // wait for the rest of the line
+                return;
+            }
+            for (int i = 1; i < ACK_HANDSHAKE.length; ++i) {
+                if (in.getByte(readerIndex + i) != ACK_HANDSHAKE[i]) {
+                    throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+                }
+            }
+            in.skipBytes(ACK_HANDSHAKE.length);
+            isAckMode = true;
+            return;
+        }
+        if (in.getByte(readerIndex) != preamble[0]) {
+            // text protocol
+            try {
+                ctx.pipeline().replace(this, null, new DigitsServerMessageHandler(namespace.getJournal(), keyCodec,
+                        namespace.getQuery(), isAckMode));
+            } catch (UnsupportedOperationException e) {
+                // the namespace's journal cannot acknowledge numbers
+                throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+            }
+            return;
+        }
+        if (in.readableBytes() < preamble.length) {
+            // wait for the rest of the preamble
+            return;
+        }
+
+        for (int i = 1; i < BinaryDigitsServerMessageHandler.PREAMBLE_MODE_INDEX; ++i) {
+            if (in.getByte(readerIndex + i) != preamble[i]) {
+                throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+            }
+        }
+        final byte mode = in.getByte(readerIndex + BinaryDigitsServerMessageHandler.PREAMBLE_MODE_INDEX);
+        if (mode != BinaryDigitsServerMessageHandler.INTS_MODE && mode != BinaryDigitsServerMessageHandler.FRAMES_MODE) {
+            throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+        }
+        in.skipBytes(preamble.length);
+        try {
+            ctx.pipeline().replace(this, null, new BinaryDigitsServerMessageHandler(namespace.getJournal(), keyCodec,
+                    mode, isAckMode));
+        } catch (UnsupportedOperationException e) {
+            // the namespace's journal cannot acknowledge numbers
+            throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+        }
+    }
+
+    /**
+     * Reads a namespace handshake line, once it has been received, and selects that namespace.
+     *
+     * @param in received bytes, starting with the handshake line
+     * @throws InvalidMessageException if the line is not a handshake, or the namespace does not exist
+     */
+    private void selectNamespace(final ByteBuf in) throws InvalidMessageException {
+        final int readerIndex = in.readerIndex();
+        final int newlineIndex = in.indexOf(readerIndex,
+                readerIndex + Math.min(in.readableBytes(), MAX_HANDSHAKE_LENGTH), (byte) '\n');
+        if (newlineIndex == -1) {
+            if (in.readableBytes() >= MAX_HANDSHAKE_LENGTH) {
+                throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+            }
+            // wait for the rest of the line
+            return;
+        }
+        final int nameIndex = readerIndex + NAMESPACE_HANDSHAKE.length;
+        if (newlineIndex < nameIndex) {
+            throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+        }
+        for (int i = 1; i < NAMESPACE_HANDSHAKE.length; ++i) {
+            if (in.getByte(readerIndex + i) != NAMESPACE_HANDSHAKE[i]) {
+                throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+            }
+        }
+        final DigitsNamespace selectedNamespace = namespaces.get(
+                in.toString(nameIndex, newlineIndex - nameIndex, CharsetUtil.UTF_8));
+        if (selectedNamespace == null) {
+            throw DigitsServerMessageHandler.INVALID_MESSAGE_EXCEPTION;
+        }
+        namespace = selectedNamespace;
+        isNamespaceSelected = true;
+        in.readerIndex(newlineIndex + 1);
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
+        // decode exceptions are wrapped by the super-class
+        DigitsServerMessageHandler.handleException(ctx,
+                cause instanceof DecoderException && cause.getCause() != null ? cause.getCause() : cause);
+    }
+}
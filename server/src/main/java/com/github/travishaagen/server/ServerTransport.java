@@ -0,0 +1,99 @@
+package com.github.travishaagen.server;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+/**
+ * Netty transports that {@link DigitsServer} can run on. The native epoll transport has edge-triggered reads, fewer
+ * copies between Java and native memory, and supports {@code SO_REUSEPORT}, but it is only available on Linux.
+ */
+public enum ServerTransport {
+    /**
+     * Java NIO selector transport, which is available on all platforms
+     */
+    NIO {
+        @Override
+        public EventLoopGroup newEventLoopGroup(final int threadCount) {
+            return new NioEventLoopGroup(threadCount);
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        public boolean enableReusePort(final ServerBootstrap bootstrap) {
+            // not supported by Java NIO
+            return false;
+        }
+    },
+
+    /**
+     * Native Linux epoll transport
+     */
+    EPOLL {
+        @Override
+        public EventLoopGroup newEventLoopGroup(final int threadCount) {
+            return new EpollEventLoopGroup(threadCount);
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        public boolean enableReusePort(final ServerBootstrap bootstrap) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            return true;
+        }
+    };
+
+    /**
+     * Creates a new event-loop group for this transport.
+     *
+     * @param threadCount number of event-loop threads
+     * @return new {@code EventLoopGroup} instance
+     */
+    public abstract EventLoopGroup newEventLoopGroup(final int threadCount);
+
+    /**
+     * @return server socket channel class for this transport
+     */
+    public abstract Class<? extends ServerChannel> serverChannelClass();
+
+    /**
+     * Enables {@code SO_REUSEPORT} on listening sockets, if supported by this transport, so that multiple server
+     * channels can bind the same port and the kernel will load-balance accepted connections across them.
+     *
+     * @param bootstrap server bootstrap to configure
+     * @return {@code true} if supported and enabled, and {@code false} otherwise
+     */
+    public abstract boolean enableReusePort(final ServerBootstrap bootstrap);
+
+    /**
+     * Selects a transport, based on the given supported values,
+     * <ul>
+     * <li>Auto (default), which uses Epoll when its native library is available, and Nio otherwise</li>
+     * <li>Epoll, which falls back to Nio when its native library is not available</li>
+     * <li>Nio</li>
+     * </ul>
+     *
+     * @param transport transport name, or {@code null} to use default (Auto)
+     * @return selected transport
+     */
+    public static ServerTransport select(final String transport) {
+        if ("Nio".equalsIgnoreCase(transport)) {
+            return NIO;
+        }
+        return Epoll.isAvailable() ? EPOLL : NIO;
+    }
+}
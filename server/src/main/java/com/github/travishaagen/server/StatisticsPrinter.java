@@ -3,10 +3,12 @@ package com.github.travishaagen.server;
 import com.google.common.util.concurrent.AbstractScheduledService;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Gathers statistics on received and duplicate digits-messages (see {@link #update(long, long)}, and periodically
- * prints them to standard output for a given time period.
+ * Gathers statistics on received and duplicate digits-messages (see {@link #update(long, long)}, and on journal file
+ * syncs (see {@link #updateSync(long)}), and periodically prints them to standard output for a given time period.
  */
 public class StatisticsPrinter extends AbstractScheduledService {
     /**
@@ -14,6 +16,11 @@ public class StatisticsPrinter extends AbstractScheduledService {
      */
     private static final long SLEEP_DURATION_MS = 10000;
 
+    /**
+     * Prefix of printed lines, which names the namespace of the statistics, or is empty
+     */
+    private final String linePrefix;
+
     /**
      * Total messages received since server startup
      */
@@ -25,14 +32,46 @@ public class StatisticsPrinter extends AbstractScheduledService {
     protected long totalDuplicateCount;
 
     /**
-     * Messages received during current period
+     * Messages received during current period, which is striped so that many threads can update it without contention
+     */
+    protected final LongAdder receivedCount = new LongAdder();
+
+    /**
+     * Duplicates received during current period, which is striped so that many threads can update it without
+     * contention
+     */
+    protected final LongAdder duplicateCount = new LongAdder();
+
+    /**
+     * Journal file syncs during current period
+     */
+    protected final LongAdder syncCount = new LongAdder();
+
+    /**
+     * Total nanoseconds spent in journal file syncs during current period
+     */
+    protected final LongAdder syncNanos = new LongAdder();
+
+    /**
+     * Longest journal file sync, in nanoseconds, during current period
      */
-    protected long receivedCount;
+    protected final LongAccumulator maxSyncNanos = new LongAccumulator(Math::max, 0);
 
     /**
-     * Duplicates received during current period
+     * Constructor for unnamed statistics.
      */
-    protected long duplicateCount;
+    public StatisticsPrinter() {
+        this(null);
+    }
+
+    /**
+     * Constructor for the statistics of a namespace, whose printed lines start with the namespace name.
+     *
+     * @param namespace namespace name, or {@code null} for unnamed statistics
+     */
+    public StatisticsPrinter(final String namespace) {
+        linePrefix = namespace == null ? "" : namespace + ": ";
+    }
 
     /**
      * Updates counters. This method can safely be called by multiple threads concurrently.
@@ -45,39 +84,46 @@ public class StatisticsPrinter extends AbstractScheduledService {
             if (duplicate > received) {
                 throw new IllegalArgumentException("`duplicate` argument should never be greater than `received`");
             }
-            synchronized (this) {
-                receivedCount += received;
-                if (duplicate != 0) {
-                    duplicateCount += duplicate;
-                }
+            receivedCount.add(received);
+            if (duplicate != 0) {
+                duplicateCount.add(duplicate);
             }
         }
     }
 
+    /**
+     * Records the latency of forcing a journal file to disk. This method can safely be called by multiple threads
+     * concurrently.
+     *
+     * @param nanos sync duration, in nanoseconds
+     */
+    public void updateSync(final long nanos) {
+        syncCount.increment();
+        syncNanos.add(nanos);
+        maxSyncNanos.accumulate(nanos);
+    }
+
     @Override
     protected void runOneIteration() throws Exception {
-        // read and reset counters
-        final long received;
-        final long duplicate;
-        if (receivedCount == 0) {
-            // there should never be any duplicates if there are no received
-            received = 0;
-            duplicate = 0;
-        } else {
-            synchronized (this) {
-                totalReceivedCount += receivedCount;
-                received = receivedCount;
-                receivedCount = 0L;
-
-                totalDuplicateCount += duplicateCount;
-                duplicate = duplicateCount;
-                duplicateCount = 0L;
-            }
-        }
+        // read and reset counters (an update that races with this may be counted in the next period)
+        final long received = receivedCount.sumThenReset();
+        final long duplicate = duplicateCount.sumThenReset();
+        totalReceivedCount += received;
+        totalDuplicateCount += duplicate;
 
         // print "received X numbers, Y duplicates" to standard out
-        System.out.println(new StringBuilder(64).append("received ").append(received)
+        System.out.println(new StringBuilder(64).append(linePrefix).append("received ").append(received)
                 .append(" numbers, ").append(duplicate).append(" duplicates").toString());
+
+        // print "fsync X times, average Y us, max Z us" to standard out, when the journal is being synced
+        final long syncs = syncCount.sumThenReset();
+        final long syncTotalNanos = syncNanos.sumThenReset();
+        final long syncMaxNanos = maxSyncNanos.getThenReset();
+        if (syncs != 0) {
+            System.out.println(new StringBuilder(64).append(linePrefix).append("fsync ").append(syncs)
+                    .append(" times, average ").append(TimeUnit.NANOSECONDS.toMicros(syncTotalNanos / syncs))
+                    .append(" us, max ").append(TimeUnit.NANOSECONDS.toMicros(syncMaxNanos)).append(" us").toString());
+        }
     }
 
     @Override
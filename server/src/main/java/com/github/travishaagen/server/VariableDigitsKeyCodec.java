@@ -0,0 +1,84 @@
+package com.github.travishaagen.server;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * {@link DigitsKeyCodec} for keys with any number of digits, up to {@link #MAX_DIGIT_COUNT}. Each whole group of
+ * eight digits is decoded with the SWAR arithmetic of {@link DigitsLineCodec}, and any remaining digits are decoded
+ * one at a time.
+ */
+public final class VariableDigitsKeyCodec implements DigitsKeyCodec {
+    private static final byte ZERO_CHAR_BYTE = '0';
+    private static final byte NEWLINE_CHAR_BYTE = '\n';
+
+    private final int digitCount;
+    private final long keyCount;
+
+    /**
+     * Constructor
+     *
+     * @param digitCount number of digits in a line
+     * @throws IllegalArgumentException if there are not from 1 to {@link #MAX_DIGIT_COUNT} digits
+     */
+    public VariableDigitsKeyCodec(final int digitCount) {
+        if (digitCount < 1 || digitCount > MAX_DIGIT_COUNT) {
+            throw new IllegalArgumentException("Keys must have from 1 to " + MAX_DIGIT_COUNT + " digits: " + digitCount);
+        }
+        this.digitCount = digitCount;
+        long count = 1;
+        for (int i = 0; i < digitCount; ++i) {
+            count *= 10;
+        }
+        keyCount = count;
+    }
+
+    @Override
+    public int digitCount() {
+        return digitCount;
+    }
+
+    @Override
+    public int lineLength() {
+        return digitCount + 1;
+    }
+
+    @Override
+    public long keyCount() {
+        return keyCount;
+    }
+
+    @Override
+    public long decode(final ByteBuf buf, int index) {
+        long key = 0;
+        int remaining = digitCount;
+        for (; remaining >= 8; remaining -= 8, index += 8) {
+            final long eightDigits = DigitsLineCodec.decodeEightDigits(buf.getLongLE(index));
+            if (eightDigits == INVALID_LINE) {
+                return INVALID_LINE;
+            }
+            key = key * 100000000L + eightDigits;
+        }
+        for (; remaining != 0; --remaining, ++index) {
+            final int digit = buf.getByte(index) - ZERO_CHAR_BYTE;
+            if (digit < 0 || digit > 9) {
+                return INVALID_LINE;
+            }
+            key = key * 10 + digit;
+        }
+        return buf.getByte(index) == NEWLINE_CHAR_BYTE ? key : INVALID_LINE;
+    }
+
+    @Override
+    public void encode(long key, final byte[] bytes, final int offset) {
+        for (int i = offset + digitCount - 1; i >= offset; --i) {
+            final long quotient = key / 10;
+            bytes[i] = (byte) (ZERO_CHAR_BYTE + key - quotient * 10);
+            key = quotient;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return digitCount + " digits";
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.travishaagen.server.filter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@code AtomicLongArray} backed implementation of {@link com.github.travishaagen.server.filter.DigitsFilter}.
+ * Only one instance of this class should be created per application (singleton), because of high memory usage, and it
+ * <b>is</b> thread-safe, so that multiple event-loop threads can filter duplicates concurrently before writing to a
+ * journal, and its {@link DigitsQuery} methods can be called by any thread.
+ */
+public class AtomicBitSetDigitsFilter implements DigitsFilter, DigitsQuery {
+    /**
+     * One bit for each of the 1 billion possible nine-digit values, packed into 15,625,000 {@code long} words
+     * (119 Mb), which are updated with compare-and-set so that no locks are needed.
+     */
+    private final AtomicLongArray lookupWords;
+
+    /**
+     * Constructor for a filter that can track all 1 billion nine-digit values.
+     */
+    public AtomicBitSetDigitsFilter() {
+        this(VALUE_COUNT);
+    }
+
+    /**
+     * Constructor for a filter that tracks a smaller range of values, such as one partition of the nine-digit values.
+     *
+     * @param valueCount number of values, so that valid values are in the range [0, valueCount - 1]
+     */
+    public AtomicBitSetDigitsFilter(final int valueCount) {
+        lookupWords = new AtomicLongArray((valueCount + 63) >>> 6);
+    }
+
+    /**
+     * Determines if a nine-digit number is a unique value. Concurrent calls with the same value will return
+     * {@code true} for exactly one of the callers.
+     *
+     * @param value number in the range [0, 999999999]
+     * @return {@code true} if value is unique and was added to the lookup-table, and {@code false} otherwise
+     */
+    public boolean isUnique(final long value) {
+        // find table position and add to table if unique, retrying if another bit in the word changed concurrently
+        final int wordIndex = (int) (value >>> 6);
+        final long wordBit = 1L << value;
+        long word;
+        do {
+            word = lookupWords.get(wordIndex);
+            if ((word & wordBit) != 0) {
+                return false;
+            }
+        } while (!lookupWords.compareAndSet(wordIndex, word, word | wordBit));
+        return true;
+    }
+
+    @Override
+    public boolean contains(final long value) {
+        return BitsetQueries.contains(lookupWords, value);
+    }
+
+    @Override
+    public long countRange(final long fromValue, final long toValue) {
+        return BitsetQueries.countRange(lookupWords, fromValue, toValue);
+    }
+}
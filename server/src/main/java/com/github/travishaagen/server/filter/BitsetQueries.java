@@ -0,0 +1,128 @@
+package com.github.travishaagen.server.filter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link DigitsQuery} implementations for bitsets, where value {@code v} is bit {@code v & 63} of 64-bit word
+ * {@code v >>> 6}. Range counts add the population counts of whole words, and mask the first and last words of the
+ * range.
+ */
+final class BitsetQueries {
+    private BitsetQueries() {
+        // empty
+    }
+
+    static boolean contains(final long[] words, final long value) {
+        return value >= 0 && value < ((long) words.length << 6) && ((words[(int) (value >>> 6)] >>> value) & 1L) != 0;
+    }
+
+    static long countRange(final long[] words, final long fromValue, final long toValue) {
+        final long from = Math.max(fromValue, 0L);
+        final long to = Math.min(toValue, (long) words.length << 6);
+        if (from >= to) {
+            return 0L;
+        }
+        final int firstWord = (int) (from >>> 6);
+        final int lastWord = (int) ((to - 1L) >>> 6);
+        if (firstWord == lastWord) {
+            return Long.bitCount(words[firstWord] & firstWordMask(from) & lastWordMask(to));
+        }
+        long count = Long.bitCount(words[firstWord] & firstWordMask(from));
+        for (int i = firstWord + 1; i < lastWord; ++i) {
+            count += Long.bitCount(words[i]);
+        }
+        return count + Long.bitCount(words[lastWord] & lastWordMask(to));
+    }
+
+    static boolean contains(final AtomicLongArray words, final long value) {
+        return value >= 0 && value < ((long) words.length() << 6)
+                && ((words.get((int) (value >>> 6)) >>> value) & 1L) != 0;
+    }
+
+    static long countRange(final AtomicLongArray words, final long fromValue, final long toValue) {
+        final long from = Math.max(fromValue, 0L);
+        final long to = Math.min(toValue, (long) words.length() << 6);
+        if (from >= to) {
+            return 0L;
+        }
+        final int firstWord = (int) (from >>> 6);
+        final int lastWord = (int) ((to - 1L) >>> 6);
+        if (firstWord == lastWord) {
+            return Long.bitCount(words.get(firstWord) & firstWordMask(from) & lastWordMask(to));
+        }
+        long count = Long.bitCount(words.get(firstWord) & firstWordMask(from));
+        for (int i = firstWord + 1; i < lastWord; ++i) {
+            count += Long.bitCount(words.get(i));
+        }
+        return count + Long.bitCount(words.get(lastWord) & lastWordMask(to));
+    }
+
+    /**
+     * Determines if a value is set in a bitset of bytes, where value {@code v} is bit {@code v & 7} of byte
+     * {@code v >>> 3}, which is the same bit as in little-endian 64-bit words.
+     *
+     * @param bytes bitset, which is not modified
+     * @param value number
+     * @return {@code true} if the value's bit is set
+     */
+    static boolean contains(final ByteBuffer bytes, final long value) {
+        return value >= 0 && value < ((long) bytes.limit() << 3)
+                && ((bytes.get((int) (value >>> 3)) >>> (value & 7)) & 1) != 0;
+    }
+
+    /**
+     * Counts the values in a range of a bitset of bytes, with the bit layout of {@link #contains(ByteBuffer, long)}.
+     *
+     * @param bytes     bitset with little-endian byte order, which is not modified
+     * @param fromValue first value of the range, inclusive
+     * @param toValue   end of the range, exclusive
+     * @return number of bits set in the range
+     */
+    static long countRange(final ByteBuffer bytes, final long fromValue, final long toValue) {
+        final long from = Math.max(fromValue, 0L);
+        final long to = Math.min(toValue, (long) bytes.limit() << 3);
+        if (from >= to) {
+            return 0L;
+        }
+        final int firstWord = (int) (from >>> 6);
+        final int lastWord = (int) ((to - 1L) >>> 6);
+        if (firstWord == lastWord) {
+            return Long.bitCount(word(bytes, firstWord) & firstWordMask(from) & lastWordMask(to));
+        }
+        long count = Long.bitCount(word(bytes, firstWord) & firstWordMask(from));
+        for (int i = firstWord + 1; i < lastWord; ++i) {
+            // whole words before the last word are never partial
+            count += Long.bitCount(bytes.getLong(i << 3));
+        }
+        return count + Long.bitCount(word(bytes, lastWord) & lastWordMask(to));
+    }
+
+    private static long word(final ByteBuffer bytes, final int wordIndex) {
+        final int index = wordIndex << 3;
+        if (index + 8 <= bytes.limit()) {
+            return bytes.getLong(index);
+        }
+        // last bytes of a partial word
+        long word = 0;
+        for (int b = 0; index + b < bytes.limit(); ++b) {
+            word |= (bytes.get(index + b) & 0xFFL) << (b << 3);
+        }
+        return word;
+    }
+
+    /**
+     * Mask of the bits in the first word of a range, which are the bits at and above the first value.
+     */
+    private static long firstWordMask(final long from) {
+        // shift of a long only uses the low 6 bits of from
+        return -1L << from;
+    }
+
+    /**
+     * Mask of the bits in the last word of a range, which are the bits at and below the last value.
+     */
+    private static long lastWordMask(final long to) {
+        return -1L >>> (63 - (int) ((to - 1L) & 63));
+    }
+}
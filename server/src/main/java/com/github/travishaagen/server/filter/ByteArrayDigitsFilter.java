@@ -1,42 +1,59 @@
 package com.github.travishaagen.server.filter;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * {@code byte[]} backed implementation of {@link com.github.travishaagen.server.filter.DigitsFilter}.
  * Only one instance of this class should be created per application (singleton), because of high memory usage, and it
- * is <b>not</b> thread-safe.
+ * is <b>not</b> thread-safe, except for its {@link DigitsQuery} methods.
  */
-public class ByteArrayDigitsFilter implements DigitsFilter {
+public class ByteArrayDigitsFilter implements SnapshotDigitsFilter, DigitsQuery {
     /**
      * Since we will only receive up to 9 digits, there are 1 billion unique possible integers, and we can map
      * those values to 125,000,000 bytes (8 bits each), so it is possible to keep track of which values we have
      * seen before within this byte array. This 119 Mb array is far smaller and faster than a data structure
      * that could keep track of all possible integers.
      */
-    private final byte[] lookupBuffer = new byte[125000000];
+    private final byte[] lookupBuffer;
+
+    /**
+     * Little-endian view of the lookup-table, for reading it as 64-bit words in queries
+     */
+    private final ByteBuffer queryBuffer;
+
+    /**
+     * Result of loads that only touch cache lines
+     */
+    private int touchSink;
 
     /**
-     * Converts nine digits into an integer and then determines if it is a unique value.
+     * Constructor for a filter that can track all 1 billion nine-digit values.
+     */
+    public ByteArrayDigitsFilter() {
+        this(VALUE_COUNT);
+    }
+
+    /**
+     * Constructor for a filter that tracks a smaller range of values, such as one partition of the nine-digit values.
      *
-     * @param bytes nine digits
-     * @return {@code true} if value is unique and was added to the lookup-table, and {@code false} otherwise
+     * @param valueCount number of values, so that valid values are in the range [0, valueCount - 1]
      */
-    public boolean isUnique(final byte[] bytes) {
-        // convert bytes to a single integer value (See http://stackoverflow.com/a/10578427)
-        int value = 0;
-        int digit, j, k;
-        for (int i = 0; i < bytes.length; ++i) {
-            digit = (int) bytes[i] & 0xF;
-            if (digit != 0) {
-                for (j = 0, k = bytes.length - 1 - i; j < k; ++j) {
-                    digit *= 10;
-                }
-                value += digit;
-            }
-        }
+    public ByteArrayDigitsFilter(final int valueCount) {
+        lookupBuffer = new byte[(valueCount + 7) / 8];
+        queryBuffer = ByteBuffer.wrap(lookupBuffer).order(ByteOrder.LITTLE_ENDIAN);
+    }
 
+    /**
+     * Determines if a nine-digit number is a unique value.
+     *
+     * @param value number in the range [0, 999999999]
+     * @return {@code true} if value is unique and was added to the lookup-table, and {@code false} otherwise
+     */
+    public boolean isUnique(final long value) {
         // find table position and add to table if unique
-        final int bucketIndex = value / 8;
-        final int bucketBit = 1 << (value % 8);
+        final int bucketIndex = (int) (value >>> 3);
+        final int bucketBit = 1 << ((int) value & 7);
         final byte bucketByte = lookupBuffer[bucketIndex];
         if ((bucketByte & bucketBit) == 0) {
             lookupBuffer[bucketIndex] |= (byte) (bucketByte | bucketBit);
@@ -44,4 +61,67 @@ public class ByteArrayDigitsFilter implements DigitsFilter {
         }
         return false;
     }
+
+    /**
+     * Adds values in bulk, in blocks of {@link #MARK_ALL_BLOCK_SIZE}, where the bytes of a block's values are all
+     * loaded before any of them are tested and set, so that their cache misses overlap.
+     *
+     * @param values        numbers in the range [0, 999999999]
+     * @param n             number of values to add, from the start of {@code values}
+     * @param uniqueIndexes receives the indexes in {@code values} of unique values, in order, which must have room for
+     *                      {@code n} indexes
+     * @return number of unique values, which is the number of indexes written to {@code uniqueIndexes}
+     */
+    @Override
+    public int markAll(final long[] values, final int n, final int[] uniqueIndexes) {
+        int uniqueCount = 0;
+        int touched = 0;
+        for (int blockStart = 0; blockStart < n; blockStart += MARK_ALL_BLOCK_SIZE) {
+            final int blockEnd = Math.min(blockStart + MARK_ALL_BLOCK_SIZE, n);
+            // independent loads, whose results are combined so that they are not optimized away
+            for (int i = blockStart; i < blockEnd; ++i) {
+                touched |= lookupBuffer[(int) (values[i] >>> 3)];
+            }
+            for (int i = blockStart; i < blockEnd; ++i) {
+                final long value = values[i];
+                final int bucketIndex = (int) (value >>> 3);
+                final int bitIndex = (int) value & 7;
+                final byte bucketByte = lookupBuffer[bucketIndex];
+                lookupBuffer[bucketIndex] = (byte) (bucketByte | (1 << bitIndex));
+                // always write the index, and only keep it by advancing the count when the bit was clear
+                uniqueIndexes[uniqueCount] = i;
+                uniqueCount += (~bucketByte >>> bitIndex) & 1;
+            }
+        }
+        touchSink = touched;
+        return uniqueCount;
+    }
+
+    @Override
+    public boolean contains(final long value) {
+        return BitsetQueries.contains(queryBuffer, value);
+    }
+
+    @Override
+    public long countRange(final long fromValue, final long toValue) {
+        return BitsetQueries.countRange(queryBuffer, fromValue, toValue);
+    }
+
+    @Override
+    public int snapshotSize() {
+        return lookupBuffer.length;
+    }
+
+    @Override
+    public void writeSnapshot(final ByteBuffer dst) {
+        dst.put(lookupBuffer);
+    }
+
+    @Override
+    public void readSnapshot(final ByteBuffer src) {
+        if (src.remaining() != lookupBuffer.length) {
+            throw new IllegalArgumentException("Snapshot does not match filter size");
+        }
+        src.get(lookupBuffer);
+    }
 }
@@ -1,14 +1,49 @@
 package com.github.travishaagen.server.filter;
 
 /**
- * Tracks the uniqueness of nine-digit numbers as they are passed into this data structure.
+ * Tracks the uniqueness of numbers as they are passed into this data structure. Numbers are nine-digit values by
+ * default, and can be keys with up to 18 digits, in which case the filter must have been created for that many keys
+ * (see {@link HashDigitsFilter}).
  */
 public interface DigitsFilter {
     /**
-     * Converts nine digits into an integer and then determines if it is a unique value.
+     * Number of possible nine-digit values, which is the default capacity of a filter.
+     */
+    static final int VALUE_COUNT = 1000000000;
+
+    /**
+     * Number of values that bitset implementations of {@link #markAll(long[], int, int[])} load the lookup-table words
+     * of, before testing and setting those values, so that their cache misses overlap rather than being taken one
+     * after another. Blocks are small enough that the touched cache lines are still in L1 cache when they are set.
+     */
+    static final int MARK_ALL_BLOCK_SIZE = 64;
+
+    /**
+     * Determines if a nine-digit number is a unique value.
      *
-     * @param bytes nine digits
+     * @param value number in the range [0, 999999999]
      * @return {@code true} if value is unique and was added to the lookup-table, and {@code false} otherwise
      */
-    boolean isUnique(final byte[] bytes);
+    boolean isUnique(final long value);
+
+    /**
+     * Adds values in bulk, such as a whole batch of a journal consumer, and finds which of them are unique, including
+     * values that are repeated within the given values, where only the first is unique. The default implementation
+     * calls {@link #isUnique(long)} for each value.
+     *
+     * @param values        numbers in the range [0, 999999999]
+     * @param n             number of values to add, from the start of {@code values}
+     * @param uniqueIndexes receives the indexes in {@code values} of unique values, in order, which must have room for
+     *                      {@code n} indexes
+     * @return number of unique values, which is the number of indexes written to {@code uniqueIndexes}
+     */
+    default int markAll(final long[] values, final int n, final int[] uniqueIndexes) {
+        int uniqueCount = 0;
+        for (int i = 0; i < n; ++i) {
+            if (isUnique(values[i])) {
+                uniqueIndexes[uniqueCount++] = i;
+            }
+        }
+        return uniqueCount;
+    }
 }
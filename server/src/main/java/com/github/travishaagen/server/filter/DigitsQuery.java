@@ -0,0 +1,36 @@
+package com.github.travishaagen.server.filter;
+
+/**
+ * Read-only queries of the values that a filter has seen, which can be called from other threads, such as event-loop
+ * threads, concurrently with the journal consumer thread that adds values. A query reads the live lookup-table, so
+ * values that are being added concurrently may or may not be included in its result.
+ */
+public interface DigitsQuery {
+    /**
+     * Determines if a value has been seen.
+     *
+     * @param value number, where values outside of the filter's range have never been seen
+     * @return {@code true} if the value has been seen, and {@code false} otherwise
+     */
+    boolean contains(long value);
+
+    /**
+     * Counts the distinct values that have been seen, in a range of values.
+     *
+     * @param fromValue first value of the range, inclusive
+     * @param toValue   end of the range, exclusive
+     * @return number of distinct values seen in the range, which is {@code 0} if the range is empty
+     */
+    long countRange(long fromValue, long toValue);
+
+    /**
+     * Counts all of the distinct values that have been seen. By default, this counts the whole range of values, which
+     * reads the entire lookup-table, so queries that are answered on event-loop threads should maintain their count
+     * instead (see {@link UniqueCountDigitsQuery}).
+     *
+     * @return number of distinct values seen
+     */
+    default long count() {
+        return countRange(0, Long.MAX_VALUE);
+    }
+}
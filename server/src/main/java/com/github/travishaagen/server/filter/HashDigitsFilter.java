@@ -0,0 +1,178 @@
+package com.github.travishaagen.server.filter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Hash set implementation of {@link com.github.travishaagen.server.filter.DigitsFilter}, for keys with too many digits
+ * for a bitset, such as 12-digit keys, which would need a 125 GB bitset. Memory use is in proportion to the number of
+ * unique keys seen, rather than the number of possible keys, at 16 to 32 bytes per key.
+ * <p>
+ * Keys are stored in an open-addressing table of {@code long} keys with linear probing, which is doubled when it is
+ * half full, so there is no allocation per key. The filter is exact, rather than probabilistic like a Bloom filter,
+ * because a false positive would silently drop a unique number from the journal. The table holds at most about 537
+ * million keys, after which new keys are refused without being added, and snapshots are the table's keys, so they are
+ * limited to about 268 million keys. This class is <b>not</b> thread-safe.
+ * </p>
+ */
+public class HashDigitsFilter implements SnapshotDigitsFilter {
+    /**
+     * Marks an empty slot, which is never a valid key
+     */
+    private static final long EMPTY = -1L;
+
+    /**
+     * Multiplier for Fibonacci hashing, which is 2^64 divided by the golden ratio
+     */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final long keyCount;
+
+    /**
+     * Maximum capacity of the table, which then holds at most half as many keys
+     */
+    private final int maxCapacity;
+
+    private long[] table;
+    private int hashShift;
+    private int size;
+
+    /**
+     * Constructor for a filter that can track all 1 billion nine-digit values.
+     */
+    public HashDigitsFilter() {
+        this(VALUE_COUNT);
+    }
+
+    /**
+     * Constructor for a filter that tracks any number of keys, such as all 12-digit keys.
+     *
+     * @param keyCount number of keys, so that valid keys are in the range [0, keyCount - 1]
+     */
+    public HashDigitsFilter(final long keyCount) {
+        this(keyCount, MAX_CAPACITY);
+    }
+
+    /**
+     * Constructor for a filter whose table is limited to a smaller capacity, such as for tests.
+     *
+     * @param keyCount    number of keys, so that valid keys are in the range [0, keyCount - 1]
+     * @param maxCapacity maximum capacity of the table, which is a power of two of at least the initial capacity
+     */
+    HashDigitsFilter(final long keyCount, final int maxCapacity) {
+        this.keyCount = keyCount;
+        this.maxCapacity = maxCapacity;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Determines if a key is a unique value.
+     *
+     * @param value key in the range [0, keyCount - 1]
+     * @return {@code true} if value is unique and was added to the lookup-table, and {@code false} otherwise
+     * @throws IllegalStateException if the value is unique but the table is full, in which case it is not added
+     */
+    public boolean isUnique(final long value) {
+        final long[] table = this.table;
+        final int mask = table.length - 1;
+        int index = (int) ((value * HASH_MULTIPLIER) >>> hashShift);
+        long key;
+        while ((key = table[index]) != EMPTY) {
+            if (key == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        if (size == maxCapacity >>> 1) {
+            // checked before the key is added, so that a refused key is still unique if it is sent again
+            throw new IllegalStateException("Hash filter is full, with " + size + " keys");
+        }
+        table[index] = value;
+        // a table at its maximum capacity is never more than half full, so it is not grown
+        if (++size > table.length >>> 1) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * @return number of unique keys
+     */
+    public int size() {
+        return size;
+    }
+
+    private void allocate(final int capacity) {
+        table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        hashShift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private void grow() {
+        final long[] oldTable = table;
+        allocate(oldTable.length << 1);
+        for (final long key : oldTable) {
+            if (key != EMPTY) {
+                insert(key);
+            }
+        }
+    }
+
+    /**
+     * Adds a key that is known to be unique, without checking the load factor.
+     */
+    private void insert(final long value) {
+        final int mask = table.length - 1;
+        int index = (int) ((value * HASH_MULTIPLIER) >>> hashShift);
+        while (table[index] != EMPTY) {
+            index = (index + 1) & mask;
+        }
+        table[index] = value;
+    }
+
+    @Override
+    public int snapshotSize() {
+        // key count and number of keys, and then the keys
+        final long snapshotSize = 12L + 8L * size;
+        if (snapshotSize > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Hash filter has too many keys for a snapshot: " + size);
+        }
+        return (int) snapshotSize;
+    }
+
+    @Override
+    public void writeSnapshot(final ByteBuffer dst) {
+        dst.putLong(keyCount).putInt(size);
+        for (final long key : table) {
+            if (key != EMPTY) {
+                dst.putLong(key);
+            }
+        }
+    }
+
+    @Override
+    public void readSnapshot(final ByteBuffer src) {
+        if (src.remaining() < 12 || src.getLong() != keyCount) {
+            throw new IllegalArgumentException("Snapshot does not match filter size");
+        }
+        final int snapshotKeyCount = src.getInt();
+        if (src.remaining() != 8L * snapshotKeyCount) {
+            throw new IllegalArgumentException("Snapshot is incomplete");
+        }
+        if (snapshotKeyCount > maxCapacity >>> 1) {
+            throw new IllegalArgumentException("Snapshot has too many keys: " + snapshotKeyCount);
+        }
+        int capacity = INITIAL_CAPACITY;
+        while (capacity >>> 1 < snapshotKeyCount) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+        size = snapshotKeyCount;
+        for (int i = 0; i < snapshotKeyCount; ++i) {
+            insert(src.getLong());
+        }
+    }
+}
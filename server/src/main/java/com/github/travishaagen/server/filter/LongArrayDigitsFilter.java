@@ -0,0 +1,149 @@
+package com.github.travishaagen.server.filter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * {@code long[]} backed implementation of {@link com.github.travishaagen.server.filter.DigitsFilter}, which indexes
+ * 64-bit words with shifts and masks, rather than division and remainder, and tests and sets a value's bit with one
+ * unconditional read-modify-write of its word, so that there is no branch on whether the value is unique. Values can
+ * also be filtered in bulk with {@link #markAll(long[], int, int[])}, which overlaps their cache misses.
+ * <p>
+ * Snapshots use the same bit layout as {@link ByteBufferDigitsFilter}. Only one instance of this class should be
+ * created per application (singleton), because of high memory usage, and it is <b>not</b> thread-safe, except for its
+ * {@link DigitsQuery} methods.
+ * </p>
+ */
+public class LongArrayDigitsFilter implements SnapshotDigitsFilter, DigitsQuery {
+    private final long[] words;
+    private final int snapshotSize;
+
+    /**
+     * Result of loads that only touch cache lines
+     */
+    private long touchSink;
+
+    /**
+     * Constructor for a filter that can track all 1 billion nine-digit values.
+     */
+    public LongArrayDigitsFilter() {
+        this(VALUE_COUNT);
+    }
+
+    /**
+     * Constructor for a filter that tracks a smaller range of values, such as one partition of the nine-digit values.
+     *
+     * @param valueCount number of values, so that valid values are in the range [0, valueCount - 1]
+     */
+    public LongArrayDigitsFilter(final int valueCount) {
+        words = new long[(int) ((valueCount + 63L) >>> 6)];
+        snapshotSize = (valueCount + 7) / 8;
+    }
+
+    /**
+     * Determines if a nine-digit number is a unique value.
+     *
+     * @param value number in the range [0, 999999999]
+     * @return {@code true} if value is unique and was added to the lookup-table, and {@code false} otherwise
+     */
+    public boolean isUnique(final long value) {
+        // shift of a long only uses the low 6 bits of value
+        final int wordIndex = (int) (value >>> 6);
+        final long bit = 1L << value;
+        final long word = words[wordIndex];
+        words[wordIndex] = word | bit;
+        return (word & bit) == 0;
+    }
+
+    /**
+     * Adds values in bulk, in blocks of {@link #MARK_ALL_BLOCK_SIZE}, where the words of a block's values are all
+     * loaded before any of them are tested and set, so that their cache misses overlap.
+     *
+     * @param values        numbers in the range [0, 999999999]
+     * @param n             number of values to add, from the start of {@code values}
+     * @param uniqueIndexes receives the indexes in {@code values} of unique values, in order, which must have room for
+     *                      {@code n} indexes
+     * @return number of unique values, which is the number of indexes written to {@code uniqueIndexes}
+     */
+    @Override
+    public int markAll(final long[] values, final int n, final int[] uniqueIndexes) {
+        int uniqueCount = 0;
+        long touched = 0;
+        for (int blockStart = 0; blockStart < n; blockStart += MARK_ALL_BLOCK_SIZE) {
+            final int blockEnd = Math.min(blockStart + MARK_ALL_BLOCK_SIZE, n);
+            // independent loads, whose results are combined so that they are not optimized away
+            for (int i = blockStart; i < blockEnd; ++i) {
+                touched |= words[(int) (values[i] >>> 6)];
+            }
+            for (int i = blockStart; i < blockEnd; ++i) {
+                final long value = values[i];
+                final int wordIndex = (int) (value >>> 6);
+                final long word = words[wordIndex];
+                words[wordIndex] = word | (1L << value);
+                // always write the index, and only keep it by advancing the count when the bit was clear
+                uniqueIndexes[uniqueCount] = i;
+                uniqueCount += (int) (~word >>> value) & 1;
+            }
+        }
+        touchSink = touched;
+        return uniqueCount;
+    }
+
+    @Override
+    public boolean contains(final long value) {
+        return BitsetQueries.contains(words, value);
+    }
+
+    @Override
+    public long countRange(final long fromValue, final long toValue) {
+        return BitsetQueries.countRange(words, fromValue, toValue);
+    }
+
+    @Override
+    public int snapshotSize() {
+        return snapshotSize;
+    }
+
+    @Override
+    public void writeSnapshot(final ByteBuffer dst) {
+        final ByteOrder order = dst.order();
+        dst.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            final int fullWords = snapshotSize >>> 3;
+            for (int i = 0; i < fullWords; ++i) {
+                dst.putLong(words[i]);
+            }
+            // last bytes of a partial word
+            for (int b = 0; b < (snapshotSize & 7); ++b) {
+                dst.put((byte) (words[fullWords] >>> (b << 3)));
+            }
+        } finally {
+            dst.order(order);
+        }
+    }
+
+    @Override
+    public void readSnapshot(final ByteBuffer src) {
+        if (src.remaining() != snapshotSize) {
+            throw new IllegalArgumentException("Snapshot does not match filter size");
+        }
+        final ByteOrder order = src.order();
+        src.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            final int fullWords = snapshotSize >>> 3;
+            for (int i = 0; i < fullWords; ++i) {
+                words[i] = src.getLong();
+            }
+            if ((snapshotSize & 7) != 0) {
+                // last bytes of a partial word
+                long word = 0;
+                for (int b = 0; b < (snapshotSize & 7); ++b) {
+                    word |= (src.get() & 0xFFL) << (b << 3);
+                }
+                words[fullWords] = word;
+            }
+        } finally {
+            src.order(order);
+        }
+    }
+}
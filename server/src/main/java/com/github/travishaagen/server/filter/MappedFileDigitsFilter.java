@@ -0,0 +1,185 @@
+package com.github.travishaagen.server.filter;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import io.netty.util.internal.PlatformDependent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory-mapped file backed implementation of {@link com.github.travishaagen.server.filter.DigitsFilter}, so that the
+ * filter survives restarts without being rebuilt from the journal. The operating system pages the bitset in lazily,
+ * and writes dirty pages to disk in the background, and can also be asked to write them with {@code msync} at a fixed
+ * interval, which spreads out writing the bitset rather than leaving it all to {@link #close()}.
+ * <p>
+ * The file has no header, and uses the same bit layout as {@link ByteBufferDigitsFilter}, so that other tools can map
+ * and read it, followed by one trailer byte that is only set after the bitset has been forced to disk on close. Dirty
+ * pages of the bitset can reach the disk before the journal lines of their values, so after an unclean shutdown the
+ * bitset may hold values that the journal lost, and it is cleared when it is opened (see {@link #isCleared()}) so that
+ * it is rebuilt from the journal instead. Only one instance of this class should be created per file, and it is
+ * <b>not</b> thread-safe, except for its {@link DigitsQuery} methods.
+ * </p>
+ */
+public class MappedFileDigitsFilter implements DigitsFilter, DigitsQuery, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedFileDigitsFilter.class);
+
+    /**
+     * Trailer byte value of a file that was closed cleanly
+     */
+    private static final byte CLEAN_TRAILER = 1;
+
+    private final File file;
+    private final MappedByteBuffer lookupBuffer;
+
+    /**
+     * Index of the trailer byte, after the bitset
+     */
+    private final int trailerIndex;
+
+    /**
+     * Whether the bitset was created empty or cleared when the file was opened
+     */
+    private final boolean isCleared;
+
+    /**
+     * Little-endian view of the bitset, for reading it as 64-bit words in queries
+     */
+    private final ByteBuffer queryBuffer;
+
+    private final MsyncService msyncService;
+
+    /**
+     * Constructor, which maps an existing bitset file, or creates a new one. An existing file is cleared if it does not
+     * match the filter size, or was not closed cleanly.
+     *
+     * @param file            bitset file
+     * @param valueCount      number of values, so that valid values are in the range [0, valueCount - 1]
+     * @param msyncIntervalMs milliseconds between forcing dirty pages to disk, or {@code 0} to leave that to the
+     *                        operating system
+     * @throws IOException on failure to open or map the file
+     */
+    public MappedFileDigitsFilter(final File file, final int valueCount, final long msyncIntervalMs)
+            throws IOException {
+        this.file = file;
+        final int size = (valueCount + 7) / 8;
+        trailerIndex = size;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            final long length = randomAccessFile.length();
+            if (length == size + 1) {
+                randomAccessFile.seek(trailerIndex);
+                isCleared = randomAccessFile.read() != CLEAN_TRAILER;
+                if (isCleared) {
+                    LOGGER.warn("Clearing filter file {}, which was not closed cleanly", file.getAbsolutePath());
+                }
+            } else {
+                isCleared = true;
+                if (length != 0) {
+                    LOGGER.warn("Clearing filter file {}, which does not match the filter size", file.getAbsolutePath());
+                }
+            }
+            if (isCleared) {
+                randomAccessFile.setLength(0);
+                randomAccessFile.setLength(size + 1);
+            }
+            // mapping remains valid after the file is closed
+            lookupBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size + 1);
+        }
+        // the file is unclean until it is closed, which must be on disk before any values are added
+        lookupBuffer.put(trailerIndex, (byte) 0);
+        lookupBuffer.force();
+        queryBuffer = lookupBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        ((Buffer) queryBuffer).limit(size);
+        if (msyncIntervalMs > 0) {
+            msyncService = new MsyncService(msyncIntervalMs);
+            msyncService.startAsync();
+        } else {
+            msyncService = null;
+        }
+    }
+
+    /**
+     * Determines if a nine-digit number is a unique value.
+     *
+     * @param value number in the range [0, 999999999]
+     * @return {@code true} if value is unique and was added to the lookup-table, and {@code false} otherwise
+     */
+    public boolean isUnique(final long value) {
+        // find table position and add to table if unique
+        final int bucketIndex = (int) (value >>> 3);
+        final int bucketBit = 1 << ((int) value & 7);
+        final byte bucketByte = lookupBuffer.get(bucketIndex);
+        if ((bucketByte & bucketBit) == 0) {
+            lookupBuffer.put(bucketIndex, (byte) (bucketByte | bucketBit));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if the bitset was created empty or cleared when the file was opened, so that it must be
+     * rebuilt from the journal, and {@code false} if it holds every value from before the last clean shutdown
+     */
+    public boolean isCleared() {
+        return isCleared;
+    }
+
+    @Override
+    public boolean contains(final long value) {
+        return BitsetQueries.contains(queryBuffer, value);
+    }
+
+    @Override
+    public long countRange(final long fromValue, final long toValue) {
+        return BitsetQueries.countRange(queryBuffer, fromValue, toValue);
+    }
+
+    /**
+     * Stops periodic {@code msync}, forces dirty pages to disk, marks the file as closed cleanly, and unmaps the file.
+     * This must only be called once the journal lines of every value have been forced to disk.
+     */
+    @Override
+    public void close() {
+        if (msyncService != null) {
+            msyncService.stopAsync().awaitTerminated();
+        }
+        lookupBuffer.force();
+        lookupBuffer.put(trailerIndex, CLEAN_TRAILER);
+        lookupBuffer.force();
+        PlatformDependent.freeDirectBuffer(lookupBuffer);
+    }
+
+    /**
+     * Forces dirty pages of the bitset to disk at a fixed rate, concurrently with the consumer thread's updates.
+     */
+    private class MsyncService extends AbstractScheduledService {
+        private final long intervalMs;
+
+        private MsyncService(final long intervalMs) {
+            this.intervalMs = intervalMs;
+        }
+
+        @Override
+        protected void runOneIteration() throws Exception {
+            try {
+                lookupBuffer.force();
+            } catch (Exception e) {
+                LOGGER.error("Unable to msync filter file " + file.getAbsolutePath(), e);
+            }
+        }
+
+        @Override
+        protected Scheduler scheduler() {
+            return Scheduler.newFixedRateSchedule(intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
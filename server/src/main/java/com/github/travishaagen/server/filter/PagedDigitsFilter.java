@@ -0,0 +1,152 @@
+package com.github.travishaagen.server.filter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Paged bitset implementation of {@link com.github.travishaagen.server.filter.DigitsFilter}, where the bitset is
+ * divided into 8 KB pages that are only allocated when the first value in their range is added. Until then, a page
+ * is a shared, read-only, all-zero sentinel page, so lookups never need a {@code null} check. Startup is instant, and
+ * memory use is in proportion to the range of values seen, rather than always 119 MB.
+ * <p>
+ * Snapshots use the same bit layout as {@link ByteBufferDigitsFilter}, and pages that are all zero in a snapshot are
+ * not allocated when it is read. This class is <b>not</b> thread-safe.
+ * </p>
+ */
+public class PagedDigitsFilter implements SnapshotDigitsFilter {
+    /**
+     * Each page has {@code 1 << PAGE_SHIFT} bits, which is 8 KB, so that a page never spans more than one of the
+     * 64K-index stripes that {@link com.github.travishaagen.server.journal.JournalRecovery} marks in parallel
+     */
+    private static final int PAGE_SHIFT = 16;
+
+    private static final int WORDS_PER_PAGE = 1 << (PAGE_SHIFT - 6);
+    private static final int WORD_INDEX_MASK = WORDS_PER_PAGE - 1;
+
+    /**
+     * Shared page for ranges of values that have not been seen, which must never be modified
+     */
+    private static final long[] ZERO_PAGE = new long[WORDS_PER_PAGE];
+
+    private final long[][] pages;
+    private final int snapshotSize;
+
+    /**
+     * Constructor for a filter that can track all 1 billion nine-digit values.
+     */
+    public PagedDigitsFilter() {
+        this(VALUE_COUNT);
+    }
+
+    /**
+     * Constructor for a filter that tracks a smaller range of values, such as one partition of the nine-digit values.
+     *
+     * @param valueCount number of values, so that valid values are in the range [0, valueCount - 1]
+     */
+    public PagedDigitsFilter(final int valueCount) {
+        pages = new long[(int) ((valueCount + (1L << PAGE_SHIFT) - 1) >>> PAGE_SHIFT)][];
+        for (int i = 0; i < pages.length; ++i) {
+            pages[i] = ZERO_PAGE;
+        }
+        snapshotSize = (valueCount + 7) / 8;
+    }
+
+    /**
+     * Determines if a nine-digit number is a unique value.
+     *
+     * @param value number in the range [0, 999999999]
+     * @return {@code true} if value is unique and was added to the lookup-table, and {@code false} otherwise
+     */
+    public boolean isUnique(final long value) {
+        final int pageIndex = (int) (value >>> PAGE_SHIFT);
+        final int wordIndex = (int) (value >>> 6) & WORD_INDEX_MASK;
+        final long bit = 1L << value;
+        long[] page = pages[pageIndex];
+        if ((page[wordIndex] & bit) != 0) {
+            return false;
+        }
+        if (page == ZERO_PAGE) {
+            // first value in this page's range
+            page = pages[pageIndex] = new long[WORDS_PER_PAGE];
+        }
+        page[wordIndex] |= bit;
+        return true;
+    }
+
+    /**
+     * @return number of pages that have been allocated
+     */
+    public int allocatedPageCount() {
+        int count = 0;
+        for (final long[] page : pages) {
+            if (page != ZERO_PAGE) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int snapshotSize() {
+        return snapshotSize;
+    }
+
+    @Override
+    public void writeSnapshot(final ByteBuffer dst) {
+        final ByteOrder order = dst.order();
+        dst.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int remaining = snapshotSize;
+            for (final long[] page : pages) {
+                for (int i = 0; i < WORDS_PER_PAGE && remaining != 0; ++i) {
+                    if (remaining >= 8) {
+                        dst.putLong(page[i]);
+                        remaining -= 8;
+                    } else {
+                        // last bytes of a partial word
+                        for (int b = 0; b < remaining; ++b) {
+                            dst.put((byte) (page[i] >>> (b << 3)));
+                        }
+                        remaining = 0;
+                    }
+                }
+            }
+        } finally {
+            dst.order(order);
+        }
+    }
+
+    @Override
+    public void readSnapshot(final ByteBuffer src) {
+        if (src.remaining() != snapshotSize) {
+            throw new IllegalArgumentException("Snapshot does not match filter size");
+        }
+        final ByteOrder order = src.order();
+        src.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            final long[] words = new long[WORDS_PER_PAGE];
+            int remaining = snapshotSize;
+            for (int pageIndex = 0; pageIndex < pages.length; ++pageIndex) {
+                long nonZero = 0;
+                for (int i = 0; i < WORDS_PER_PAGE; ++i) {
+                    long word = 0;
+                    if (remaining >= 8) {
+                        word = src.getLong();
+                        remaining -= 8;
+                    } else {
+                        // last bytes of a partial word
+                        for (int b = 0; b < remaining; ++b) {
+                            word |= (src.get() & 0xFFL) << (b << 3);
+                        }
+                        remaining = 0;
+                    }
+                    words[i] = word;
+                    nonZero |= word;
+                }
+                pages[pageIndex] = nonZero == 0 ? ZERO_PAGE : words.clone();
+            }
+        } finally {
+            src.order(order);
+        }
+    }
+}
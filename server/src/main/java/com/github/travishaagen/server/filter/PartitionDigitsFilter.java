@@ -0,0 +1,65 @@
+package com.github.travishaagen.server.filter;
+
+/**
+ * {@link com.github.travishaagen.server.filter.DigitsFilter} for one partition of the nine-digit values, where a value
+ * belongs to partition {@code value % partitionCount}. Values are mapped to the dense range
+ * [0, {@link #valueCount(int)}) of a smaller wrapped filter, so that each partition only allocates its own slice of
+ * the lookup-table. {@link #isUnique(long)} is thread-safe only if the wrapped filter is, and
+ * {@link #markAll(long[], int, int[])} is not thread-safe.
+ */
+public class PartitionDigitsFilter implements DigitsFilter {
+    private final DigitsFilter digitsFilter;
+    private final int partitionCount;
+
+    /**
+     * Reusable buffer of values mapped to the wrapped filter's range, for {@link #markAll(long[], int, int[])}
+     */
+    private long[] partitionValues = new long[0];
+
+    /**
+     * Constructor
+     *
+     * @param digitsFilter   filter with a capacity of at least {@link #valueCount(int)} values
+     * @param partitionCount total number of partitions
+     */
+    public PartitionDigitsFilter(final DigitsFilter digitsFilter, final int partitionCount) {
+        this.digitsFilter = digitsFilter;
+        this.partitionCount = partitionCount;
+    }
+
+    /**
+     * Number of values in each partition, which is the capacity needed by a wrapped filter.
+     *
+     * @param keyCount       number of possible values, such as {@link #VALUE_COUNT} for nine-digit values
+     * @param partitionCount total number of partitions
+     * @return number of values per partition
+     */
+    public static long valueCount(final long keyCount, final int partitionCount) {
+        return (keyCount + partitionCount - 1) / partitionCount;
+    }
+
+    @Override
+    public boolean isUnique(final long value) {
+        return digitsFilter.isUnique(value / partitionCount);
+    }
+
+    /**
+     * Maps values to the wrapped filter's range, and then adds them in bulk with the wrapped filter.
+     *
+     * @param values        numbers in the range [0, 999999999]
+     * @param n             number of values to add, from the start of {@code values}
+     * @param uniqueIndexes receives the indexes in {@code values} of unique values, in order, which must have room for
+     *                      {@code n} indexes
+     * @return number of unique values, which is the number of indexes written to {@code uniqueIndexes}
+     */
+    @Override
+    public int markAll(final long[] values, final int n, final int[] uniqueIndexes) {
+        if (partitionValues.length < n) {
+            partitionValues = new long[n];
+        }
+        for (int i = 0; i < n; ++i) {
+            partitionValues[i] = values[i] / partitionCount;
+        }
+        return digitsFilter.markAll(partitionValues, n, uniqueIndexes);
+    }
+}
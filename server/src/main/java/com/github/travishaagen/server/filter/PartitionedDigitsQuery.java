@@ -0,0 +1,45 @@
+package com.github.travishaagen.server.filter;
+
+/**
+ * {@link DigitsQuery} of values that are partitioned across filter slices, where value {@code v} is
+ * {@code v / partitionCount} in the slice of partition {@code v % partitionCount} (see
+ * {@link PartitionDigitsFilter}). A range of values is a range of each slice, which is counted by every slice's
+ * query.
+ */
+public class PartitionedDigitsQuery implements DigitsQuery {
+    private final DigitsQuery[] partitions;
+
+    /**
+     * Constructor
+     *
+     * @param partitions queries of the filter slices, in partition order
+     */
+    public PartitionedDigitsQuery(final DigitsQuery[] partitions) {
+        this.partitions = partitions;
+    }
+
+    @Override
+    public boolean contains(final long value) {
+        return value >= 0 && partitions[(int) (value % partitions.length)].contains(value / partitions.length);
+    }
+
+    @Override
+    public long countRange(final long fromValue, final long toValue) {
+        final long from = Math.max(fromValue, 0L);
+        if (from >= toValue) {
+            return 0L;
+        }
+        final int partitionCount = partitions.length;
+        long count = 0;
+        for (int partition = 0; partition < partitionCount; ++partition) {
+            // slice values i, where i * partitionCount + partition is in the range
+            count += partitions[partition].countRange(ceilDiv(from - partition, partitionCount),
+                    ceilDiv(toValue - partition, partitionCount));
+        }
+        return count;
+    }
+
+    private static long ceilDiv(final long dividend, final int divisor) {
+        return -Math.floorDiv(-dividend, divisor);
+    }
+}
@@ -0,0 +1,488 @@
+package com.github.travishaagen.server.filter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compressed bitmap implementation of {@link com.github.travishaagen.server.filter.DigitsFilter}, in the style of a
+ * Roaring bitmap, for sparse or clustered values. Values are divided into chunks of 64K values by their high 16 bits,
+ * and each chunk that has values has one container, which is the most compact of,
+ * <ul>
+ * <li>an array container, which is a sorted array of up to 4096 low 16-bit values</li>
+ * <li>a bitmap container, which is a 8 KB bitset</li>
+ * <li>a run container, which is a sorted array of runs of consecutive values</li>
+ * </ul>
+ * Containers are found by direct index, so lookups are a binary search within one container at most. Containers are
+ * converted as they grow, where an array container that is full becomes a bitmap or run container, a run container
+ * with too many runs becomes a bitmap container, and a bitmap container is checked for runs every 4096 values.
+ * <p>
+ * Snapshots are compact, with the size of the containers rather than of the whole range of values. This class is
+ * <b>not</b> thread-safe.
+ * </p>
+ */
+public class RoaringDigitsFilter implements SnapshotDigitsFilter {
+    private static final int CHUNK_SHIFT = 16;
+    private static final int LOW_MASK = 0xFFFF;
+
+    /**
+     * Most values in an array container, which is where an array is as large as a bitmap
+     */
+    private static final int MAX_ARRAY_SIZE = 4096;
+
+    /**
+     * Most runs in a run container, which is where runs are as large as a bitmap
+     */
+    private static final int MAX_RUN_COUNT = 2048;
+
+    /**
+     * Bitmap containers with at most this many runs are converted to run containers, which is lower than
+     * {@link #MAX_RUN_COUNT} so that containers do not repeatedly convert back and forth
+     */
+    private static final int BITMAP_TO_RUN_MAX_RUN_COUNT = MAX_RUN_COUNT / 2;
+
+    private static final byte ARRAY_CONTAINER = 'A';
+    private static final byte BITMAP_CONTAINER = 'B';
+    private static final byte RUN_CONTAINER = 'R';
+
+    private final int valueCount;
+    private final Container[] containers;
+
+    /**
+     * Constructor for a filter that can track all 1 billion nine-digit values.
+     */
+    public RoaringDigitsFilter() {
+        this(VALUE_COUNT);
+    }
+
+    /**
+     * Constructor for a filter that tracks a smaller range of values, such as one partition of the nine-digit values.
+     *
+     * @param valueCount number of values, so that valid values are in the range [0, valueCount - 1]
+     */
+    public RoaringDigitsFilter(final int valueCount) {
+        this.valueCount = valueCount;
+        containers = new Container[(valueCount + LOW_MASK) >>> CHUNK_SHIFT];
+    }
+
+    /**
+     * Determines if a nine-digit number is a unique value.
+     *
+     * @param value number in the range [0, 999999999]
+     * @return {@code true} if value is unique and was added to the lookup-table, and {@code false} otherwise
+     */
+    public boolean isUnique(final long value) {
+        final int chunk = (int) (value >>> CHUNK_SHIFT);
+        final int low = (int) value & LOW_MASK;
+        final Container container = containers[chunk];
+        if (container == null) {
+            containers[chunk] = new ArrayContainer().add(low);
+            return true;
+        }
+        if (container.contains(low)) {
+            return false;
+        }
+        containers[chunk] = container.add(low);
+        return true;
+    }
+
+    /**
+     * Estimates memory used by containers, excluding object headers.
+     *
+     * @return size in bytes
+     */
+    public long sizeInBytes() {
+        long size = (long) containers.length * 4;
+        for (final Container container : containers) {
+            if (container != null) {
+                size += container.sizeInBytes();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public int snapshotSize() {
+        // value count and container count, and then each container's chunk index, type and contents
+        int size = 8;
+        for (final Container container : containers) {
+            if (container != null) {
+                size += 3 + container.serializedSize();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void writeSnapshot(final ByteBuffer dst) {
+        int containerCount = 0;
+        for (final Container container : containers) {
+            if (container != null) {
+                ++containerCount;
+            }
+        }
+        dst.putInt(valueCount).putInt(containerCount);
+        for (int chunk = 0; chunk < containers.length; ++chunk) {
+            final Container container = containers[chunk];
+            if (container != null) {
+                dst.putShort((short) chunk).put(container.type());
+                container.write(dst);
+            }
+        }
+    }
+
+    @Override
+    public void readSnapshot(final ByteBuffer src) {
+        if (src.remaining() < 8 || src.getInt() != valueCount) {
+            throw new IllegalArgumentException("Snapshot does not match filter size");
+        }
+        Arrays.fill(containers, null);
+        final int containerCount = src.getInt();
+        for (int i = 0; i < containerCount; ++i) {
+            final int chunk = src.getShort() & LOW_MASK;
+            if (chunk >= containers.length) {
+                throw new IllegalArgumentException("Snapshot container is out of range: " + chunk);
+            }
+            final byte type = src.get();
+            switch (type) {
+                case ARRAY_CONTAINER:
+                    containers[chunk] = ArrayContainer.read(src);
+                    break;
+                case BITMAP_CONTAINER:
+                    containers[chunk] = BitmapContainer.read(src);
+                    break;
+                case RUN_CONTAINER:
+                    containers[chunk] = RunContainer.read(src);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown snapshot container type: " + type);
+            }
+        }
+    }
+
+    /**
+     * Set of low 16-bit values within one chunk.
+     */
+    private abstract static class Container {
+        abstract boolean contains(int low);
+
+        /**
+         * Adds a value, which must not already be in this container.
+         *
+         * @param low value
+         * @return this container, or a new container if this one was converted to another type
+         */
+        abstract Container add(int low);
+
+        abstract long sizeInBytes();
+
+        abstract byte type();
+
+        abstract int serializedSize();
+
+        abstract void write(ByteBuffer dst);
+    }
+
+    /**
+     * Sorted array of values, where {@code char} is used as an unsigned 16-bit integer.
+     */
+    private static final class ArrayContainer extends Container {
+        private char[] values = new char[4];
+        private int size;
+
+        @Override
+        boolean contains(final int low) {
+            return Arrays.binarySearch(values, 0, size, (char) low) >= 0;
+        }
+
+        @Override
+        Container add(final int low) {
+            if (size == MAX_ARRAY_SIZE) {
+                // array is as large as a bitmap, so use runs instead if they are smaller
+                final int runCount = countRuns(values, size);
+                final Container container = runCount < MAX_RUN_COUNT ? RunContainer.of(values, size, runCount)
+                        : BitmapContainer.of(values, size);
+                return container.add(low);
+            }
+            final int index = -(Arrays.binarySearch(values, 0, size, (char) low) + 1);
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(size << 1, MAX_ARRAY_SIZE));
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = (char) low;
+            ++size;
+            return this;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 4 + values.length * 2L;
+        }
+
+        @Override
+        byte type() {
+            return ARRAY_CONTAINER;
+        }
+
+        @Override
+        int serializedSize() {
+            return 2 + size * 2;
+        }
+
+        @Override
+        void write(final ByteBuffer dst) {
+            dst.putShort((short) (size - 1));
+            for (int i = 0; i < size; ++i) {
+                dst.putChar(values[i]);
+            }
+        }
+
+        static ArrayContainer read(final ByteBuffer src) {
+            final ArrayContainer container = new ArrayContainer();
+            container.size = (src.getShort() & LOW_MASK) + 1;
+            if (container.size > MAX_ARRAY_SIZE) {
+                throw new IllegalArgumentException("Snapshot array container is too large: " + container.size);
+            }
+            container.values = new char[container.size];
+            for (int i = 0; i < container.size; ++i) {
+                container.values[i] = src.getChar();
+            }
+            return container;
+        }
+
+        private static int countRuns(final char[] values, final int size) {
+            int runCount = size == 0 ? 0 : 1;
+            for (int i = 1; i < size; ++i) {
+                if (values[i] != values[i - 1] + 1) {
+                    ++runCount;
+                }
+            }
+            return runCount;
+        }
+    }
+
+    /**
+     * Bitset of all 64K values in a chunk.
+     */
+    private static final class BitmapContainer extends Container {
+        private static final int WORD_COUNT = 1 << (CHUNK_SHIFT - 6);
+
+        private final long[] words = new long[WORD_COUNT];
+        private int cardinality;
+
+        static BitmapContainer of(final char[] values, final int size) {
+            final BitmapContainer container = new BitmapContainer();
+            for (int i = 0; i < size; ++i) {
+                container.words[values[i] >>> 6] |= 1L << values[i];
+            }
+            container.cardinality = size;
+            return container;
+        }
+
+        @Override
+        boolean contains(final int low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Container add(final int low) {
+            words[low >>> 6] |= 1L << low;
+            if ((++cardinality & (MAX_ARRAY_SIZE - 1)) == 0) {
+                // check if clustered values would be smaller as runs
+                final int runCount = countRuns();
+                if (runCount <= BITMAP_TO_RUN_MAX_RUN_COUNT) {
+                    return RunContainer.of(this, runCount);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Counts runs by counting the starts of runs, which are set bits whose preceding bit is not set.
+         */
+        private int countRuns() {
+            int runCount = 0;
+            long previousHighBit = 0;
+            for (final long word : words) {
+                runCount += Long.bitCount(word & ~((word << 1) | previousHighBit));
+                previousHighBit = word >>> 63;
+            }
+            return runCount;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 4 + WORD_COUNT * 8L;
+        }
+
+        @Override
+        byte type() {
+            return BITMAP_CONTAINER;
+        }
+
+        @Override
+        int serializedSize() {
+            return WORD_COUNT * 8;
+        }
+
+        @Override
+        void write(final ByteBuffer dst) {
+            for (final long word : words) {
+                dst.putLong(word);
+            }
+        }
+
+        static BitmapContainer read(final ByteBuffer src) {
+            final BitmapContainer container = new BitmapContainer();
+            for (int i = 0; i < WORD_COUNT; ++i) {
+                container.words[i] = src.getLong();
+                container.cardinality += Long.bitCount(container.words[i]);
+            }
+            return container;
+        }
+    }
+
+    /**
+     * Sorted array of runs of consecutive values, where each run is a start value and a length minus one.
+     */
+    private static final class RunContainer extends Container {
+        private char[] starts;
+        private char[] lengths;
+        private int runCount;
+
+        private RunContainer(final int capacity) {
+            starts = new char[capacity];
+            lengths = new char[capacity];
+        }
+
+        static RunContainer of(final char[] values, final int size, final int runCount) {
+            final RunContainer container = new RunContainer(runCount + 1);
+            int run = -1;
+            for (int i = 0; i < size; ++i) {
+                if (run >= 0 && values[i] == container.starts[run] + container.lengths[run] + 1) {
+                    ++container.lengths[run];
+                } else {
+                    container.starts[++run] = values[i];
+                }
+            }
+            container.runCount = run + 1;
+            return container;
+        }
+
+        static RunContainer of(final BitmapContainer bitmap, final int runCount) {
+            final RunContainer container = new RunContainer(runCount + 1);
+            int run = -1;
+            boolean inRun = false;
+            for (int low = 0; low <= LOW_MASK; ++low) {
+                if (bitmap.contains(low)) {
+                    if (inRun) {
+                        ++container.lengths[run];
+                    } else {
+                        container.starts[++run] = (char) low;
+                        inRun = true;
+                    }
+                } else {
+                    inRun = false;
+                }
+            }
+            container.runCount = run + 1;
+            return container;
+        }
+
+        /**
+         * @return index of the last run that starts at or before {@code low}, or {@code -1} if there is none
+         */
+        private int floorRun(final int low) {
+            final int index = Arrays.binarySearch(starts, 0, runCount, (char) low);
+            return index >= 0 ? index : -(index + 1) - 1;
+        }
+
+        @Override
+        boolean contains(final int low) {
+            final int run = floorRun(low);
+            return run >= 0 && low <= starts[run] + lengths[run];
+        }
+
+        @Override
+        Container add(final int low) {
+            final int run = floorRun(low);
+            final int next = run + 1;
+            final boolean extendsRun = run >= 0 && low == starts[run] + lengths[run] + 1;
+            final boolean precedesNext = next < runCount && low + 1 == starts[next];
+            if (extendsRun && precedesNext) {
+                // value joins two runs
+                lengths[run] = (char) (lengths[run] + lengths[next] + 2);
+                System.arraycopy(starts, next + 1, starts, next, runCount - next - 1);
+                System.arraycopy(lengths, next + 1, lengths, next, runCount - next - 1);
+                --runCount;
+            } else if (extendsRun) {
+                ++lengths[run];
+            } else if (precedesNext) {
+                --starts[next];
+                ++lengths[next];
+            } else {
+                if (runCount == MAX_RUN_COUNT) {
+                    // runs are as large as a bitmap
+                    return toBitmap().add(low);
+                }
+                if (runCount == starts.length) {
+                    starts = Arrays.copyOf(starts, Math.min(runCount << 1, MAX_RUN_COUNT));
+                    lengths = Arrays.copyOf(lengths, starts.length);
+                }
+                System.arraycopy(starts, next, starts, next + 1, runCount - next);
+                System.arraycopy(lengths, next, lengths, next + 1, runCount - next);
+                starts[next] = (char) low;
+                lengths[next] = 0;
+                ++runCount;
+            }
+            return this;
+        }
+
+        private BitmapContainer toBitmap() {
+            final BitmapContainer bitmap = new BitmapContainer();
+            for (int run = 0; run < runCount; ++run) {
+                for (int low = starts[run], end = starts[run] + lengths[run]; low <= end; ++low) {
+                    bitmap.words[low >>> 6] |= 1L << low;
+                }
+                bitmap.cardinality += lengths[run] + 1;
+            }
+            return bitmap;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 4 + starts.length * 4L;
+        }
+
+        @Override
+        byte type() {
+            return RUN_CONTAINER;
+        }
+
+        @Override
+        int serializedSize() {
+            return 2 + runCount * 4;
+        }
+
+        @Override
+        void write(final ByteBuffer dst) {
+            dst.putShort((short) (runCount - 1));
+            for (int run = 0; run < runCount; ++run) {
+                dst.putChar(starts[run]).putChar(lengths[run]);
+            }
+        }
+
+        static RunContainer read(final ByteBuffer src) {
+            final int runCount = (src.getShort() & LOW_MASK) + 1;
+            if (runCount > MAX_RUN_COUNT) {
+                throw new IllegalArgumentException("Snapshot run container is too large: " + runCount);
+            }
+            final RunContainer container = new RunContainer(runCount);
+            for (int run = 0; run < runCount; ++run) {
+                container.starts[run] = src.getChar();
+                container.lengths[run] = src.getChar();
+            }
+            container.runCount = runCount;
+            return container;
+        }
+    }
+}
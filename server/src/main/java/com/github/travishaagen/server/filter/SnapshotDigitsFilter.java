@@ -0,0 +1,32 @@
+package com.github.travishaagen.server.filter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link DigitsFilter} whose state can be copied to and from a snapshot, so that it can be saved to disk and loaded on
+ * startup without replaying the whole journal. The snapshot format is up to the filter, such as its raw bitset bytes,
+ * or a compressed form whose size depends on the values that have been added.
+ */
+public interface SnapshotDigitsFilter extends DigitsFilter {
+    /**
+     * @return number of bytes in a snapshot of the filter's current state
+     */
+    int snapshotSize();
+
+    /**
+     * Copies the filter's state into a buffer, starting at the buffer's position, which is advanced by
+     * {@link #snapshotSize()} bytes. The filter must not be modified concurrently.
+     *
+     * @param dst destination buffer
+     */
+    void writeSnapshot(final ByteBuffer dst);
+
+    /**
+     * Replaces the filter's state with a snapshot, which is the buffer's remaining bytes.
+     *
+     * @param src snapshot
+     * @throws IllegalArgumentException if the snapshot is not from a filter of the same type and size, which leaves
+     *                                  this filter's state undefined
+     */
+    void readSnapshot(final ByteBuffer src);
+}
@@ -0,0 +1,39 @@
+package com.github.travishaagen.server.filter;
+
+import java.util.function.LongSupplier;
+
+/**
+ * {@link DigitsQuery} that answers {@link #count()} from a count of unique values that is maintained as they are
+ * added, such as the number of lines in a namespace's journal files, rather than by counting every bit of the filter.
+ * Other queries are answered by the filter's own query.
+ */
+public class UniqueCountDigitsQuery implements DigitsQuery {
+    private final DigitsQuery query;
+    private final LongSupplier uniqueCount;
+
+    /**
+     * Constructor
+     *
+     * @param query       queries of the filter
+     * @param uniqueCount supplies the number of distinct values that have been seen, and can be called from any thread
+     */
+    public UniqueCountDigitsQuery(final DigitsQuery query, final LongSupplier uniqueCount) {
+        this.query = query;
+        this.uniqueCount = uniqueCount;
+    }
+
+    @Override
+    public boolean contains(final long value) {
+        return query.contains(value);
+    }
+
+    @Override
+    public long countRange(final long fromValue, final long toValue) {
+        return query.countRange(fromValue, toValue);
+    }
+
+    @Override
+    public long count() {
+        return uniqueCount.getAsLong();
+    }
+}
@@ -0,0 +1,260 @@
+package com.github.travishaagen.server.filter;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-windowed implementation of {@link com.github.travishaagen.server.filter.DigitsFilter}, where a value is only a
+ * duplicate if it was seen recently, rather than at any time since startup. The filter has a fixed number of bitset
+ * generations, which rotate at a fixed interval. New values are added to the current generation, the next
+ * {@code generations - 2} older generations are also read, and the oldest generation is cleared to become the next
+ * current generation, so that a value is remembered for between {@code generations - 2} and {@code generations - 1}
+ * rotation intervals after it was last seen.
+ * <p>
+ * The generations of each 64-value word are interleaved in one {@code long[]}, so that testing a value reads a single
+ * cache line, whatever the number of generations. The oldest generation is cleared in slices by a background thread,
+ * during the first half of each interval, rather than in one sweep when rotating. The consumer thread only clears
+ * slices itself if they remain when it rotates, which happens after rotations are missed while no values arrive.
+ * </p>
+ * <p>
+ * Only one thread may add values, because like the other consumer filters it is <b>not</b> thread-safe, but the
+ * background thread runs safely alongside it.
+ * </p>
+ */
+public class WindowedDigitsFilter implements DigitsFilter, Closeable {
+    /**
+     * Minimum number of generations, which are the current, one older and one being cleared
+     */
+    public static final int MIN_GENERATIONS = 3;
+
+    /**
+     * Maximum number of generations, so that a word's generations fit in a 64-byte cache line
+     */
+    public static final int MAX_GENERATIONS = 8;
+
+    private static final int CLEAR_SLICE_WORDS = 1 << 16;
+    private static final int CLEAR_RUNS_PER_ROTATION = 16;
+
+    private final long[] words;
+    private final int generations;
+    private final int wordCount;
+    private final int sliceCount;
+
+    /**
+     * Generations that are read, starting with the current generation
+     */
+    private final int[] activeGenerations;
+
+    /**
+     * Number of rotations that are due, which is incremented by the background thread
+     */
+    private final AtomicLong dueRotations = new AtomicLong();
+
+    /**
+     * Slices of the oldest generation that have been claimed, and have been cleared, by either thread
+     */
+    private final AtomicInteger claimedSlices;
+    private final AtomicInteger clearedSlices;
+
+    private final ClearingService clearingService;
+
+    private long rotation;
+    private int currentGeneration;
+
+    /**
+     * Generation being cleared, which the background thread reads only after claiming a slice, because it is written
+     * before the claimed slices are reset
+     */
+    private int clearingGeneration;
+
+    /**
+     * Constructor
+     *
+     * @param valueCount         number of values, so that valid values are in the range [0, valueCount - 1]
+     * @param generations        number of bitset generations, from {@link #MIN_GENERATIONS} to
+     *                           {@link #MAX_GENERATIONS}
+     * @param rotationIntervalMs milliseconds between rotations of the generations
+     * @throws IllegalArgumentException if the number of generations or the interval are out of range
+     */
+    public WindowedDigitsFilter(final int valueCount, final int generations, final long rotationIntervalMs) {
+        if (generations < MIN_GENERATIONS || generations > MAX_GENERATIONS) {
+            throw new IllegalArgumentException("Generations must be from " + MIN_GENERATIONS + " to "
+                    + MAX_GENERATIONS + ": " + generations);
+        }
+        if (rotationIntervalMs <= 0) {
+            throw new IllegalArgumentException("Rotation interval must be positive: " + rotationIntervalMs);
+        }
+        this.generations = generations;
+        wordCount = (int) ((valueCount + 63L) >>> 6);
+        words = new long[wordCount * generations];
+        sliceCount = (wordCount + CLEAR_SLICE_WORDS - 1) / CLEAR_SLICE_WORDS;
+        // every generation starts empty, so there is nothing to clear
+        claimedSlices = new AtomicInteger(sliceCount);
+        clearedSlices = new AtomicInteger(sliceCount);
+        activeGenerations = new int[generations - 1];
+        updateGenerations();
+
+        clearingService = new ClearingService(rotationIntervalMs);
+        clearingService.startAsync();
+    }
+
+    /**
+     * Determines if a number was not seen within the window, and adds it to the current generation.
+     *
+     * @param value number in the range [0, valueCount - 1]
+     * @return {@code true} if value is unique within the window, and {@code false} otherwise
+     */
+    @Override
+    public boolean isUnique(final long value) {
+        if (dueRotations.get() != rotation) {
+            rotate();
+        }
+        return testAndSet(value);
+    }
+
+    /**
+     * Adds values in bulk, and only checks for a due rotation once per call.
+     *
+     * @param values        numbers in the range [0, valueCount - 1]
+     * @param n             number of values to add, from the start of {@code values}
+     * @param uniqueIndexes receives the indexes in {@code values} of unique values, in order, which must have room for
+     *                      {@code n} indexes
+     * @return number of unique values, which is the number of indexes written to {@code uniqueIndexes}
+     */
+    @Override
+    public int markAll(final long[] values, final int n, final int[] uniqueIndexes) {
+        if (dueRotations.get() != rotation) {
+            rotate();
+        }
+        int uniqueCount = 0;
+        for (int i = 0; i < n; ++i) {
+            if (testAndSet(values[i])) {
+                uniqueIndexes[uniqueCount++] = i;
+            }
+        }
+        return uniqueCount;
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    @Override
+    public void close() {
+        clearingService.stopAsync().awaitTerminated();
+    }
+
+    /**
+     * Requests a rotation, as if the rotation interval had elapsed, which takes effect on the next call to add values.
+     */
+    void requestRotation() {
+        dueRotations.incrementAndGet();
+    }
+
+    private boolean testAndSet(final long value) {
+        final int base = (int) (value >>> 6) * generations;
+        // shift of a long only uses the low 6 bits of value
+        final long bit = 1L << value;
+        long seen = 0;
+        for (final int generation : activeGenerations) {
+            seen |= words[base + generation];
+        }
+        words[base + currentGeneration] |= bit;
+        return (seen & bit) == 0;
+    }
+
+    /**
+     * Rotates the generations until they are up to date with the due rotations.
+     */
+    private void rotate() {
+        final long due = dueRotations.get();
+        while (rotation < due) {
+            finishClearing();
+            if (due - rotation >= generations - 1) {
+                // every generation has expired, so clear them all at once rather than one rotation at a time
+                Arrays.fill(words, 0L);
+                rotation = due - 1;
+            }
+            ++rotation;
+            updateGenerations();
+            // publishes the generation to clear, and this thread's writes to it, to the background thread
+            clearedSlices.set(0);
+            claimedSlices.set(0);
+        }
+    }
+
+    private void updateGenerations() {
+        currentGeneration = (int) (rotation % generations);
+        for (int i = 0; i < activeGenerations.length; ++i) {
+            activeGenerations[i] = (currentGeneration - i + generations) % generations;
+        }
+        clearingGeneration = (currentGeneration + 1) % generations;
+    }
+
+    /**
+     * Clears any slices of the oldest generation that the background thread has not claimed, and waits for it to
+     * finish the slices that it has claimed.
+     */
+    private void finishClearing() {
+        int slice;
+        while ((slice = claimedSlices.getAndIncrement()) < sliceCount) {
+            clearSlice(slice);
+            clearedSlices.incrementAndGet();
+        }
+        while (clearedSlices.get() < sliceCount) {
+            Thread.yield();
+        }
+    }
+
+    private void clearSlice(final int slice) {
+        final int end = Math.min(wordCount, (slice + 1) * CLEAR_SLICE_WORDS);
+        for (int wordIndex = slice * CLEAR_SLICE_WORDS; wordIndex < end; ++wordIndex) {
+            words[wordIndex * generations + clearingGeneration] = 0L;
+        }
+    }
+
+    /**
+     * Signals rotations when they are due, and clears slices of the oldest generation, at a fixed rate, concurrently
+     * with the consumer thread.
+     */
+    private class ClearingService extends AbstractScheduledService {
+        private final long rotationIntervalNanos;
+        private final long runIntervalMs;
+        private final int slicesPerRun;
+        private final long startNanos = System.nanoTime();
+        private long signalledRotations;
+
+        private ClearingService(final long rotationIntervalMs) {
+            rotationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(rotationIntervalMs);
+            runIntervalMs = Math.max(1, rotationIntervalMs / CLEAR_RUNS_PER_ROTATION);
+            // finish clearing within half of the interval
+            slicesPerRun = Math.max(1, (2 * sliceCount + CLEAR_RUNS_PER_ROTATION - 1) / CLEAR_RUNS_PER_ROTATION);
+        }
+
+        @Override
+        protected void runOneIteration() throws Exception {
+            final long elapsedRotations = (System.nanoTime() - startNanos) / rotationIntervalNanos;
+            while (signalledRotations < elapsedRotations) {
+                ++signalledRotations;
+                dueRotations.incrementAndGet();
+            }
+            for (int i = 0; i < slicesPerRun && claimedSlices.get() < sliceCount; ++i) {
+                final int slice = claimedSlices.getAndIncrement();
+                if (slice >= sliceCount) {
+                    break;
+                }
+                clearSlice(slice);
+                clearedSlices.incrementAndGet();
+            }
+        }
+
+        @Override
+        protected Scheduler scheduler() {
+            return Scheduler.newFixedRateSchedule(runIntervalMs, runIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
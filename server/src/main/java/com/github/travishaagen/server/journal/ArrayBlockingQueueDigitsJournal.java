@@ -1,17 +1,11 @@
 package com.github.travishaagen.server.journal;
 
 import com.github.travishaagen.server.StatisticsPrinter;
-import com.github.travishaagen.server.filter.ByteBufferDigitsFilter;
 import com.github.travishaagen.server.filter.DigitsFilter;
 import com.google.common.util.concurrent.AbstractScheduledService;
-import io.netty.buffer.ByteBuf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -19,9 +13,9 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Class that writes unique (non-duplicate) nine-digit numbers to a journal file, that is backed by an
+ * Class that writes unique (non-duplicate) numbers to a journal file, that is backed by an
  * {@code ArrayBlockingQueue}, for multiple writer threads and a single consumer thread. This class does
- * <b>not</b> pool {@code byte[]} instances that are added to the queue, and {@code byte[]} references are
+ * <b>not</b> pool the {@code Long} instances that are added to the queue, and {@code Long} references are
  * drained into a buffer once every millisecond.
  */
 public class ArrayBlockingQueueDigitsJournal implements DigitsJournal {
@@ -29,34 +23,59 @@ public class ArrayBlockingQueueDigitsJournal implements DigitsJournal {
     private static final int CONSUMER_SLEEP_DURATION_MS = 1;
     private static final int MAX_BATCH_SIZE = 1024 * 8;
 
-    private final BlockingQueue<byte[]> queue;
+    private final int maxQueueSize;
+    private final BlockingQueue<Long> queue;
     private final QueueConsumer consumer;
 
     /**
      * Constructor
      *
-     * @param maxQueueSize      maximum size of queue for nine-digit strings
+     * @param maxQueueSize      maximum size of queue for numbers
+     * @param digitsFilter      filter used by the consumer thread, or {@code null} if written values are already unique
      * @param statisticsPrinter statistics printer
-     * @param file              journal file
+     * @param journalWriter     writer of the journal file, which is closed on shutdown
      */
-    public ArrayBlockingQueueDigitsJournal(final int maxQueueSize, final StatisticsPrinter statisticsPrinter, final File file) {
+    public ArrayBlockingQueueDigitsJournal(final int maxQueueSize, final DigitsFilter digitsFilter,
+                                           final StatisticsPrinter statisticsPrinter,
+                                           final MappedJournalWriter journalWriter) {
+        this.maxQueueSize = maxQueueSize;
         queue = new ArrayBlockingQueue<>(maxQueueSize);
-        consumer = new QueueConsumer(MAX_BATCH_SIZE, queue, statisticsPrinter, file);
+        consumer = new QueueConsumer(MAX_BATCH_SIZE, queue, digitsFilter, statisticsPrinter, journalWriter);
         consumer.startAsync();
     }
 
     @Override
-    public void write(final ByteBuf buf) {
-        final byte[] bytes = new byte[DIGITS_BYTE_COUNT];
-        buf.readBytes(bytes, 0, DIGITS_BYTE_COUNT);
+    public void write(final long value) {
         try {
             // blocks until room is available, which applies back-pressure
-            queue.put(bytes);
+            queue.put(value);
         } catch (Exception e) {
             LOGGER.error("Unexpected exception", e);
         }
     }
 
+    @Override
+    public void writeBatch(final long[] values, final int count) {
+        try {
+            // blocks until room is available, which applies back-pressure
+            for (int i = 0; i < count; ++i) {
+                queue.put(values[i]);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Unexpected exception", e);
+        }
+    }
+
+    @Override
+    public long capacity() {
+        return maxQueueSize;
+    }
+
+    @Override
+    public long remainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
     @Override
     public void shutdown() {
         consumer.stopAsync();
@@ -67,13 +86,13 @@ public class ArrayBlockingQueueDigitsJournal implements DigitsJournal {
      * a journal-file.
      */
     private static class QueueConsumer extends AbstractScheduledService {
-        private static final byte NEWLINE_CHAR_BYTE = '\n';
-
         private final DigitsFilter digitsFilter;
         private final StatisticsPrinter statisticsPrinter;
-        private final BufferedOutputStream fileOutputStream;
-        private final BlockingQueue<byte[]> queue;
-        private final List<byte[]> batch;
+        private final MappedJournalWriter journalWriter;
+        private final BlockingQueue<Long> queue;
+        private final List<Long> batch;
+        private final long[] values;
+        private final int[] uniqueIndexes;
         private final int maxBatchSize;
 
         /**
@@ -81,21 +100,21 @@ public class ArrayBlockingQueueDigitsJournal implements DigitsJournal {
          *
          * @param maxBatchSize      maximum number of items to read from queue in one iteration
          * @param queue             digits queue
+         * @param digitsFilter      digits filter, or {@code null} if values are already unique
          * @param statisticsPrinter statistics printer
-         * @param file              journal file
+         * @param journalWriter     writer of the journal file
          */
-        private QueueConsumer(final int maxBatchSize, final BlockingQueue<byte[]> queue,
-                              final StatisticsPrinter statisticsPrinter, final File file) {
+        private QueueConsumer(final int maxBatchSize, final BlockingQueue<Long> queue,
+                              final DigitsFilter digitsFilter, final StatisticsPrinter statisticsPrinter,
+                              final MappedJournalWriter journalWriter) {
             this.queue = queue;
+            this.digitsFilter = digitsFilter;
             this.statisticsPrinter = statisticsPrinter;
             this.maxBatchSize = maxBatchSize;
             batch = new ArrayList<>(maxBatchSize);
-            try {
-                fileOutputStream = new BufferedOutputStream(new FileOutputStream(file), 8192);
-            } catch (FileNotFoundException e) {
-                throw new RuntimeException("File not found at path: " + file.getAbsolutePath(), e);
-            }
-            digitsFilter = new ByteBufferDigitsFilter();
+            values = new long[maxBatchSize];
+            uniqueIndexes = new int[maxBatchSize];
+            this.journalWriter = journalWriter;
         }
 
         @Override
@@ -105,20 +124,26 @@ public class ArrayBlockingQueueDigitsJournal implements DigitsJournal {
             if (!batch.isEmpty()) {
                 try {
                     final int n = batch.size();
-                    int duplicates = 0;
-                    byte[] bytes;
                     for (int i = 0; i < n; ++i) {
-                        bytes = batch.get(i);
-                        if (!digitsFilter.isUnique(bytes)) {
-                            // found duplicate, so update stat
-                            ++duplicates;
-                        } else {
-                            // unique value, so write digits followed by newline character
-                            fileOutputStream.write(bytes);
-                            fileOutputStream.write(NEWLINE_CHAR_BYTE);
+                        values[i] = batch.get(i);
+                    }
+                    int duplicates = 0;
+                    if (digitsFilter == null) {
+                        for (int i = 0; i < n; ++i) {
+                            journalWriter.write(values[i]);
                         }
+                    } else {
+                        // filter the whole batch, then write unique values as digits followed by newline character
+                        final int uniqueCount = digitsFilter.markAll(values, n, uniqueIndexes);
+                        for (int i = 0; i < uniqueCount; ++i) {
+                            journalWriter.write(values[uniqueIndexes[i]]);
+                        }
+                        duplicates = n - uniqueCount;
                     }
 
+                    // group commit of the whole batch, depending on sync policy, and filter snapshot if one is due
+                    journalWriter.endOfBatch();
+
                     // update stats
                     statisticsPrinter.update(n, duplicates);
                 } catch (Exception e) {
@@ -137,8 +162,8 @@ public class ArrayBlockingQueueDigitsJournal implements DigitsJournal {
 
         @Override
         protected void shutDown() throws Exception {
-            // closing the file will also flush its buffer to disk
-            fileOutputStream.close();
+            // unmaps the file, and truncates the unused end of its last mapped region
+            journalWriter.close();
         }
     }
 }
@@ -0,0 +1,35 @@
+package com.github.travishaagen.server.journal;
+
+/**
+ * Position in a {@link DigitsJournal}'s queue, after values that have been written to the journal, which tells when
+ * all of those values have been committed to the journal file. A value is committed once the consumer has filtered it,
+ * written it if it is unique, and ended its batch, which syncs the file according to the journal's sync policy.
+ * <p>
+ * Instances are reusable, and are not thread-safe, so each should only be used by the thread that writes the values.
+ * </p>
+ */
+public interface CommitMark {
+    /**
+     * Moves this mark to after every value that has been written to the journal so far, which includes all of the
+     * values written by the calling thread.
+     */
+    void update();
+
+    /**
+     * Determines if all of the values before this mark have been committed.
+     *
+     * @return {@code true} if the values have been committed, and {@code false} if they are still queued or the
+     * journal failed to write them
+     */
+    boolean isCommitted();
+
+    /**
+     * Determines if the journal failed to write values before this mark, so that they will never be committed.
+     *
+     * @return {@code true} if the values before this mark will never be committed, and {@code false} if they have been
+     * committed or might still be
+     */
+    default boolean isFailed() {
+        return false;
+    }
+}
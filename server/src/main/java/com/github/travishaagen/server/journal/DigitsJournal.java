@@ -1,23 +1,55 @@
 package com.github.travishaagen.server.journal;
 
-import io.netty.buffer.ByteBuf;
-
 /**
  * Interface for a digits-message journal implementation, that queues messages from multiple threads and writes
- * unique values to a journal-file.
+ * unique values to a journal-file. Values are keys of the server's configured number of digits (see
+ * {@link com.github.travishaagen.server.DigitsKeyCodec}), which are nine digits by default.
  */
 public interface DigitsJournal {
     /**
-     * Number of bytes for a digits message.
+     * Writes a number to the journal file, as zero-padded UTF-8 digits, if the number is unique.
+     *
+     * @param value number in the range of keys, such as [0, 999999999] for nine digits
+     */
+    void write(final long value);
+
+    /**
+     * Writes a batch of numbers to the journal file, as zero-padded UTF-8 digits, for each number that is unique.
+     * Implementations should hand off the whole batch at once, which is less expensive than calling
+     * {@link #write(long)} for each number.
+     *
+     * @param values array of numbers in the range of keys
+     * @param count  number of values to write, starting at index {@code 0}
+     */
+    void writeBatch(final long[] values, final int count);
+
+    /**
+     * Number of numbers that can be queued by this journal, which is the most that can be waiting to be written to the
+     * journal file at once.
+     *
+     * @return queue capacity
+     */
+    long capacity();
+
+    /**
+     * Number of numbers that can currently be written to this journal without blocking. Writers can use this to apply
+     * back-pressure before the queue is full, rather than blocking in {@link #write(long)} or
+     * {@link #writeBatch(long[], int)}.
+     *
+     * @return remaining queue capacity
      */
-    static final int DIGITS_BYTE_COUNT = 9;
+    long remainingCapacity();
 
     /**
-     * Writes nine UTF-8 digits to the journal file, if the number is unique.
+     * Creates a mark for telling when values that have been written to this journal have been committed to the journal
+     * file, such as for acknowledging them to a client.
      *
-     * @param buf bytes for nine UTF-8 digits, which may be padded with zeros
+     * @return new commit mark, which is before any values until it is updated
+     * @throws UnsupportedOperationException if the journal does not track commits
      */
-    void write(final ByteBuf buf);
+    default CommitMark newCommitMark() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not track commits");
+    }
 
     /**
      * Close files and release resources on shutdown.
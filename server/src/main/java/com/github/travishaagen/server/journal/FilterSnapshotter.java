@@ -0,0 +1,205 @@
+package com.github.travishaagen.server.journal;
+
+import com.github.travishaagen.server.filter.SnapshotDigitsFilter;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically saves a snapshot of a journal's {@link SnapshotDigitsFilter} to disk, so that on startup the filter can
+ * be loaded with one bulk copy, and only the journal lines written after the snapshot need to be replayed (see
+ * {@link JournalRecovery}).
+ * <p>
+ * A snapshot is taken by the journal consumer thread between batches, so that it exactly matches the journal's length
+ * at that time, which is recorded in the snapshot. The consumer only copies the filter into a buffer, and a background
+ * thread writes that buffer to a temporary file, syncs it, and atomically renames it over the previous snapshot, so
+ * that a crash never leaves a partially written snapshot. A snapshot is skipped if the previous one is still being
+ * written.
+ * </p>
+ * <p>
+ * Snapshot files have a 16 byte header, with a 4-byte magic number, the 8-byte journal offset and the 4-byte filter
+ * snapshot size, followed by the filter's bytes.
+ * </p>
+ */
+public final class FilterSnapshotter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilterSnapshotter.class);
+
+    /**
+     * Magic number at the start of snapshot files, which is "DGSF"
+     */
+    private static final int MAGIC = 0x44475346;
+
+    private static final int HEADER_LENGTH = 16;
+
+    private final File file;
+    private final File tempFile;
+    private final SnapshotDigitsFilter digitsFilter;
+    private final long intervalNanos;
+    private final ExecutorService executor;
+
+    /**
+     * Reusable buffer for a snapshot's header and filter bytes, which is allocated by the first snapshot, and again
+     * whenever a filter's snapshot size grows beyond it
+     */
+    private ByteBuffer buffer;
+
+    private Future<?> pendingWrite;
+    private long lastSnapshotNanos = System.nanoTime();
+
+    /**
+     * Constructor
+     *
+     * @param file         snapshot file
+     * @param digitsFilter filter to save, which must only be modified by the journal consumer thread
+     * @param intervalMs   minimum milliseconds between snapshots
+     */
+    public FilterSnapshotter(final File file, final SnapshotDigitsFilter digitsFilter, final long intervalMs) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+        this.digitsFilter = digitsFilter;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        executor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("filterSnapshot-" + file.getName(), true));
+    }
+
+    /**
+     * Determines if it is time for a new snapshot, and the previous snapshot has finished being written.
+     *
+     * @return {@code true} if a snapshot should be taken
+     */
+    boolean isDue() {
+        return System.nanoTime() - lastSnapshotNanos >= intervalNanos && (pendingWrite == null || pendingWrite.isDone());
+    }
+
+    /**
+     * Copies the filter, and writes it to disk in the background. The journal's lines, up to the given offset, must
+     * already have been forced to disk.
+     *
+     * @param journalOffset journal length covered by the filter
+     */
+    void snapshot(final long journalOffset) {
+        lastSnapshotNanos = System.nanoTime();
+        copy(journalOffset);
+        pendingWrite = executor.submit(() -> {
+            try {
+                write(journalOffset);
+            } catch (Exception e) {
+                LOGGER.error("Unable to write filter snapshot " + file.getAbsolutePath(), e);
+            }
+        });
+    }
+
+    /**
+     * Waits for a pending snapshot to finish, then writes a final snapshot, and releases resources. The journal's
+     * lines, up to the given offset, must already have been forced to disk.
+     *
+     * @param journalOffset journal length covered by the filter
+     * @throws Exception on failure to write the snapshot
+     */
+    void close(final long journalOffset) throws Exception {
+        try {
+            if (pendingWrite != null) {
+                pendingWrite.get();
+            }
+            copy(journalOffset);
+            write(journalOffset);
+        } finally {
+            executor.shutdown();
+            if (buffer != null) {
+                PlatformDependent.freeDirectBuffer(buffer);
+                buffer = null;
+            }
+        }
+    }
+
+    private void copy(final long journalOffset) {
+        final int snapshotSize = digitsFilter.snapshotSize();
+        if (buffer == null || buffer.capacity() < HEADER_LENGTH + snapshotSize) {
+            if (buffer != null) {
+                PlatformDependent.freeDirectBuffer(buffer);
+            }
+            buffer = ByteBuffer.allocateDirect(HEADER_LENGTH + snapshotSize);
+        }
+        ((Buffer) buffer).clear();
+        buffer.putInt(MAGIC).putLong(journalOffset).putInt(snapshotSize);
+        digitsFilter.writeSnapshot(buffer);
+        ((Buffer) buffer).flip();
+    }
+
+    private void write(final long journalOffset) throws IOException {
+        final long startMs = System.currentTimeMillis();
+        final ByteBuffer src = buffer.duplicate();
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        LOGGER.info("Wrote filter snapshot {} covering journal offset {} in {} ms", file.getAbsolutePath(),
+                journalOffset, System.currentTimeMillis() - startMs);
+    }
+
+    /**
+     * Loads a snapshot into a filter.
+     *
+     * @param file         snapshot file
+     * @param digitsFilter empty filter
+     * @return journal offset covered by the snapshot, or {@code 0} if there is no valid snapshot for this filter, in
+     * which case the filter may have been partly loaded, but only with values from the start of the journal
+     * @throws IOException on failure to read the file
+     */
+    public static long load(final File file, final SnapshotDigitsFilter digitsFilter) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        final long startMs = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_LENGTH) {
+                LOGGER.warn("Ignoring filter snapshot {}, which is not a snapshot file", file.getAbsolutePath());
+                return 0;
+            }
+            final MappedByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (snapshot.getInt() != MAGIC) {
+                    LOGGER.warn("Ignoring filter snapshot {}, which is not a snapshot file", file.getAbsolutePath());
+                    return 0;
+                }
+                final long journalOffset = snapshot.getLong();
+                if (snapshot.getInt() != snapshot.remaining()) {
+                    LOGGER.warn("Ignoring filter snapshot {}, which is incomplete", file.getAbsolutePath());
+                    return 0;
+                }
+                try {
+                    digitsFilter.readSnapshot(snapshot);
+                } catch (IllegalArgumentException | BufferUnderflowException e) {
+                    LOGGER.warn("Ignoring filter snapshot {}, which does not match the filter: {}",
+                            file.getAbsolutePath(), e.getMessage());
+                    return 0;
+                }
+                LOGGER.info("Loaded filter snapshot {} covering journal offset {} in {} ms", file.getAbsolutePath(),
+                        journalOffset, System.currentTimeMillis() - startMs);
+                return journalOffset;
+            } finally {
+                PlatformDependent.freeDirectBuffer(snapshot);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.travishaagen.server.journal;
+
+import com.github.travishaagen.server.StatisticsPrinter;
+import com.github.travishaagen.server.filter.DigitsFilter;
+
+/**
+ * {@link DigitsJournal} that removes duplicate numbers on the calling (event-loop) threads, using a thread-safe
+ * {@link DigitsFilter}, and then writes only unique numbers to another journal. The wrapped journal should not filter
+ * duplicates itself, and duplicates are counted here rather than by the journal consumer.
+ */
+public class FilteringDigitsJournal implements DigitsJournal {
+    private final DigitsJournal journal;
+    private final DigitsFilter digitsFilter;
+    private final StatisticsPrinter statisticsPrinter;
+
+    /**
+     * Constructor
+     *
+     * @param journal           journal that unique numbers are written to
+     * @param digitsFilter      thread-safe filter, shared by all writer threads
+     * @param statisticsPrinter statistics printer
+     */
+    public FilteringDigitsJournal(final DigitsJournal journal, final DigitsFilter digitsFilter,
+                                  final StatisticsPrinter statisticsPrinter) {
+        this.journal = journal;
+        this.digitsFilter = digitsFilter;
+        this.statisticsPrinter = statisticsPrinter;
+    }
+
+    @Override
+    public void write(final long value) {
+        if (digitsFilter.isUnique(value)) {
+            journal.write(value);
+        } else {
+            statisticsPrinter.update(1, 1);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Unique values are compacted to the front of {@code values}, so its contents are modified by this method.
+     * </p>
+     */
+    @Override
+    public void writeBatch(final long[] values, final int count) {
+        int uniqueCount = 0;
+        long value;
+        for (int i = 0; i < count; ++i) {
+            value = values[i];
+            if (digitsFilter.isUnique(value)) {
+                values[uniqueCount++] = value;
+            }
+        }
+
+        if (uniqueCount != 0) {
+            journal.writeBatch(values, uniqueCount);
+        }
+
+        // duplicates never reach the journal consumer, so count them as received here
+        final int duplicates = count - uniqueCount;
+        statisticsPrinter.update(duplicates, duplicates);
+    }
+
+    @Override
+    public long capacity() {
+        return journal.capacity();
+    }
+
+    @Override
+    public long remainingCapacity() {
+        return journal.remainingCapacity();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Commits are not tracked, because a duplicate is dropped as soon as the filter has seen its first occurrence,
+     * which another thread may not have queued yet, so a mark could tell that a duplicate was committed before its
+     * first occurrence is.
+     * </p>
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public CommitMark newCommitMark() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not track commits");
+    }
+
+    @Override
+    public void shutdown() {
+        journal.shutdown();
+    }
+}
@@ -0,0 +1,308 @@
+package com.github.travishaagen.server.journal;
+
+import com.github.travishaagen.server.DigitsKeyCodec;
+import com.github.travishaagen.server.NineDigitsKeyCodec;
+import com.github.travishaagen.server.filter.DigitsFilter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Rebuilds a {@link DigitsFilter} from an existing journal file, so that a restarted server remembers every number
+ * that it has already journaled, and can then append new unique numbers to the same file.
+ * <p>
+ * Journal lines have a fixed length, so the file is split into chunks on line boundaries without searching for newline
+ * characters, and chunks are memory-mapped and parsed in parallel. Filters are not required to be thread-safe, so each
+ * thread then marks its own stripe of filter indexes, where a stripe is a range of 64K indexes. Stripes never share a
+ * word of a bitset, but a filter that keeps other state per range of indexes, such as lazily allocated pages or
+ * containers, is only safe to recover with more than one thread if each of those ranges lies within one stripe.
+ * </p>
+ */
+public final class JournalRecovery {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournalRecovery.class);
+
+    /**
+     * Number of lines that one thread parses at a time, which is 10 MB of a journal file of nine-digit lines
+     */
+    private static final int CHUNK_LINE_COUNT = 1024 * 1024;
+
+    /**
+     * Filter indexes are divided into stripes of {@code 1 << STRIPE_SHIFT} consecutive indexes
+     */
+    private static final int STRIPE_SHIFT = 16;
+
+    private static final int TAIL_SCAN_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Hidden constructor
+     */
+    private JournalRecovery() {
+        // empty
+    }
+
+    /**
+     * Marks every number in a journal file of nine-digit lines, after a given offset, as seen by a filter.
+     *
+     * @param file         journal file
+     * @param digitsFilter filter to populate
+     * @param valueStride  number of values per filter index, which is the partition count for a
+     *                     {@code PartitionDigitsFilter}, or otherwise {@code 1}
+     * @param threadCount  number of threads used to parse the file and populate the filter
+     * @param startOffset  offset of the first line to recover, which is {@code 0} for the whole file, or the offset
+     *                     covered by a filter snapshot
+     * @return length of the journal's lines, in bytes, which excludes any unused space that was preallocated before
+     * the server stopped, and is where new lines should be appended
+     * @throws IOException on failure to read the file, or if it is shorter than {@code startOffset}
+     */
+    public static long recover(final File file, final DigitsFilter digitsFilter, final int valueStride,
+                               final int threadCount, final long startOffset) throws IOException {
+        return recover(file, NineDigitsKeyCodec.INSTANCE, digitsFilter, valueStride, threadCount, startOffset);
+    }
+
+    /**
+     * Marks every number in a journal file, after a given offset, as seen by a filter.
+     *
+     * @param file         journal file
+     * @param keyCodec     codec for the digits of each line
+     * @param digitsFilter filter to populate
+     * @param valueStride  number of values per filter index, which is the partition count for a
+     *                     {@code PartitionDigitsFilter}, or otherwise {@code 1}
+     * @param threadCount  number of threads used to parse the file and populate the filter, which must be {@code 1}
+     *                     unless the filter can be populated concurrently in stripes, such as a bitset
+     * @param startOffset  offset of the first line to recover, which is {@code 0} for the whole file, or the offset
+     *                     covered by a filter snapshot
+     * @return length of the journal's lines, in bytes, which excludes any unused space that was preallocated before
+     * the server stopped, and is where new lines should be appended
+     * @throws IOException on failure to read the file, or if it is shorter than {@code startOffset}
+     */
+    public static long recover(final File file, final DigitsKeyCodec keyCodec, final DigitsFilter digitsFilter,
+                               final int valueStride, final int threadCount, final long startOffset)
+            throws IOException {
+        final int lineLength = keyCodec.lineLength();
+        final long startMs = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long length = linesLength(channel, lineLength);
+            if (length < startOffset) {
+                throw new IOException("Journal file " + file.getAbsolutePath() + " has " + length
+                        + " bytes of lines, which is less than its recovery offset " + startOffset);
+            }
+            final long lineCount = length / lineLength;
+            final long startLine = startOffset / lineLength;
+
+            final ChunkParser[] parsers = new ChunkParser[threadCount];
+            final StripeMarker[] markers = new StripeMarker[threadCount];
+            for (int i = 0; i < threadCount; ++i) {
+                parsers[i] = new ChunkParser(channel, keyCodec, valueStride, threadCount);
+                markers[i] = new StripeMarker(parsers, i, digitsFilter);
+            }
+
+            long invalidLineCount = 0;
+            final ExecutorService executor = Executors.newFixedThreadPool(threadCount,
+                    new DefaultThreadFactory("journalRecovery"));
+            try {
+                for (long firstLine = startLine; firstLine < lineCount; firstLine += (long) CHUNK_LINE_COUNT * threadCount) {
+                    // parse one chunk per thread, and then mark one stripe per thread
+                    for (int i = 0; i < threadCount; ++i) {
+                        final long chunkFirstLine = firstLine + (long) CHUNK_LINE_COUNT * i;
+                        parsers[i].setChunk(chunkFirstLine,
+                                (int) Math.max(0, Math.min(CHUNK_LINE_COUNT, lineCount - chunkFirstLine)));
+                    }
+                    for (final Future<Integer> future : executor.invokeAll(Arrays.asList(parsers))) {
+                        invalidLineCount += future.get();
+                    }
+                    for (final Future<Integer> future : executor.invokeAll(Arrays.asList(markers))) {
+                        future.get();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while recovering journal file " + file.getAbsolutePath(), e);
+            } catch (ExecutionException e) {
+                throw new IOException("Unable to recover journal file " + file.getAbsolutePath(), e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+
+            if (invalidLineCount != 0) {
+                LOGGER.warn("Skipped {} invalid lines in journal file {}", invalidLineCount, file.getAbsolutePath());
+            }
+            LOGGER.info("Recovered {} numbers from journal file {} in {} ms",
+                    lineCount - startLine - invalidLineCount, file.getAbsolutePath(), System.currentTimeMillis() - startMs);
+            return length;
+        }
+    }
+
+    /**
+     * Finds the length of the whole lines in a journal file of nine-digit lines, which is where new lines should be
+     * appended when the filter is already up to date, such as a {@code MappedFileDigitsFilter}.
+     *
+     * @param file journal file
+     * @return length in bytes
+     * @throws IOException on failure to read the file
+     */
+    public static long linesLength(final File file) throws IOException {
+        return linesLength(file, NineDigitsKeyCodec.INSTANCE);
+    }
+
+    /**
+     * Finds the length of the whole lines in a journal file, which is where new lines should be appended when the
+     * filter is already up to date, such as a {@code MappedFileDigitsFilter}.
+     *
+     * @param file     journal file
+     * @param keyCodec codec for the digits of each line
+     * @return length in bytes
+     * @throws IOException on failure to read the file
+     */
+    public static long linesLength(final File file, final DigitsKeyCodec keyCodec) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return linesLength(channel, keyCodec.lineLength());
+        }
+    }
+
+    /**
+     * Finds the length of the whole lines in a journal file, by skipping zero bytes at the end of the file, which were
+     * preallocated by a {@link MappedJournalWriter} that did not close the file, and any partially written line.
+     *
+     * @param channel    journal file
+     * @param lineLength number of bytes in a line
+     * @return length in bytes
+     * @throws IOException on failure to read the file
+     */
+    private static long linesLength(final FileChannel channel, final int lineLength) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(TAIL_SCAN_BUFFER_SIZE);
+        long end = channel.size();
+        while (end > 0) {
+            final long start = Math.max(0, end - TAIL_SCAN_BUFFER_SIZE);
+            ((Buffer) buffer).clear();
+            ((Buffer) buffer).limit((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) != -1) {
+                // read whole block
+            }
+            for (int i = buffer.position() - 1; i >= 0; --i) {
+                if (buffer.get(i) != 0) {
+                    final long dataLength = start + i + 1;
+                    return dataLength - dataLength % lineLength;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /**
+     * Growable list of values, which is reused for every chunk.
+     */
+    private static class LongList {
+        private long[] values = new long[1024];
+        private int size;
+
+        private void add(final long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Parses the lines of one chunk, and sorts their values by stripe.
+     */
+    private static class ChunkParser implements Callable<Integer> {
+        private final FileChannel channel;
+        private final DigitsKeyCodec keyCodec;
+        private final int valueStride;
+        private final LongList[] stripes;
+        private long firstLine;
+        private int lineCount;
+
+        private ChunkParser(final FileChannel channel, final DigitsKeyCodec keyCodec, final int valueStride,
+                            final int stripeCount) {
+            this.channel = channel;
+            this.keyCodec = keyCodec;
+            this.valueStride = valueStride;
+            stripes = new LongList[stripeCount];
+            for (int i = 0; i < stripeCount; ++i) {
+                stripes[i] = new LongList();
+            }
+        }
+
+        private void setChunk(final long firstLine, final int lineCount) {
+            this.firstLine = firstLine;
+            this.lineCount = lineCount;
+        }
+
+        /**
+         * @return number of invalid lines
+         */
+        @Override
+        public Integer call() throws IOException {
+            if (lineCount == 0) {
+                return 0;
+            }
+            final int lineLength = keyCodec.lineLength();
+            final MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, firstLine * lineLength,
+                    (long) lineCount * lineLength);
+            try {
+                final ByteBuf buf = Unpooled.wrappedBuffer(chunk);
+                final int stripeCount = stripes.length;
+                int invalidLineCount = 0;
+                long value;
+                for (int index = 0, n = lineCount * lineLength; index < n; index += lineLength) {
+                    value = keyCodec.decode(buf, index);
+                    if (value == DigitsKeyCodec.INVALID_LINE) {
+                        ++invalidLineCount;
+                    } else {
+                        stripes[(int) (((value / valueStride) >>> STRIPE_SHIFT) % stripeCount)].add(value);
+                    }
+                }
+                return invalidLineCount;
+            } finally {
+                PlatformDependent.freeDirectBuffer(chunk);
+            }
+        }
+    }
+
+    /**
+     * Marks the values of one stripe, from every parser, as seen by the filter.
+     */
+    private static class StripeMarker implements Callable<Integer> {
+        private final ChunkParser[] parsers;
+        private final int stripe;
+        private final DigitsFilter digitsFilter;
+
+        private StripeMarker(final ChunkParser[] parsers, final int stripe, final DigitsFilter digitsFilter) {
+            this.parsers = parsers;
+            this.stripe = stripe;
+            this.digitsFilter = digitsFilter;
+        }
+
+        @Override
+        public Integer call() {
+            for (final ChunkParser parser : parsers) {
+                final LongList values = parser.stripes[stripe];
+                for (int i = 0; i < values.size; ++i) {
+                    digitsFilter.isUnique(values.values[i]);
+                }
+                values.size = 0;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.travishaagen.server.journal;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Policy for when a journal's written lines are forced to disk with {@code fsync}, which trades throughput for the
+ * number of lines that can be lost if the machine, rather than just the process, fails.
+ * <ul>
+ * <li>{@link Mode#NONE} (default), where the operating system writes lines to disk in the background</li>
+ * <li>{@link Mode#INTERVAL}, where lines are forced to disk at most once per interval, after a consumer batch or while
+ * the consumer is idle, so that every line is forced to disk within about two intervals of being written</li>
+ * <li>{@link Mode#BATCH}, where lines are forced to disk after every consumer batch, which is a group commit of all
+ * numbers received while the previous batch was being written</li>
+ * </ul>
+ */
+public final class JournalSyncPolicy {
+    public enum Mode {
+        NONE, INTERVAL, BATCH
+    }
+
+    public static final JournalSyncPolicy NONE = new JournalSyncPolicy(Mode.NONE, 0);
+
+    private final Mode mode;
+    private final long intervalNanos;
+
+    private JournalSyncPolicy(final Mode mode, final long intervalNanos) {
+        this.mode = mode;
+        this.intervalNanos = intervalNanos;
+    }
+
+    /**
+     * Creates a policy, based on the given supported values,
+     * <ul>
+     * <li>None (default)</li>
+     * <li>Interval</li>
+     * <li>Batch</li>
+     * </ul>
+     *
+     * @param mode       policy name, or {@code null} to use default (None)
+     * @param intervalMs minimum milliseconds between forcing lines to disk, which is only used by the Interval policy
+     * @return policy
+     */
+    public static JournalSyncPolicy select(final String mode, final long intervalMs) {
+        if ("Interval".equalsIgnoreCase(mode)) {
+            return new JournalSyncPolicy(Mode.INTERVAL, TimeUnit.MILLISECONDS.toNanos(intervalMs));
+        } else if ("Batch".equalsIgnoreCase(mode)) {
+            return new JournalSyncPolicy(Mode.BATCH, 0);
+        }
+        return NONE;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.INTERVAL ? mode + " (" + TimeUnit.NANOSECONDS.toMillis(intervalNanos) + " ms)"
+                : mode.toString();
+    }
+}
@@ -0,0 +1,294 @@
+package com.github.travishaagen.server.journal;
+
+import com.github.travishaagen.server.DigitsKeyCodec;
+import com.github.travishaagen.server.NineDigitsKeyCodec;
+import com.github.travishaagen.server.StatisticsPrinter;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes digits lines to a journal file through a memory-mapped region of the file, so that each line is copied
+ * straight into the page cache, without a {@code write} system call per buffer. The file is grown one large region at a
+ * time, and the next region is mapped when the current one is full. On close, the file is truncated to the length
+ * that was actually written, removing the unused end of the last region.
+ * <p>
+ * Lines are forced to disk according to a {@link JournalSyncPolicy}, which the consumer applies by calling
+ * {@link #endOfBatch()} after each batch, which is also when an optional {@link FilterSnapshotter} saves the filter,
+ * and by calling {@link #syncIfDue()} while it is idle.
+ * </p>
+ * <p>
+ * Instances are not thread-safe, and are only used by a journal's single consumer thread.
+ * </p>
+ */
+public final class MappedJournalWriter {
+    private static final byte NEWLINE_CHAR_BYTE = '\n';
+
+    /**
+     * Default size of each mapped region of the file, which is 64 MB
+     */
+    static final long DEFAULT_REGION_SIZE = 64L * 1024 * 1024;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final long regionSize;
+    private final JournalSyncPolicy syncPolicy;
+    private final FilterSnapshotter snapshotter;
+    private final StatisticsPrinter statisticsPrinter;
+    private final DigitsKeyCodec keyCodec;
+    private final int lineLength;
+
+    /**
+     * File offset of the start of the mapped region
+     */
+    private long regionOffset;
+
+    private MappedByteBuffer region;
+
+    /**
+     * Whether lines have been written since they were last forced to disk
+     */
+    private boolean dirty;
+
+    private long lastSyncNanos = System.nanoTime();
+
+    /**
+     * Number of lines in the file at the end of the last batch, which other threads can read at any time
+     */
+    private volatile long lineCount;
+
+    /**
+     * Reusable buffer for one line of digits followed by a newline character
+     */
+    private final byte[] line;
+
+    /**
+     * Constructor for a journal of nine-digit lines, which truncates an existing file to the given offset, and then
+     * appends lines after it.
+     *
+     * @param file              journal file
+     * @param offset            length of the existing lines to keep, or {@code 0} to start a new journal
+     * @param syncPolicy        policy for forcing lines to disk
+     * @param snapshotter       saves snapshots of the journal's filter, or {@code null} to not save snapshots
+     * @param statisticsPrinter statistics printer, which records the latency of forcing lines to disk
+     * @throws IOException on failure to open or map the file
+     */
+    public MappedJournalWriter(final File file, final long offset, final JournalSyncPolicy syncPolicy,
+                               final FilterSnapshotter snapshotter, final StatisticsPrinter statisticsPrinter)
+            throws IOException {
+        this(file, offset, NineDigitsKeyCodec.INSTANCE, syncPolicy, snapshotter, statisticsPrinter);
+    }
+
+    /**
+     * Constructor, which truncates an existing file to the given offset, and then appends lines after it.
+     *
+     * @param file              journal file
+     * @param offset            length of the existing lines to keep, or {@code 0} to start a new journal
+     * @param keyCodec          codec for the digits of each line
+     * @param syncPolicy        policy for forcing lines to disk
+     * @param snapshotter       saves snapshots of the journal's filter, or {@code null} to not save snapshots
+     * @param statisticsPrinter statistics printer, which records the latency of forcing lines to disk
+     * @throws IOException on failure to open or map the file
+     */
+    public MappedJournalWriter(final File file, final long offset, final DigitsKeyCodec keyCodec,
+                               final JournalSyncPolicy syncPolicy, final FilterSnapshotter snapshotter,
+                               final StatisticsPrinter statisticsPrinter) throws IOException {
+        this(file, offset, keyCodec, syncPolicy, snapshotter, statisticsPrinter, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Constructor, which truncates an existing file to the given offset, and then appends lines after it.
+     *
+     * @param file              journal file
+     * @param offset            length of the existing lines to keep, or {@code 0} to start a new journal
+     * @param keyCodec          codec for the digits of each line
+     * @param syncPolicy        policy for forcing lines to disk
+     * @param snapshotter       saves snapshots of the journal's filter, or {@code null} to not save snapshots
+     * @param statisticsPrinter statistics printer, which records the latency of forcing lines to disk
+     * @param regionSize        number of bytes of the file to map at a time
+     * @throws IOException on failure to open or map the file
+     */
+    MappedJournalWriter(final File file, final long offset, final DigitsKeyCodec keyCodec,
+                        final JournalSyncPolicy syncPolicy, final FilterSnapshotter snapshotter,
+                        final StatisticsPrinter statisticsPrinter, final long regionSize) throws IOException {
+        this.file = file;
+        this.keyCodec = keyCodec;
+        this.lineLength = keyCodec.lineLength();
+        this.line = new byte[lineLength];
+        line[lineLength - 1] = NEWLINE_CHAR_BYTE;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+        this.regionSize = regionSize;
+        this.syncPolicy = syncPolicy;
+        this.snapshotter = snapshotter;
+        this.statisticsPrinter = statisticsPrinter;
+        channel.truncate(offset);
+        map(offset);
+        lineCount = offset / lineLength;
+    }
+
+    /**
+     * Writes one value as a digits line.
+     *
+     * @param value value in the range of keys of the codec
+     * @throws IOException on failure to map the next region of the file
+     */
+    public void write(final long value) throws IOException {
+        if (region.remaining() < lineLength) {
+            map(length());
+        }
+        keyCodec.encode(value, line, 0);
+        region.put(line);
+        dirty = true;
+    }
+
+    /**
+     * Applies the sync policy at the end of a consumer batch, which may force written lines to disk, and then saves a
+     * filter snapshot if one is due. The lines of the batch are then included in {@link #lineCount()}.
+     *
+     * @throws IOException on failure to force lines to disk before a snapshot
+     */
+    public void endOfBatch() throws IOException {
+        lineCount = length() / lineLength;
+        switch (syncPolicy.getMode()) {
+            case BATCH:
+                sync();
+                break;
+            case INTERVAL:
+                syncIfDue();
+                break;
+            default:
+                // operating system writes lines to disk in the background
+                break;
+        }
+        if (snapshotter != null && snapshotter.isDue()) {
+            // a snapshot must never cover lines that could be lost
+            syncFile();
+            snapshotter.snapshot(length());
+        }
+    }
+
+    /**
+     * Forces written lines to disk if the Interval sync policy is due, which the consumer also calls periodically while
+     * it is waiting for values, so that the last lines before an idle period are not left unsynced until the next
+     * batch.
+     */
+    public void syncIfDue() {
+        if (syncPolicy.getMode() == JournalSyncPolicy.Mode.INTERVAL
+                && System.nanoTime() - lastSyncNanos >= syncPolicy.getIntervalNanos()) {
+            sync();
+        }
+    }
+
+    /**
+     * @return journal file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return policy for forcing lines to disk
+     */
+    public JournalSyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * Number of bytes written to the journal file.
+     *
+     * @return length in bytes
+     */
+    public long length() {
+        return regionOffset + region.position();
+    }
+
+    /**
+     * Number of lines in the journal file at the end of the last batch, which is the number of unique values that have
+     * been journaled, including those that were journaled before a restart. This method can safely be called by any
+     * thread.
+     *
+     * @return line count
+     */
+    public long lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Forces every line to disk, whatever the sync policy, so that a persistent filter that is closed afterwards never
+     * holds values whose lines could still be lost, and then unmaps the file and truncates it to the number of bytes
+     * written.
+     *
+     * @throws Exception on failure to truncate or close the file, or to save a final filter snapshot
+     */
+    public void close() throws Exception {
+        final long length = length();
+        syncFile();
+        if (snapshotter != null) {
+            snapshotter.close(length);
+        }
+        unmap();
+        try {
+            channel.truncate(length);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Maps the next region of the file, which grows the file to the end of that region.
+     *
+     * @param offset file offset of the start of the region
+     * @throws IOException on failure to map the file
+     */
+    private void map(final long offset) throws IOException {
+        if (syncPolicy.getMode() != JournalSyncPolicy.Mode.NONE) {
+            // later syncs only force the new region, so force the current region before it is unmapped
+            sync();
+        }
+        unmap();
+        region = channel.map(FileChannel.MapMode.READ_WRITE, offset, regionSize);
+        regionOffset = offset;
+    }
+
+    /**
+     * Forces lines written to the mapped region to disk, and records how long that took.
+     */
+    private void sync() {
+        if (dirty) {
+            final long startNanos = System.nanoTime();
+            region.force();
+            lastSyncNanos = System.nanoTime();
+            statisticsPrinter.updateSync(lastSyncNanos - startNanos);
+            dirty = false;
+        }
+    }
+
+    /**
+     * Forces all lines to disk, including those in regions that were unmapped without being forced, and records how
+     * long that took.
+     *
+     * @throws IOException on failure to force the file
+     */
+    private void syncFile() throws IOException {
+        final long startNanos = System.nanoTime();
+        region.force();
+        channel.force(false);
+        lastSyncNanos = System.nanoTime();
+        statisticsPrinter.updateSync(lastSyncNanos - startNanos);
+        dirty = false;
+    }
+
+    private void unmap() {
+        if (region != null) {
+            // release the mapping now, rather than waiting for the buffer to be garbage collected
+            PlatformDependent.freeDirectBuffer(region);
+            region = null;
+        }
+    }
+}
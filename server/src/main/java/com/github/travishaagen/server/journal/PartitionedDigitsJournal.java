@@ -0,0 +1,173 @@
+package com.github.travishaagen.server.journal;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * {@link DigitsJournal} that shards values across multiple journals, where a value is written to
+ * journal {@code value % partitionCount}. Each partition has its own consumer thread, filter slice and journal
+ * segment file, so that filtering and file writes scale with the number of partitions rather than one thread.
+ * Routing by remainder keeps partitions evenly loaded even when clients send sequential values.
+ */
+public class PartitionedDigitsJournal implements DigitsJournal {
+    private final DigitsJournal[] partitions;
+
+    /**
+     * Per-thread buffers for splitting a batch by partition, which avoids allocating on every batch
+     */
+    private final FastThreadLocal<PartitionBatches> partitionBatches = new FastThreadLocal<PartitionBatches>() {
+        @Override
+        protected PartitionBatches initialValue() {
+            return new PartitionBatches(partitions.length);
+        }
+    };
+
+    /**
+     * Constructor
+     *
+     * @param partitions one journal per partition, in partition order
+     */
+    public PartitionedDigitsJournal(final DigitsJournal[] partitions) {
+        this.partitions = partitions;
+    }
+
+    @Override
+    public void write(final long value) {
+        partitions[(int) (value % partitions.length)].write(value);
+    }
+
+    @Override
+    public void writeBatch(final long[] values, final int count) {
+        // split the batch by partition, and then write one batch to each partition
+        final PartitionBatches batches = partitionBatches.get();
+        batches.ensureCapacity(count);
+        final int partitionCount = partitions.length;
+        final long[][] batchValues = batches.values;
+        final int[] batchCounts = batches.counts;
+        long value;
+        int partition;
+        for (int i = 0; i < count; ++i) {
+            value = values[i];
+            partition = (int) (value % partitionCount);
+            batchValues[partition][batchCounts[partition]++] = value;
+        }
+        for (partition = 0; partition < partitionCount; ++partition) {
+            if (batchCounts[partition] != 0) {
+                partitions[partition].writeBatch(batchValues[partition], batchCounts[partition]);
+                batchCounts[partition] = 0;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is the capacity of one partition, to match {@link #remainingCapacity()}.
+     * </p>
+     */
+    @Override
+    public long capacity() {
+        return partitions[0].capacity();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is the remaining capacity of the fullest partition, because writes to that partition are the first to block.
+     * </p>
+     */
+    @Override
+    public long remainingCapacity() {
+        long remainingCapacity = Long.MAX_VALUE;
+        for (final DigitsJournal partition : partitions) {
+            remainingCapacity = Math.min(remainingCapacity, partition.remainingCapacity());
+        }
+        return remainingCapacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The mark is after the values of every partition, so values are committed once all partitions have committed the
+     * values written before the mark.
+     * </p>
+     */
+    @Override
+    public CommitMark newCommitMark() {
+        final CommitMark[] partitionMarks = new CommitMark[partitions.length];
+        for (int i = 0; i < partitionMarks.length; ++i) {
+            partitionMarks[i] = partitions[i].newCommitMark();
+        }
+        return new PartitionedCommitMark(partitionMarks);
+    }
+
+    @Override
+    public void shutdown() {
+        for (final DigitsJournal partition : partitions) {
+            partition.shutdown();
+        }
+    }
+
+    /**
+     * Commit mark with one mark per partition.
+     */
+    private static class PartitionedCommitMark implements CommitMark {
+        private final CommitMark[] partitionMarks;
+
+        private PartitionedCommitMark(final CommitMark[] partitionMarks) {
+            this.partitionMarks = partitionMarks;
+        }
+
+        @Override
+        public void update() {
+            for (final CommitMark partitionMark : partitionMarks) {
+                partitionMark.update();
+            }
+        }
+
+        @Override
+        public boolean isCommitted() {
+            for (final CommitMark partitionMark : partitionMarks) {
+                if (!partitionMark.isCommitted()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isFailed() {
+            for (final CommitMark partitionMark : partitionMarks) {
+                if (partitionMark.isFailed()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Reusable buffers for one batch of values per partition.
+     */
+    private static class PartitionBatches {
+        private final long[][] values;
+        private final int[] counts;
+
+        private PartitionBatches(final int partitionCount) {
+            values = new long[partitionCount][0];
+            counts = new int[partitionCount];
+        }
+
+        /**
+         * Grows each partition's buffer, if needed, so that it can hold a whole batch.
+         *
+         * @param count batch size
+         */
+        private void ensureCapacity(final int count) {
+            if (values[0].length < count) {
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] = new long[count];
+                }
+            }
+        }
+    }
+}
@@ -1,99 +1,295 @@
 package com.github.travishaagen.server.journal;
 
 import com.github.travishaagen.server.StatisticsPrinter;
-import com.github.travishaagen.server.filter.ByteBufferDigitsFilter;
 import com.github.travishaagen.server.filter.DigitsFilter;
 import com.lmax.disruptor.*;
-import com.lmax.disruptor.dsl.Disruptor;
-import com.lmax.disruptor.dsl.ProducerType;
-import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.util.Arrays;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 
 /**
- * Class that writes unique (non-duplicate) nine-digit numbers to a journal file, that is backed by an
- * LMAX Disruptor ring-buffer, for multiple writer threads and a single consumer thread. The ring-buffer pre-allocates
- * {@code byte[]} instances that are used for the duration.
+ * Class that writes unique (non-duplicate) numbers to a journal file, that is backed by an
+ * LMAX Disruptor ring-buffer, for multiple writer threads and a single consumer thread. Rather than pre-allocating an
+ * event object for every slot, the ring-buffer is a primitive {@code long[]} that is indexed by the sequences claimed
+ * from a Disruptor {@code Sequencer}, so that numbers are stored contiguously and the consumer reads them in order.
+ * <p>
+ * One ring-buffer and consumer thread can be shared by up to {@link #MAX_NAMESPACES} namespaces, each with its own
+ * filter, statistics and journal file, which are written to through {@link #namespace(int)}. Values are tagged with
+ * their namespace index in their top bits, which keys of at most 18 digits do not use, so that sharing costs no extra
+ * ring-buffer storage.
+ * </p>
+ * <p>
+ * The consumer waits on the ring-buffer while it is idle, so when a journal file has an Interval sync policy, a timer
+ * wakes the consumer once per interval to force lines that were written before it became idle to disk.
+ * </p>
  */
 public class RingBufferDigitsJournal implements DigitsJournal {
     private static final Logger LOGGER = LoggerFactory.getLogger(RingBufferDigitsJournal.class);
+    private static final int MAX_BATCH_SIZE = 1024 * 8;
+
+    /**
+     * Maximum number of namespaces that can share a ring-buffer
+     */
+    public static final int MAX_NAMESPACES = 16;
+
+    /**
+     * Shift of the namespace index within a ring-buffer value, above the 60 bits needed for 18-digit keys
+     */
+    private static final int NAMESPACE_SHIFT = 60;
+    private static final long KEY_MASK = (1L << NAMESPACE_SHIFT) - 1L;
 
-    private final Disruptor<byte[]> disruptor;
-    private final RingBuffer<byte[]> ringBuffer;
+    private final Sequencer sequencer;
+    private final long[] ringBuffer;
+    private final int indexMask;
     private final RingBufferConsumer consumer;
+    private final Thread consumerThread;
+    private final DigitsJournal[] namespaces;
+
+    /**
+     * Wakes an idle consumer to apply the Interval sync policy, or {@code null} if no journal file has that policy
+     */
+    private final ScheduledExecutorService idleSyncTimer;
 
     /**
-     * Constructor
+     * Constructor for a single namespace
      *
-     * @param ringBufferSize    maximum size of ring-buffer for nine-digit strings
+     * @param ringBufferSize    maximum size of ring-buffer for numbers, which must be a power of 2
      * @param waitStrategy      ring-buffer wait strategy from the set {Sleep, Yield, Busy, Block} or {@code null} to
      *                          use default (Sleep)
      * @param singleWriter      set to {@code true} if only a single thread will ever write to this {@code DigitsJournal}
+     * @param digitsFilter      filter used by the consumer thread, or {@code null} if written values are already unique
      * @param statisticsPrinter statistics printer
-     * @param file              journal file
+     * @param journalWriter     writer of the journal file, which is closed on shutdown
      */
     public RingBufferDigitsJournal(final int ringBufferSize, final String waitStrategy, final boolean singleWriter,
-                                   final StatisticsPrinter statisticsPrinter, final File file) {
-        disruptor = new Disruptor<>(
-                () -> {
-                    // create a byte array that will occupy a permanent space in the ring buffer
-                    return new byte[DIGITS_BYTE_COUNT];
-                }, ringBufferSize, Executors.newCachedThreadPool(),
-                singleWriter ? ProducerType.SINGLE : ProducerType.MULTI,
-                createDisruptorWaitStrategy(waitStrategy)
-        );
-
-        // log disruptor exceptions
-        disruptor.handleExceptionsWith(new ExceptionHandler() {
-            @Override
-            public void handleOnStartException(final Throwable t) {
-                LOGGER.error("Disruptor exception during startup.", t);
-            }
+                                   final DigitsFilter digitsFilter, final StatisticsPrinter statisticsPrinter,
+                                   final MappedJournalWriter journalWriter) {
+        this(ringBufferSize, waitStrategy, singleWriter, new DigitsFilter[]{digitsFilter},
+                new StatisticsPrinter[]{statisticsPrinter}, new MappedJournalWriter[]{journalWriter});
+    }
 
-            @Override
-            public void handleOnShutdownException(final Throwable t) {
-                LOGGER.error("Disruptor exception during shutdown.", t);
-            }
+    /**
+     * Constructor for namespaces that share the ring-buffer and consumer thread, where each argument array has one
+     * element per namespace, in namespace order.
+     *
+     * @param ringBufferSize     maximum size of ring-buffer for numbers, which must be a power of 2
+     * @param waitStrategy       ring-buffer wait strategy from the set {Sleep, Yield, Busy, Block} or {@code null} to
+     *                           use default (Sleep)
+     * @param singleWriter       set to {@code true} if only a single thread will ever write to this
+     *                           {@code DigitsJournal}
+     * @param digitsFilters      filters used by the consumer thread, with {@code null} elements for namespaces whose
+     *                           written values are already unique
+     * @param statisticsPrinters statistics printers
+     * @param journalWriters     writers of the journal files, which are closed on shutdown
+     * @throws IllegalArgumentException if there are more than {@link #MAX_NAMESPACES} namespaces
+     */
+    public RingBufferDigitsJournal(final int ringBufferSize, final String waitStrategy, final boolean singleWriter,
+                                   final DigitsFilter[] digitsFilters, final StatisticsPrinter[] statisticsPrinters,
+                                   final MappedJournalWriter[] journalWriters) {
+        if (journalWriters.length > MAX_NAMESPACES) {
+            throw new IllegalArgumentException("At most " + MAX_NAMESPACES + " namespaces can share a journal: "
+                    + journalWriters.length);
+        }
+        final WaitStrategy disruptorWaitStrategy = createDisruptorWaitStrategy(waitStrategy);
+        sequencer = singleWriter ? new SingleProducerSequencer(ringBufferSize, disruptorWaitStrategy)
+                : new MultiProducerSequencer(ringBufferSize, disruptorWaitStrategy);
+        ringBuffer = new long[ringBufferSize];
+        indexMask = ringBufferSize - 1;
+
+        consumer = new RingBufferConsumer(ringBuffer, sequencer.newBarrier(), digitsFilters, statisticsPrinters,
+                journalWriters);
+        sequencer.addGatingSequences(consumer.sequence);
 
-            @Override
-            public void handleEventException(final Throwable t, final long sequence, final Object event) {
-                LOGGER.error(event.toString(), t);
+        namespaces = new DigitsJournal[journalWriters.length];
+        namespaces[0] = this;
+        for (int i = 1; i < namespaces.length; ++i) {
+            namespaces[i] = new NamespaceJournal((long) i << NAMESPACE_SHIFT);
+        }
+
+        consumerThread = new Thread(consumer, "journalConsumer-" + journalWriters[0].getFile().getName());
+        consumerThread.start();
+
+        long syncIntervalNanos = Long.MAX_VALUE;
+        for (final MappedJournalWriter journalWriter : journalWriters) {
+            if (journalWriter.getSyncPolicy().getMode() == JournalSyncPolicy.Mode.INTERVAL) {
+                // a zero interval still wakes the idle consumer at most once per millisecond
+                syncIntervalNanos = Math.min(syncIntervalNanos, Math.max(journalWriter.getSyncPolicy()
+                        .getIntervalNanos(), TimeUnit.MILLISECONDS.toNanos(1)));
             }
-        });
+        }
+        if (syncIntervalNanos != Long.MAX_VALUE) {
+            idleSyncTimer = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("journalSync-"
+                    + journalWriters[0].getFile().getName(), true));
+            idleSyncTimer.scheduleAtFixedRate(consumer::wakeToSync, syncIntervalNanos, syncIntervalNanos,
+                    TimeUnit.NANOSECONDS);
+        } else {
+            idleSyncTimer = null;
+        }
+    }
+
+    /**
+     * Gets the journal for writing values to a namespace, which shares this journal's ring-buffer, and is shut down
+     * along with it, rather than by its own {@link DigitsJournal#shutdown()}.
+     *
+     * @param index namespace index
+     * @return namespace journal, which is this journal for namespace {@code 0}
+     */
+    public DigitsJournal namespace(final int index) {
+        return namespaces[index];
+    }
 
-        consumer = new RingBufferConsumer(statisticsPrinter, file);
-        disruptor.handleEventsWith(consumer);
-        ringBuffer = disruptor.start();
+    @Override
+    public void write(final long value) {
+        write(value, 0L);
     }
 
     @Override
-    public void write(final ByteBuf buf) {
-        // copy bytes into ring-buffer slot and publish it
-        final long sequence = ringBuffer.next();
+    public void writeBatch(final long[] values, final int count) {
+        writeBatch(values, count, 0L);
+    }
+
+    private void write(final long value, final long namespaceTag) {
+        // copy value into ring-buffer slot and publish it
+        final long sequence = sequencer.next();
         try {
-            final byte[] bytes = ringBuffer.get(sequence);
-            buf.readBytes(bytes, 0, DIGITS_BYTE_COUNT);
+            ringBuffer[(int) sequence & indexMask] = value | namespaceTag;
         } finally {
-            ringBuffer.publish(sequence);
+            sequencer.publish(sequence);
         }
     }
 
+    private void writeBatch(final long[] values, final int count, final long namespaceTag) {
+        // claim a range of slots, no larger than the ring-buffer, then copy values and publish the whole range at once
+        final int bufferSize = ringBuffer.length;
+        int n;
+        for (int offset = 0; offset < count; offset += n) {
+            n = Math.min(count - offset, bufferSize);
+            final long hi = sequencer.next(n);
+            final long lo = hi - (n - 1);
+            try {
+                int i = offset;
+                for (long sequence = lo; sequence <= hi; ++sequence) {
+                    ringBuffer[(int) sequence & indexMask] = values[i++] | namespaceTag;
+                }
+            } finally {
+                sequencer.publish(lo, hi);
+            }
+        }
+    }
+
+    @Override
+    public long capacity() {
+        return ringBuffer.length;
+    }
+
+    @Override
+    public long remainingCapacity() {
+        return sequencer.remainingCapacity();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The mark is a ring-buffer sequence, which is committed once the consumer has ended the batch that contains it.
+     * After the consumer fails to write a batch, no later values are committed, because the journal file is then
+     * missing values.
+     * </p>
+     */
+    @Override
+    public CommitMark newCommitMark() {
+        return new RingBufferCommitMark();
+    }
+
     @Override
     public void shutdown() {
-        disruptor.shutdown();
+        // wait for the consumer to drain the ring-buffer, then stop it
+        while (consumer.sequence.get() < sequencer.getCursor() && consumerThread.isAlive()) {
+            Thread.yield();
+        }
+        if (idleSyncTimer != null) {
+            idleSyncTimer.shutdownNow();
+        }
+        consumer.halt();
         try {
+            consumerThread.join();
             consumer.shutDown();
         } catch (Exception e) {
             LOGGER.error("Shutdown exception", e);
         }
     }
 
+    /**
+     * Journal of one namespace, which tags values with its namespace index as they are copied into the shared
+     * ring-buffer.
+     */
+    private class NamespaceJournal implements DigitsJournal {
+        private final long namespaceTag;
+
+        private NamespaceJournal(final long namespaceTag) {
+            this.namespaceTag = namespaceTag;
+        }
+
+        @Override
+        public void write(final long value) {
+            RingBufferDigitsJournal.this.write(value, namespaceTag);
+        }
+
+        @Override
+        public void writeBatch(final long[] values, final int count) {
+            RingBufferDigitsJournal.this.writeBatch(values, count, namespaceTag);
+        }
+
+        @Override
+        public long capacity() {
+            return RingBufferDigitsJournal.this.capacity();
+        }
+
+        @Override
+        public long remainingCapacity() {
+            return RingBufferDigitsJournal.this.remainingCapacity();
+        }
+
+        @Override
+        public CommitMark newCommitMark() {
+            // namespaces share the consumer's batches, so a mark covers the values of every namespace
+            return RingBufferDigitsJournal.this.newCommitMark();
+        }
+
+        @Override
+        public void shutdown() {
+            // the shared ring-buffer is shut down by its owner
+        }
+    }
+
+    /**
+     * Commit mark at the highest claimed ring-buffer sequence, which is after every value that has been published.
+     */
+    private class RingBufferCommitMark implements CommitMark {
+        private long sequence = Sequencer.INITIAL_CURSOR_VALUE;
+
+        @Override
+        public void update() {
+            sequence = sequencer.getCursor();
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return consumer.committedSequence.get() >= sequence;
+        }
+
+        @Override
+        public boolean isFailed() {
+            // the committed sequence no longer advances once the write has failed
+            return consumer.isWriteFailed && consumer.committedSequence.get() < sequence;
+        }
+    }
+
     /**
      * Creates a new {@code WaitStrategy} instance, based on the given supported values,
      * <ul>
@@ -121,56 +317,274 @@ public class RingBufferDigitsJournal implements DigitsJournal {
 
     /**
      * Single-threaded consumer of digits-messages from the ring-buffer, which writes unique values to a journal-file.
+     * Each iteration processes every slot that has been published since the previous iteration, as one batch, which
+     * is copied out of the ring-buffer in blocks and filtered with {@link DigitsFilter#markAll(long[], int, int[])}.
+     * When namespaces share the ring-buffer, each block is first split by namespace.
      */
-    private static class RingBufferConsumer implements EventHandler<byte[]> {
-        private static final byte NEWLINE_CHAR_BYTE = '\n';
+    private static class RingBufferConsumer implements Runnable {
+        /**
+         * Sequence of the last slot that was processed, which gates producers from overwriting unprocessed slots
+         */
+        private final Sequence sequence = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
 
-        private final DigitsFilter digitsFilter;
-        private final StatisticsPrinter statisticsPrinter;
-        private final BufferedOutputStream fileOutputStream;
+        /**
+         * Sequence of the last slot whose batch was committed, which stops advancing after a failed batch
+         */
+        private final Sequence committedSequence = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
 
-        private int received;
-        private int duplicates;
+        /**
+         * Set after a failed batch, once {@link #committedSequence} has stopped advancing
+         */
+        private volatile boolean isWriteFailed;
+
+        private final long[] ringBuffer;
+        private final int indexMask;
+        private final SequenceBarrier barrier;
+        private final DigitsFilter[] digitsFilters;
+        private final StatisticsPrinter[] statisticsPrinters;
+        private final MappedJournalWriter[] journalWriters;
+        private final long[] batch = new long[MAX_BATCH_SIZE];
+        private final int[] uniqueIndexes = new int[MAX_BATCH_SIZE];
+
+        /**
+         * Per-namespace blocks of values, without their namespace tags, which are only needed for more than one
+         * namespace
+         */
+        private final long[][] namespaceBatches;
+        private final int[] namespaceCounts;
+
+        /**
+         * Per-namespace counts for the current batch
+         */
+        private final long[] receivedCounts;
+        private final long[] duplicateCounts;
+
+        /**
+         * Per-namespace flags for the current batch, which are set once writing the namespace's journal file has failed
+         */
+        private final boolean[] failedNamespaces;
+
+        private volatile boolean running = true;
 
         /**
          * Constructor
          *
-         * @param statisticsPrinter statistics printer
-         * @param file              journal file
+         * @param ringBuffer         ring-buffer of numbers
+         * @param barrier            barrier for waiting on published slots
+         * @param digitsFilters      per-namespace digits filters, with {@code null} elements if values are already
+         *                           unique
+         * @param statisticsPrinters per-namespace statistics printers
+         * @param journalWriters     per-namespace writers of the journal files
          */
-        private RingBufferConsumer(final StatisticsPrinter statisticsPrinter, final File file) {
-            this.statisticsPrinter = statisticsPrinter;
+        private RingBufferConsumer(final long[] ringBuffer, final SequenceBarrier barrier,
+                                   final DigitsFilter[] digitsFilters, final StatisticsPrinter[] statisticsPrinters,
+                                   final MappedJournalWriter[] journalWriters) {
+            this.ringBuffer = ringBuffer;
+            this.indexMask = ringBuffer.length - 1;
+            this.barrier = barrier;
+            this.digitsFilters = digitsFilters;
+            this.statisticsPrinters = statisticsPrinters;
+            this.journalWriters = journalWriters;
+            final int namespaceCount = journalWriters.length;
+            namespaceBatches = new long[namespaceCount > 1 ? namespaceCount : 0][MAX_BATCH_SIZE];
+            namespaceCounts = new int[namespaceCount];
+            receivedCounts = new long[namespaceCount];
+            duplicateCounts = new long[namespaceCount];
+            failedNamespaces = new boolean[namespaceCount];
+        }
+
+        @Override
+        public void run() {
+            long nextSequence = sequence.get() + 1L;
+            long availableSequence;
+            while (running) {
+                try {
+                    availableSequence = barrier.waitFor(nextSequence);
+                } catch (final AlertException e) {
+                    // halted, so loop condition will end the thread, or woken by the timer to sync while idle, which
+                    // is safe to clear because halting clears the running flag before it alerts
+                    barrier.clearAlert();
+                    if (running) {
+                        syncIfDue();
+                    }
+                    continue;
+                } catch (final Exception e) {
+                    LOGGER.error("Unexpected exception while waiting on ring-buffer", e);
+                    continue;
+                }
+
+                if (availableSequence >= nextSequence) {
+                    try {
+                        onBatch(nextSequence, availableSequence);
+                        if (!isWriteFailed) {
+                            committedSequence.set(availableSequence);
+                        }
+                    } catch (final Exception e) {
+                        // discard messages if an error occurred, so that producers are not blocked forever, but never
+                        // commit them or any later messages
+                        isWriteFailed = true;
+                        LOGGER.error("Unexpected exception while writing to journal file", e);
+                        Arrays.fill(namespaceCounts, 0);
+                        Arrays.fill(receivedCounts, 0L);
+                        Arrays.fill(duplicateCounts, 0L);
+                        Arrays.fill(failedNamespaces, false);
+                    }
+                    sequence.set(availableSequence);
+                    nextSequence = availableSequence + 1L;
+                }
+            }
+        }
+
+        /**
+         * Writes unique values to the journal files for an inclusive range of published slots. A namespace whose journal
+         * file fails to be written discards the rest of its values in the range, without stopping other namespaces from
+         * writing and ending their batches, but no values are committed after a failure.
+         *
+         * @param lo first sequence
+         * @param hi last sequence
+         */
+        private void onBatch(final long lo, final long hi) {
+            final int namespaceCount = journalWriters.length;
+            int n;
+            for (long s = lo; s <= hi; s += n) {
+                n = (int) Math.min(hi - s + 1L, MAX_BATCH_SIZE);
+                if (namespaceCount == 1) {
+                    for (int i = 0; i < n; ++i) {
+                        batch[i] = ringBuffer[(int) (s + i) & indexMask];
+                    }
+                    writeBlock(0, batch, n);
+                } else {
+                    // split the block by namespace, and remove the namespace tags
+                    long value;
+                    int namespace;
+                    for (int i = 0; i < n; ++i) {
+                        value = ringBuffer[(int) (s + i) & indexMask];
+                        namespace = (int) (value >>> NAMESPACE_SHIFT);
+                        namespaceBatches[namespace][namespaceCounts[namespace]++] = value & KEY_MASK;
+                    }
+                    for (namespace = 0; namespace < namespaceCount; ++namespace) {
+                        if (namespaceCounts[namespace] != 0) {
+                            writeBlock(namespace, namespaceBatches[namespace], namespaceCounts[namespace]);
+                            namespaceCounts[namespace] = 0;
+                        }
+                    }
+                }
+            }
+
+            for (int namespace = 0; namespace < namespaceCount; ++namespace) {
+                if (receivedCounts[namespace] != 0) {
+                    if (!failedNamespaces[namespace]) {
+                        try {
+                            // group commit of the whole batch, depending on sync policy, and filter snapshot if due
+                            journalWriters[namespace].endOfBatch();
+                        } catch (final Exception e) {
+                            failWrite(namespace, e);
+                        }
+                    }
+
+                    // update stats
+                    statisticsPrinters[namespace].update(receivedCounts[namespace], duplicateCounts[namespace]);
+                    receivedCounts[namespace] = 0;
+                    duplicateCounts[namespace] = 0;
+                }
+                failedNamespaces[namespace] = false;
+            }
+        }
+
+        /**
+         * Filters and writes a block of values of one namespace, unless writing its journal file has already failed in
+         * this batch.
+         *
+         * @param namespace namespace index
+         * @param values    values of the namespace, without namespace tags
+         * @param n         number of values
+         */
+        private void writeBlock(final int namespace, final long[] values, final int n) {
+            if (failedNamespaces[namespace]) {
+                return;
+            }
             try {
-                fileOutputStream = new BufferedOutputStream(new FileOutputStream(file), 8192);
-            } catch (FileNotFoundException e) {
-                throw new RuntimeException("File not found at path: " + file.getAbsolutePath(), e);
+                filterAndWrite(namespace, values, n);
+            } catch (final Exception e) {
+                failWrite(namespace, e);
             }
-            digitsFilter = new ByteBufferDigitsFilter();
         }
 
-        @Override
-        public void onEvent(final byte[] bytes, final long sequence, final boolean endOfBatch) throws Exception {
-            if (!digitsFilter.isUnique(bytes)) {
-                // found duplicate, so update stat
-                ++duplicates;
+        /**
+         * Discards the rest of a namespace's values in the current batch, and stops committing this or any later batch,
+         * after writing the namespace's journal file failed.
+         *
+         * @param namespace namespace index
+         * @param e         cause of the failure
+         */
+        private void failWrite(final int namespace, final Exception e) {
+            isWriteFailed = true;
+            failedNamespaces[namespace] = true;
+            LOGGER.error("Unexpected exception while writing to journal file", e);
+        }
+
+        /**
+         * Filters a block of values of one namespace, and writes its unique values as digits followed by a newline
+         * character.
+         *
+         * @param namespace namespace index
+         * @param values    values of the namespace, without namespace tags
+         * @param n         number of values
+         * @throws Exception on file write failure
+         */
+        private void filterAndWrite(final int namespace, final long[] values, final int n) throws Exception {
+            final MappedJournalWriter journalWriter = journalWriters[namespace];
+            final DigitsFilter digitsFilter = digitsFilters[namespace];
+            if (digitsFilter == null) {
+                for (int i = 0; i < n; ++i) {
+                    journalWriter.write(values[i]);
+                }
             } else {
-                // unique value, so write digits followed by newline character
-                fileOutputStream.write(bytes);
-                fileOutputStream.write(NEWLINE_CHAR_BYTE);
+                // filter the whole block, then write unique values
+                final int uniqueCount = digitsFilter.markAll(values, n, uniqueIndexes);
+                for (int i = 0; i < uniqueCount; ++i) {
+                    journalWriter.write(values[uniqueIndexes[i]]);
+                }
+                duplicateCounts[namespace] += n - uniqueCount;
             }
-            ++received;
+            receivedCounts[namespace] += n;
+        }
 
-            if (endOfBatch) {
-                // update stats
-                statisticsPrinter.update(received, duplicates);
-                received = 0;
-                duplicates = 0;
+        /**
+         * Forces lines of journal files with an Interval sync policy to disk, if their interval has passed since their
+         * last sync.
+         */
+        private void syncIfDue() {
+            for (final MappedJournalWriter journalWriter : journalWriters) {
+                try {
+                    journalWriter.syncIfDue();
+                } catch (final Exception e) {
+                    LOGGER.error("Unexpected exception while syncing journal file", e);
+                }
             }
         }
 
+        /**
+         * Wakes the consumer thread from waiting on the ring-buffer, so that it applies the Interval sync policy even
+         * when no values arrive. This method can safely be called by any thread.
+         */
+        public void wakeToSync() {
+            barrier.alert();
+        }
+
+        /**
+         * Signals the consumer thread to stop, after it finishes its current batch.
+         */
+        public void halt() {
+            running = false;
+            barrier.alert();
+        }
+
         public void shutDown() throws Exception {
-            // closing the file will also flush its buffer to disk
-            fileOutputStream.close();
+            // unmaps the files, and truncates the unused end of their last mapped regions
+            for (final MappedJournalWriter journalWriter : journalWriters) {
+                journalWriter.close();
+            }
         }
     }
 }
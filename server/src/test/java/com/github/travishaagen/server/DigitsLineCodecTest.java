@@ -0,0 +1,105 @@
+package com.github.travishaagen.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link DigitsLineCodec}.
+ */
+public class DigitsLineCodecTest {
+
+    /**
+     * Tests that valid digits lines are decoded to the expected values, including at a non-zero index.
+     */
+    @Test
+    public void decodeValidLinesTest() {
+        Assert.assertEquals(0, decode("000000000\n"));
+        Assert.assertEquals(1, decode("000000001\n"));
+        Assert.assertEquals(10, decode("000000010\n"));
+        Assert.assertEquals(123456789, decode("123456789\n"));
+        Assert.assertEquals(987654321, decode("987654321\n"));
+        Assert.assertEquals(999999999, decode("999999999\n"));
+
+        final ByteBuf buf = Unpooled.copiedBuffer("xx000004200\n", CharsetUtil.UTF_8);
+        Assert.assertEquals(4200, DigitsLineCodec.decode(buf, 2));
+    }
+
+    /**
+     * Tests that every non-digit character, in every digit position, is rejected, as well as a missing newline.
+     */
+    @Test
+    public void decodeInvalidLinesTest() {
+        final byte[] line = "123456789\n".getBytes(CharsetUtil.UTF_8);
+        for (int position = 0; position < DigitsLineCodec.DIGIT_COUNT; ++position) {
+            final byte original = line[position];
+            for (int b = 0; b < 256; ++b) {
+                if (b >= '0' && b <= '9') {
+                    continue;
+                }
+                line[position] = (byte) b;
+                Assert.assertEquals("byte " + b + " at position " + position,
+                        DigitsLineCodec.INVALID_LINE, DigitsLineCodec.decode(Unpooled.wrappedBuffer(line), 0));
+            }
+            line[position] = original;
+        }
+
+        Assert.assertEquals(DigitsLineCodec.INVALID_LINE, decode("123456789\r"));
+        Assert.assertEquals(DigitsLineCodec.INVALID_LINE, decode("1234567890"));
+        Assert.assertEquals(DigitsLineCodec.INVALID_LINE, decode("terminate\n"));
+    }
+
+    /**
+     * Tests that encoded values are zero-padded and decode back to the original value.
+     */
+    @Test
+    public void encodeTest() {
+        final byte[] line = new byte[DigitsLineCodec.LINE_LENGTH];
+        line[DigitsLineCodec.DIGIT_COUNT] = '\n';
+
+        DigitsLineCodec.encode(42, line, 0);
+        Assert.assertEquals("000000042\n", new String(line, CharsetUtil.UTF_8));
+
+        for (int value = 0; value < 1000000000; value += 7654321) {
+            DigitsLineCodec.encode(value, line, 0);
+            Assert.assertEquals(value, DigitsLineCodec.decode(Unpooled.wrappedBuffer(line), 0));
+        }
+    }
+
+    /**
+     * Tests that wider keys decode and encode with every digit count, including digits that do not fill a SWAR
+     * group, and that invalid characters and missing newlines are rejected.
+     */
+    @Test
+    public void variableDigitsKeyCodecTest() {
+        for (int digitCount = 1; digitCount <= DigitsKeyCodec.MAX_DIGIT_COUNT; ++digitCount) {
+            final DigitsKeyCodec keyCodec = DigitsKeyCodec.forDigitCount(digitCount);
+            Assert.assertEquals(digitCount + 1, keyCodec.lineLength());
+            final byte[] line = new byte[keyCodec.lineLength()];
+            line[digitCount] = '\n';
+            for (final long key : new long[]{0, 7, keyCodec.keyCount() / 3, keyCodec.keyCount() - 1}) {
+                keyCodec.encode(key, line, 0);
+                Assert.assertEquals(String.format("%0" + digitCount + "d\n", key), new String(line, CharsetUtil.UTF_8));
+                Assert.assertEquals(key, keyCodec.decode(Unpooled.wrappedBuffer(line), 0));
+            }
+            for (int position = 0; position < digitCount; ++position) {
+                final byte original = line[position];
+                line[position] = (byte) (position % 2 == 0 ? '/' : ':');
+                Assert.assertEquals(DigitsKeyCodec.INVALID_LINE, keyCodec.decode(Unpooled.wrappedBuffer(line), 0));
+                line[position] = original;
+            }
+            line[digitCount] = '\r';
+            Assert.assertEquals(DigitsKeyCodec.INVALID_LINE, keyCodec.decode(Unpooled.wrappedBuffer(line), 0));
+        }
+
+        final ByteBuf buf = Unpooled.copiedBuffer("xx123456789012\n", CharsetUtil.UTF_8);
+        Assert.assertEquals(123456789012L, DigitsKeyCodec.forDigitCount(12).decode(buf, 2));
+        Assert.assertSame(NineDigitsKeyCodec.INSTANCE, DigitsKeyCodec.forDigitCount(DigitsLineCodec.DIGIT_COUNT));
+    }
+
+    private static int decode(final String line) {
+        return DigitsLineCodec.decode(Unpooled.copiedBuffer(line, CharsetUtil.UTF_8), 0);
+    }
+}
@@ -1,9 +1,12 @@
 package com.github.travishaagen.server;
 
+import com.github.travishaagen.server.filter.LongArrayDigitsFilter;
+import com.github.travishaagen.server.journal.CommitMark;
 import com.github.travishaagen.server.journal.DigitsJournal;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.util.CharsetUtil;
 import org.easymock.EasyMockRunner;
 import org.easymock.Mock;
@@ -11,6 +14,11 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Unit tests for {@link DigitsServerMessageHandler}.
  */
@@ -20,8 +28,23 @@ public class DigitsServerMessageHandlerTest {
 
     private DigitsJournal journalMock = new DigitsJournal() {
         @Override
-        public void write(ByteBuf buf) {
-            buf.skipBytes(DIGITS_BYTE_COUNT);
+        public void write(long value) {
+            // does nothing
+        }
+
+        @Override
+        public void writeBatch(long[] values, int count) {
+            // does nothing
+        }
+
+        @Override
+        public long capacity() {
+            return 1024;
+        }
+
+        @Override
+        public long remainingCapacity() {
+            return 1024;
         }
 
         @Override
@@ -103,4 +126,208 @@ public class DigitsServerMessageHandlerTest {
             }
         }
     }
+
+    /**
+     * Tests that all complete lines within one message are written to the journal in a single batch, before an
+     * invalid line is rejected.
+     */
+    @Test
+    public void handleMessageBatchTest() {
+        final List<long[]> batches = new ArrayList<>();
+        final DigitsServerMessageHandler messageHandler = new DigitsServerMessageHandler(new DigitsJournal() {
+            @Override
+            public void write(long value) {
+                batches.add(new long[]{value});
+            }
+
+            @Override
+            public void writeBatch(long[] values, int count) {
+                batches.add(Arrays.copyOf(values, count));
+            }
+
+            @Override
+            public long capacity() {
+                return 1024;
+            }
+
+            @Override
+            public long remainingCapacity() {
+                return 1024;
+            }
+
+            @Override
+            public void shutdown() {
+                // does nothing
+            }
+        });
+
+        try {
+            messageHandler.handleMessage(ctxMock, Unpooled.copiedBuffer("000000007" + LINE_SEPARATOR
+                    + "123456789" + LINE_SEPARATOR + "000000042" + LINE_SEPARATOR + "9" + LINE_SEPARATOR
+                    + "000000001" + LINE_SEPARATOR, CharsetUtil.UTF_8));
+            Assert.fail("Expected InvalidMessageException");
+        } catch (Exception e) {
+            if (!(e instanceof InvalidMessageException)) {
+                Assert.fail("Expected InvalidMessageException, but got: " + e);
+            }
+        }
+
+        Assert.assertEquals(1, batches.size());
+        Assert.assertArrayEquals(new long[]{7, 123456789, 42}, batches.get(0));
+    }
+
+    /**
+     * Tests that pipelined queries, including one split across reads, are answered together in one write, and that
+     * an invalid query, or a range wider than the maximum, closes the connection.
+     */
+    @Test
+    public void queryTest() {
+        final LongArrayDigitsFilter filter = new LongArrayDigitsFilter(1000);
+        filter.isUnique(5);
+        filter.isUnique(64);
+        filter.isUnique(999);
+
+        EmbeddedChannel channel = new EmbeddedChannel(new DigitsServerMessageHandler(journalMock,
+                NineDigitsKeyCodec.INSTANCE, filter));
+        channel.writeInbound(Unpooled.copiedBuffer("?5\n000000007\n?6\ncount\nran", CharsetUtil.UTF_8));
+        channel.writeInbound(Unpooled.copiedBuffer("ge 5 64\nrange 65 1000000\n?999999999\n", CharsetUtil.UTF_8));
+
+        final ByteBuf firstResponses = channel.readOutbound();
+        Assert.assertEquals("1\n0\n3\n", firstResponses.toString(CharsetUtil.UTF_8));
+        firstResponses.release();
+        final ByteBuf secondResponses = channel.readOutbound();
+        Assert.assertEquals("2\n1\n0\n", secondResponses.toString(CharsetUtil.UTF_8));
+        secondResponses.release();
+        Assert.assertNull(channel.readOutbound());
+
+        channel.writeInbound(Unpooled.copiedBuffer("range 5\n", CharsetUtil.UTF_8));
+        Assert.assertFalse(channel.isOpen());
+
+        channel = new EmbeddedChannel(new DigitsServerMessageHandler(journalMock, NineDigitsKeyCodec.INSTANCE,
+                filter));
+        channel.writeInbound(Unpooled.copiedBuffer("range 1 " + DigitsServerMessageHandler.MAX_QUERY_RANGE + "\n",
+                CharsetUtil.UTF_8));
+        final ByteBuf widestResponse = channel.readOutbound();
+        Assert.assertEquals("3\n", widestResponse.toString(CharsetUtil.UTF_8));
+        widestResponse.release();
+        channel.writeInbound(Unpooled.copiedBuffer("range 0 " + DigitsServerMessageHandler.MAX_QUERY_RANGE + "\n",
+                CharsetUtil.UTF_8));
+        Assert.assertFalse(channel.isOpen());
+
+        channel = new EmbeddedChannel(new DigitsServerMessageHandler(journalMock));
+        channel.writeInbound(Unpooled.copiedBuffer("count\n", CharsetUtil.UTF_8));
+        final ByteBuf unsupported = channel.readOutbound();
+        Assert.assertEquals("unsupported\n", unsupported.toString(CharsetUtil.UTF_8));
+        unsupported.release();
+    }
+
+    /**
+     * Tests that an ack handshake, which is split across reads, enables cumulative acks, which are only written once
+     * numbers have been committed, and which coalesce the numbers of several reads into one ack.
+     */
+    @Test
+    public void ackModeTest() throws Exception {
+        final long[] counts = new long[3];
+        final DigitsJournal journal = commitTrackingJournal(counts);
+
+        final EmbeddedChannel channel = new EmbeddedChannel(new ProtocolDetectionHandler(journal));
+        channel.writeInbound(Unpooled.copiedBuffer("ac", CharsetUtil.UTF_8));
+        channel.writeInbound(Unpooled.copiedBuffer("k\n000000001\n000000002\n", CharsetUtil.UTF_8));
+        Assert.assertNull(channel.readOutbound());
+
+        // committed numbers are acknowledged by the next commit check, without another read
+        counts[1] = 2;
+        assertAck(channel, "ack 2\n");
+
+        channel.writeInbound(Unpooled.copiedBuffer("000000003\n", CharsetUtil.UTF_8));
+        channel.writeInbound(Unpooled.copiedBuffer("000000001\n000000004\n", CharsetUtil.UTF_8));
+        Assert.assertNull(channel.readOutbound());
+        counts[1] = 5;
+        assertAck(channel, "ack 5\n");
+        Assert.assertNull(channel.readOutbound());
+    }
+
+    /**
+     * Tests that numbers committed before the journal failed are acknowledged, and that the channel is then closed
+     * rather than waiting for numbers that will never be committed.
+     */
+    @Test
+    public void ackModeFailedJournalTest() throws Exception {
+        final long[] counts = new long[3];
+        final EmbeddedChannel channel = new EmbeddedChannel(new ProtocolDetectionHandler(
+                commitTrackingJournal(counts)));
+        channel.writeInbound(Unpooled.copiedBuffer("ack\n000000001\n000000002\n", CharsetUtil.UTF_8));
+        channel.writeInbound(Unpooled.copiedBuffer("000000003\n", CharsetUtil.UTF_8));
+        Assert.assertNull(channel.readOutbound());
+
+        counts[1] = 2;
+        counts[2] = 1;
+        assertAck(channel, "ack 2\n");
+        Assert.assertFalse(channel.isOpen());
+    }
+
+    /**
+     * Creates a journal whose commit marks compare the number of values written with {@code counts[1]}, the number of
+     * values committed, and which fail once {@code counts[2]} is non-zero.
+     *
+     * @param counts values written, values committed, and whether the journal failed
+     */
+    private static DigitsJournal commitTrackingJournal(final long[] counts) {
+        return new DigitsJournal() {
+            @Override
+            public void write(long value) {
+                ++counts[0];
+            }
+
+            @Override
+            public void writeBatch(long[] values, int count) {
+                counts[0] += count;
+            }
+
+            @Override
+            public long capacity() {
+                return 1024;
+            }
+
+            @Override
+            public long remainingCapacity() {
+                return 1024;
+            }
+
+            @Override
+            public CommitMark newCommitMark() {
+                return new CommitMark() {
+                    private long writtenCount;
+
+                    @Override
+                    public void update() {
+                        writtenCount = counts[0];
+                    }
+
+                    @Override
+                    public boolean isCommitted() {
+                        return counts[1] >= writtenCount;
+                    }
+
+                    @Override
+                    public boolean isFailed() {
+                        return counts[2] != 0 && counts[1] < writtenCount;
+                    }
+                };
+            }
+
+            @Override
+            public void shutdown() {
+                // does nothing
+            }
+        };
+    }
+
+    private static void assertAck(final EmbeddedChannel channel, final String expectedAck) throws Exception {
+        TimeUnit.MILLISECONDS.sleep(1);
+        channel.runScheduledPendingTasks();
+        final ByteBuf ack = channel.readOutbound();
+        Assert.assertEquals(expectedAck, ack.toString(CharsetUtil.UTF_8));
+        ack.release();
+    }
 }
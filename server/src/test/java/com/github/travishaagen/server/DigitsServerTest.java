@@ -0,0 +1,46 @@
+package com.github.travishaagen.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link DigitsServer}.
+ */
+public class DigitsServerTest {
+    private static final int SERVER_PORT = 4000;
+
+    /**
+     * Tests that namespaces are parsed in list order, with optional listen ports.
+     */
+    @Test
+    public void parseNamespacesTest() {
+        Assert.assertTrue(DigitsServer.parseNamespaces(null, SERVER_PORT).isEmpty());
+
+        final Map<String, Integer> namespaces = DigitsServer.parseNamespaces(" alpha:4001, beta ,gamma: 4002",
+                SERVER_PORT);
+        Assert.assertEquals(Arrays.asList("alpha", "beta", "gamma"), new ArrayList<>(namespaces.keySet()));
+        Assert.assertEquals(Arrays.asList(4001, null, 4002), new ArrayList<>(namespaces.values()));
+    }
+
+    /**
+     * Tests that invalid and repeated namespaces are rejected, as are listen ports that are repeated or are the server
+     * port.
+     */
+    @Test
+    public void parseInvalidNamespacesTest() {
+        final String[] invalidNamespaces = {"alpha:port", "alpha,alpha", "alpha:4001,beta:4001",
+                "alpha:" + SERVER_PORT};
+        for (final String namespaces : invalidNamespaces) {
+            try {
+                DigitsServer.parseNamespaces(namespaces, SERVER_PORT);
+                Assert.fail("Expected IllegalArgumentException for: " + namespaces);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.github.travishaagen.server;
+
+import com.github.travishaagen.server.filter.AtomicBitSetDigitsFilter;
+import com.github.travishaagen.server.journal.DigitsJournal;
+import com.github.travishaagen.server.journal.FilteringDigitsJournal;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link ProtocolDetectionHandler} and {@link BinaryDigitsServerMessageHandler}.
+ */
+public class ProtocolDetectionHandlerTest {
+    private final List<Long> journalValues = new ArrayList<>();
+    private long journalRemainingCapacity = 1024;
+
+    private final DigitsJournal journalMock = new DigitsJournal() {
+        @Override
+        public void write(long value) {
+            journalValues.add(value);
+        }
+
+        @Override
+        public void writeBatch(long[] values, int count) {
+            for (int i = 0; i < count; ++i) {
+                journalValues.add(values[i]);
+            }
+        }
+
+        @Override
+        public long capacity() {
+            return 1024;
+        }
+
+        @Override
+        public long remainingCapacity() {
+            return journalRemainingCapacity;
+        }
+
+        @Override
+        public void shutdown() {
+            // does nothing
+        }
+    };
+
+    /**
+     * Tests that a client that does not send the binary preamble uses the text protocol.
+     */
+    @Test
+    public void textProtocolTest() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new ProtocolDetectionHandler(journalMock));
+        channel.writeInbound(Unpooled.copiedBuffer("000000042\n00000", CharsetUtil.UTF_8));
+        channel.writeInbound(Unpooled.copiedBuffer("0007\n", CharsetUtil.UTF_8));
+
+        Assert.assertTrue(channel.pipeline().first() instanceof DigitsServerMessageHandler);
+        Assert.assertEquals(2, journalValues.size());
+        Assert.assertEquals(42, (long) journalValues.get(0));
+        Assert.assertEquals(7, (long) journalValues.get(1));
+    }
+
+    /**
+     * Tests that a namespace handshake line, which is split across reads, selects the namespace's journal for both
+     * protocols, and that an unknown namespace closes the connection.
+     */
+    @Test
+    public void namespaceHandshakeTest() {
+        final List<Long> namespaceValues = new ArrayList<>();
+        final Map<String, DigitsNamespace> namespaces = Collections.singletonMap("alpha",
+                new DigitsNamespace(recordingJournal(namespaceValues), null));
+        final DigitsNamespace portNamespace = new DigitsNamespace(journalMock, null);
+
+        EmbeddedChannel channel = new EmbeddedChannel(new ProtocolDetectionHandler(portNamespace,
+                NineDigitsKeyCodec.INSTANCE, namespaces));
+        channel.writeInbound(Unpooled.copiedBuffer("names", CharsetUtil.UTF_8));
+        channel.writeInbound(Unpooled.copiedBuffer("pace alpha\n000000042\n", CharsetUtil.UTF_8));
+        Assert.assertTrue(channel.pipeline().first() instanceof DigitsServerMessageHandler);
+
+        channel = new EmbeddedChannel(new ProtocolDetectionHandler(portNamespace, NineDigitsKeyCodec.INSTANCE,
+                namespaces));
+        channel.writeInbound(Unpooled.copiedBuffer("namespace alpha\n", CharsetUtil.UTF_8)
+                .writeBytes(new byte[]{0, 'D', 'G', BinaryDigitsServerMessageHandler.INTS_MODE}).writeInt(7));
+        Assert.assertTrue(channel.pipeline().first() instanceof BinaryDigitsServerMessageHandler);
+
+        Assert.assertEquals(2, namespaceValues.size());
+        Assert.assertEquals(42, (long) namespaceValues.get(0));
+        Assert.assertEquals(7, (long) namespaceValues.get(1));
+        Assert.assertEquals(0, journalValues.size());
+
+        channel = new EmbeddedChannel(new ProtocolDetectionHandler(portNamespace, NineDigitsKeyCodec.INSTANCE,
+                namespaces));
+        channel.writeInbound(Unpooled.copiedBuffer("namespace beta\n000000042\n", CharsetUtil.UTF_8));
+        Assert.assertFalse(channel.isOpen());
+        Assert.assertEquals(0, journalValues.size());
+    }
+
+    /**
+     * Tests that requesting acks for a journal that filters duplicates on the event-loop threads, and so does not track
+     * commits, closes the connection with either protocol, before any numbers are written.
+     */
+    @Test
+    public void ackHandshakeWithFilteringJournalTest() {
+        final DigitsJournal journal = new FilteringDigitsJournal(journalMock, new AtomicBitSetDigitsFilter(),
+                new StatisticsPrinter());
+
+        EmbeddedChannel channel = new EmbeddedChannel(new ProtocolDetectionHandler(journal));
+        channel.writeInbound(Unpooled.copiedBuffer("ack\n000000042\n", CharsetUtil.UTF_8));
+        Assert.assertFalse(channel.isOpen());
+
+        channel = new EmbeddedChannel(new ProtocolDetectionHandler(journal));
+        channel.writeInbound(Unpooled.copiedBuffer("ack\n", CharsetUtil.UTF_8)
+                .writeBytes(new byte[]{0, 'D', 'G', BinaryDigitsServerMessageHandler.INTS_MODE}).writeInt(7));
+        Assert.assertFalse(channel.isOpen());
+        Assert.assertEquals(0, journalValues.size());
+
+        // without acks the journal is used as usual
+        channel = new EmbeddedChannel(new ProtocolDetectionHandler(journal));
+        channel.writeInbound(Unpooled.copiedBuffer("000000042\n", CharsetUtil.UTF_8));
+        Assert.assertTrue(channel.isOpen());
+        Assert.assertEquals(Collections.singletonList(42L), journalValues);
+    }
+
+    /**
+     * Tests binary integers, including a preamble and integer that are split across reads.
+     */
+    @Test
+    public void binaryIntsProtocolTest() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new ProtocolDetectionHandler(journalMock));
+        channel.writeInbound(Unpooled.buffer().writeBytes(new byte[]{0, 'D'}));
+        channel.writeInbound(Unpooled.buffer().writeBytes(new byte[]{'G', BinaryDigitsServerMessageHandler.INTS_MODE})
+                .writeInt(123456789).writeShort(0));
+        channel.writeInbound(Unpooled.buffer().writeShort(5).writeInt(999999999));
+
+        Assert.assertTrue(channel.pipeline().first() instanceof BinaryDigitsServerMessageHandler);
+        Assert.assertEquals(3, journalValues.size());
+        Assert.assertEquals(123456789, (long) journalValues.get(0));
+        Assert.assertEquals(5, (long) journalValues.get(1));
+        Assert.assertEquals(999999999, (long) journalValues.get(2));
+
+        // out of range value closes the connection
+        channel.writeInbound(Unpooled.buffer().writeInt(1000000000));
+        Assert.assertFalse(channel.isOpen());
+    }
+
+    /**
+     * Tests binary frames, including a frame that is split across reads.
+     */
+    @Test
+    public void binaryFramesProtocolTest() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new ProtocolDetectionHandler(journalMock));
+        channel.writeInbound(Unpooled.buffer()
+                .writeBytes(new byte[]{0, 'D', 'G', BinaryDigitsServerMessageHandler.FRAMES_MODE})
+                .writeByte(BinaryDigitsServerMessageHandler.INTS_FRAME).writeInt(12).writeInt(1).writeInt(2));
+        Assert.assertEquals(0, journalValues.size());
+
+        channel.writeInbound(Unpooled.buffer().writeInt(3));
+        Assert.assertEquals(3, journalValues.size());
+        Assert.assertEquals(3, (long) journalValues.get(2));
+
+        // unknown frame type closes the connection
+        channel.writeInbound(Unpooled.buffer().writeByte('?').writeInt(0));
+        Assert.assertFalse(channel.isOpen());
+    }
+
+    /**
+     * Tests a frame of zig-zag variable-length deltas, including negative and multi-byte deltas.
+     */
+    @Test
+    public void binaryDeltasFrameTest() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new ProtocolDetectionHandler(journalMock));
+        // base 100, then deltas +1, +1, -3 and +1000001 (zig-zag 2, 2, 5 and 2000002)
+        final byte[] deltas = {2, 2, 5, (byte) 0x82, (byte) 0x89, 0x7A};
+        channel.writeInbound(Unpooled.buffer()
+                .writeBytes(new byte[]{0, 'D', 'G', BinaryDigitsServerMessageHandler.FRAMES_MODE})
+                .writeByte(BinaryDigitsServerMessageHandler.DELTAS_FRAME).writeInt(4 + deltas.length)
+                .writeInt(100).writeBytes(deltas));
+
+        Assert.assertEquals(5, journalValues.size());
+        Assert.assertEquals(100, (long) journalValues.get(0));
+        Assert.assertEquals(101, (long) journalValues.get(1));
+        Assert.assertEquals(102, (long) journalValues.get(2));
+        Assert.assertEquals(99, (long) journalValues.get(3));
+        Assert.assertEquals(1000100, (long) journalValues.get(4));
+
+        // delta that is truncated by the end of the payload closes the connection
+        channel.writeInbound(Unpooled.buffer().writeByte(BinaryDigitsServerMessageHandler.DELTAS_FRAME).writeInt(5)
+                .writeInt(100).writeByte(0x80));
+        Assert.assertFalse(channel.isOpen());
+    }
+
+    /**
+     * Tests that frames encoded the same way as {@code DigitsClient.sendSorted} decode to the original values,
+     * including deltas that need all 5 bytes, and that a 5th byte with bits above a 32-bit integer closes the
+     * connection.
+     */
+    @Test
+    public void binaryDeltasRoundTripTest() {
+        final Random random = new Random(42);
+        final int[] values = new int[10000];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = random.nextInt(1000000000);
+        }
+        Arrays.sort(values);
+        // largest possible jumps in both directions
+        values[1000] = 999999999;
+        values[1001] = 0;
+
+        final EmbeddedChannel channel = new EmbeddedChannel(new ProtocolDetectionHandler(journalMock));
+        channel.writeInbound(Unpooled.buffer()
+                .writeBytes(new byte[]{0, 'D', 'G', BinaryDigitsServerMessageHandler.FRAMES_MODE}));
+        channel.writeInbound(deltasFrame(values));
+        Assert.assertTrue(channel.isOpen());
+        Assert.assertEquals(values.length, journalValues.size());
+        for (int i = 0; i < values.length; ++i) {
+            Assert.assertEquals(values[i], (long) journalValues.get(i));
+        }
+
+        // 5th byte of 0x10 would be bit 32
+        channel.writeInbound(Unpooled.buffer().writeByte(BinaryDigitsServerMessageHandler.DELTAS_FRAME).writeInt(9)
+                .writeInt(100).writeBytes(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10}));
+        Assert.assertFalse(channel.isOpen());
+    }
+
+    /**
+     * Encodes a frame of zig-zag variable-length deltas, as {@code DigitsClient.sendSorted} does.
+     */
+    private static ByteBuf deltasFrame(final int[] values) {
+        final ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(BinaryDigitsServerMessageHandler.DELTAS_FRAME).writeInt(0);
+        final int payloadIndex = buf.writerIndex();
+        int previous = values[0];
+        buf.writeInt(previous);
+        for (int i = 1; i < values.length; ++i) {
+            final int delta = values[i] - previous;
+            previous = values[i];
+            int varint = (delta << 1) ^ (delta >> 31);
+            while ((varint & ~0x7F) != 0) {
+                buf.writeByte((varint & 0x7F) | 0x80);
+                varint >>>= 7;
+            }
+            buf.writeByte(varint);
+        }
+        buf.setInt(payloadIndex - 4, buf.writerIndex() - payloadIndex);
+        return buf;
+    }
+
+    /**
+     * Tests that reading is suspended while the journal is above its high watermark, and resumed once it drains below
+     * its low watermark.
+     */
+    @Test
+    public void backpressureTest() throws Exception {
+        final EmbeddedChannel channel = new EmbeddedChannel(new ProtocolDetectionHandler(journalMock));
+        channel.writeInbound(Unpooled.copiedBuffer("000000001\n", CharsetUtil.UTF_8));
+        Assert.assertTrue(channel.config().isAutoRead());
+
+        // journal is 80% full
+        journalRemainingCapacity = 200;
+        channel.writeInbound(Unpooled.copiedBuffer("000000002\n", CharsetUtil.UTF_8));
+        Assert.assertFalse(channel.config().isAutoRead());
+
+        // journal is 50% full, which is still above the low watermark
+        journalRemainingCapacity = 512;
+        Thread.sleep(2);
+        channel.runPendingTasks();
+        Assert.assertFalse(channel.config().isAutoRead());
+
+        // journal is 10% full
+        journalRemainingCapacity = 920;
+        Thread.sleep(2);
+        channel.runPendingTasks();
+        Assert.assertTrue(channel.config().isAutoRead());
+        Assert.assertEquals(2, journalValues.size());
+    }
+
+    private static DigitsJournal recordingJournal(final List<Long> values) {
+        return new DigitsJournal() {
+            @Override
+            public void write(long value) {
+                values.add(value);
+            }
+
+            @Override
+            public void writeBatch(long[] batch, int count) {
+                for (int i = 0; i < count; ++i) {
+                    values.add(batch[i]);
+                }
+            }
+
+            @Override
+            public long capacity() {
+                return 1024;
+            }
+
+            @Override
+            public long remainingCapacity() {
+                return 1024;
+            }
+
+            @Override
+            public void shutdown() {
+                // does nothing
+            }
+        };
+    }
+}
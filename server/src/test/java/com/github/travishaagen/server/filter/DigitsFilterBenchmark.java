@@ -0,0 +1,114 @@
+package com.github.travishaagen.server.filter;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark that compares {@link RoaringDigitsFilter} and {@link LongArrayDigitsFilter} with
+ * {@link ByteBufferDigitsFilter} for sparse, clustered and dense workloads, by the time taken per {@code isUnique}
+ * call and the size of a snapshot. Filters marked {@code *} are called with batches of values.
+ */
+public class DigitsFilterBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int BATCH_SIZE = 1024;
+
+    private DigitsFilterBenchmark() {
+        // empty
+    }
+
+    /**
+     * Runs each workload against each filter, and prints results.
+     *
+     * @param args unused
+     */
+    public static void main(final String[] args) {
+        final Random random = new Random(42);
+
+        // 1M random values across the whole range
+        final int[] sparse = new int[1_000_000];
+        for (int i = 0; i < sparse.length; ++i) {
+            sparse[i] = random.nextInt(DigitsFilter.VALUE_COUNT);
+        }
+
+        // 1M values in 100 ranges of about 20K values, with half of each range seen
+        final int[] clustered = new int[1_000_000];
+        for (int i = 0; i < clustered.length; ++i) {
+            final int clusterStart = (i / 10_000) * 9_999_991;
+            clustered[i] = clusterStart + random.nextInt(20_000);
+        }
+
+        // 20M random values in the first 100M values
+        final int[] dense = new int[20_000_000];
+        for (int i = 0; i < dense.length; ++i) {
+            dense[i] = random.nextInt(100_000_000);
+        }
+
+        run("sparse", sparse);
+        run("clustered", clustered);
+        run("dense", dense);
+    }
+
+    private static void run(final String workload, final int[] values) {
+        run(workload, "ByteBuffer", values, ByteBufferDigitsFilter::new);
+        run(workload, "Roaring", values, RoaringDigitsFilter::new);
+        run(workload, "LongArray", values, LongArrayDigitsFilter::new);
+        runMarkAll(workload, "ByteBuffer", values, ByteBufferDigitsFilter::new);
+        runMarkAll(workload, "LongArray", values, LongArrayDigitsFilter::new);
+    }
+
+    private static void runMarkAll(final String workload, final String filterName, final int[] values,
+                                   final Supplier<SnapshotDigitsFilter> filterSupplier) {
+        final long[] batch = new long[BATCH_SIZE];
+        final int[] uniqueIndexes = new int[BATCH_SIZE];
+        long bestNanos = Long.MAX_VALUE;
+        int uniqueCount = 0;
+        SnapshotDigitsFilter filter = null;
+        for (int round = 0; round < ROUNDS; ++round) {
+            filter = filterSupplier.get();
+            final long startNanos = System.nanoTime();
+            uniqueCount = 0;
+            for (int pass = 0; pass < 2; ++pass) {
+                for (int offset = 0; offset < values.length; offset += BATCH_SIZE) {
+                    final int n = Math.min(BATCH_SIZE, values.length - offset);
+                    for (int i = 0; i < n; ++i) {
+                        batch[i] = values[offset + i];
+                    }
+                    uniqueCount += filter.markAll(batch, n, uniqueIndexes);
+                }
+            }
+            bestNanos = Math.min(bestNanos, System.nanoTime() - startNanos);
+        }
+        print(workload, filterName + "*", uniqueCount, bestNanos, values.length, filter);
+    }
+
+    private static void run(final String workload, final String filterName, final int[] values,
+                            final Supplier<SnapshotDigitsFilter> filterSupplier) {
+        long bestNanos = Long.MAX_VALUE;
+        int uniqueCount = 0;
+        SnapshotDigitsFilter filter = null;
+        for (int round = 0; round < ROUNDS; ++round) {
+            filter = filterSupplier.get();
+            final long startNanos = System.nanoTime();
+            uniqueCount = 0;
+            for (final int value : values) {
+                if (filter.isUnique(value)) {
+                    ++uniqueCount;
+                }
+            }
+            // second pass is all duplicates
+            for (final int value : values) {
+                if (filter.isUnique(value)) {
+                    ++uniqueCount;
+                }
+            }
+            bestNanos = Math.min(bestNanos, System.nanoTime() - startNanos);
+        }
+        print(workload, filterName, uniqueCount, bestNanos, values.length, filter);
+    }
+
+    private static void print(final String workload, final String filterName, final int uniqueCount,
+                              final long nanos, final int valueCount, final SnapshotDigitsFilter filter) {
+        System.out.printf("%-10s %-11s %,11d unique %6.1f ns/op %,13d byte snapshot%n", workload, filterName,
+                uniqueCount, nanos / (2.0 * valueCount), filter.snapshotSize());
+    }
+}
@@ -0,0 +1,441 @@
+package com.github.travishaagen.server.filter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link DigitsFilter} implementations.
+ */
+public class DigitsFilterTest {
+
+    /**
+     * Tests that the first occurrence of a value is unique and later occurrences are duplicates, including values at
+     * the edges of the valid range and values that share a lookup word.
+     */
+    @Test
+    public void isUniqueTest() {
+        assertFiltersDuplicates(new ByteBufferDigitsFilter());
+        assertFiltersDuplicates(new AtomicBitSetDigitsFilter());
+        assertFiltersDuplicates(new PagedDigitsFilter());
+        assertFiltersDuplicates(new RoaringDigitsFilter());
+        assertFiltersDuplicates(new LongArrayDigitsFilter());
+        assertFiltersDuplicates(new HashDigitsFilter());
+    }
+
+    /**
+     * Tests that a hash filter tracks 18-digit values across growth of its table, and that its snapshot restores the
+     * same values.
+     */
+    @Test
+    public void hashSnapshotTest() {
+        final long keyCount = 1000000000000000000L;
+        final HashDigitsFilter filter = new HashDigitsFilter(keyCount);
+        final Random random = new Random(11);
+        final long[] values = new long[100000];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = (random.nextLong() >>> 1) % keyCount;
+            Assert.assertTrue(filter.isUnique(values[i]));
+        }
+        Assert.assertTrue(filter.isUnique(keyCount - 1));
+        Assert.assertFalse(filter.isUnique(keyCount - 1));
+        Assert.assertEquals(values.length + 1, filter.size());
+
+        final ByteBuffer snapshot = ByteBuffer.allocate(filter.snapshotSize());
+        filter.writeSnapshot(snapshot);
+        snapshot.flip();
+        final HashDigitsFilter loadedFilter = new HashDigitsFilter(keyCount);
+        loadedFilter.readSnapshot(snapshot);
+        Assert.assertEquals(filter.size(), loadedFilter.size());
+        for (final long value : values) {
+            Assert.assertFalse(loadedFilter.isUnique(value));
+        }
+        Assert.assertTrue(loadedFilter.isUnique(keyCount - 2));
+
+        // snapshot of a filter for a different key range is rejected
+        snapshot.rewind();
+        try {
+            new HashDigitsFilter().readSnapshot(snapshot);
+            Assert.fail("expected snapshot to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that a full hash filter refuses new keys without adding them, still finds the keys it holds, and rejects a
+     * snapshot with more keys than it can hold.
+     */
+    @Test
+    public void hashFullTest() {
+        final int maxCapacity = 1 << 17;
+        final HashDigitsFilter filter = new HashDigitsFilter(DigitsFilter.VALUE_COUNT, maxCapacity);
+        for (int value = 0; value < maxCapacity >>> 1; ++value) {
+            Assert.assertTrue(filter.isUnique(value));
+        }
+        for (int i = 0; i < 2; ++i) {
+            try {
+                filter.isUnique(maxCapacity);
+                Assert.fail("expected full filter to refuse a new key");
+            } catch (IllegalStateException expected) {
+                // expected
+            }
+        }
+        Assert.assertFalse(filter.isUnique(0));
+        Assert.assertFalse(filter.isUnique((maxCapacity >>> 1) - 1));
+        Assert.assertEquals(maxCapacity >>> 1, filter.size());
+
+        final ByteBuffer snapshot = ByteBuffer.allocate(filter.snapshotSize());
+        filter.writeSnapshot(snapshot);
+        snapshot.flip();
+        try {
+            new HashDigitsFilter(DigitsFilter.VALUE_COUNT, maxCapacity >>> 1).readSnapshot(snapshot);
+            Assert.fail("expected snapshot to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that bulk adding values finds the unique values, including values repeated within the same call, and that
+     * the filter's snapshots have the same bytes as a byte buffer filter's.
+     */
+    @Test
+    public void markAllTest() {
+        final int valueCount = 1000;
+        final LongArrayDigitsFilter filter = new LongArrayDigitsFilter(valueCount);
+        final ByteBufferDigitsFilter byteBufferFilter = new ByteBufferDigitsFilter(valueCount);
+        Assert.assertTrue(filter.isUnique(63));
+
+        final long[] values = {0, 63, 64, 0, 999, 64, 1, 0};
+        final int[] uniqueIndexes = new int[values.length];
+        Assert.assertEquals(4, filter.markAll(values, values.length - 1, uniqueIndexes));
+        Assert.assertArrayEquals(new int[]{0, 2, 4, 6}, Arrays.copyOf(uniqueIndexes, 4));
+        Assert.assertEquals(0, filter.markAll(values, values.length, uniqueIndexes));
+
+        for (final long value : values) {
+            byteBufferFilter.isUnique(value);
+        }
+        final ByteBuffer byteBufferSnapshot = ByteBuffer.allocate(byteBufferFilter.snapshotSize());
+        byteBufferFilter.writeSnapshot(byteBufferSnapshot);
+        final ByteBuffer snapshot = ByteBuffer.allocate(filter.snapshotSize());
+        filter.writeSnapshot(snapshot);
+        Assert.assertEquals(byteBufferSnapshot.flip(), snapshot.flip());
+
+        final LongArrayDigitsFilter loadedFilter = new LongArrayDigitsFilter(valueCount);
+        loadedFilter.readSnapshot(snapshot);
+        Assert.assertFalse(loadedFilter.isUnique(999));
+        Assert.assertTrue(loadedFilter.isUnique(998));
+    }
+
+    /**
+     * Tests that a compressed bitmap filter matches a plain bitset as its containers convert between arrays, bitmaps
+     * and runs, and that its snapshots are compact and can be read back.
+     */
+    @Test
+    public void roaringContainersTest() {
+        final int valueCount = 4 * 65536;
+        final ByteBufferDigitsFilter expectedFilter = new ByteBufferDigitsFilter(valueCount);
+        final RoaringDigitsFilter roaringFilter = new RoaringDigitsFilter(valueCount);
+        final Random random = new Random(1);
+        final List<Integer> values = new ArrayList<>();
+        // random values in the first chunk become a bitmap, and then runs, as the chunk fills up
+        for (int i = 0; i < 20000; ++i) {
+            values.add(random.nextInt(65536));
+        }
+        for (int i = 0; i < 65536; ++i) {
+            values.add(i);
+        }
+        // consecutive values in the second chunk become runs
+        for (int i = 0; i < 10000; ++i) {
+            values.add(65536 + i);
+        }
+        // runs of three values in the third chunk become runs, and then a bitmap when there are too many runs
+        for (int i = 0; i < 3000; ++i) {
+            for (int j = 0; j < 3; ++j) {
+                values.add(2 * 65536 + i * 4 + j);
+            }
+        }
+        for (final long value : values) {
+            Assert.assertEquals(expectedFilter.isUnique(value), roaringFilter.isUnique(value));
+        }
+
+        final ByteBuffer snapshot = ByteBuffer.allocate(roaringFilter.snapshotSize());
+        roaringFilter.writeSnapshot(snapshot);
+        Assert.assertFalse(snapshot.hasRemaining());
+        Assert.assertTrue(snapshot.capacity() < expectedFilter.snapshotSize());
+
+        final RoaringDigitsFilter loadedFilter = new RoaringDigitsFilter(valueCount);
+        loadedFilter.readSnapshot((ByteBuffer) snapshot.flip());
+        for (int value = 0; value < valueCount; ++value) {
+            Assert.assertEquals(expectedFilter.isUnique(value), loadedFilter.isUnique(value));
+        }
+
+        try {
+            new RoaringDigitsFilter(valueCount * 2).readSnapshot((ByteBuffer) snapshot.rewind());
+            Assert.fail("Expected snapshot size mismatch");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests that bulk adding a batch, larger than a block of touched values and with repeated values, finds the same
+     * unique values as adding values one at a time.
+     */
+    @Test
+    public void batchMarkAllTest() {
+        final Random random = new Random(7);
+        final long[] values = new long[1000];
+        for (int i = 0; i < values.length; ++i) {
+            // even values, which are all in the first of two partitions
+            values[i] = random.nextInt(1000) * 2;
+        }
+        final ByteBufferDigitsFilter expectedFilter = new ByteBufferDigitsFilter(2000);
+        final int[] expectedIndexes = new int[values.length];
+        int expectedCount = 0;
+        for (int i = 0; i < values.length; ++i) {
+            if (expectedFilter.isUnique(values[i])) {
+                expectedIndexes[expectedCount++] = i;
+            }
+        }
+
+        for (final DigitsFilter filter : new DigitsFilter[]{new ByteBufferDigitsFilter(2000),
+                new ByteArrayDigitsFilter(2000), new LongArrayDigitsFilter(2000), new RoaringDigitsFilter(2000),
+                new PartitionDigitsFilter(new LongArrayDigitsFilter(1000), 2)}) {
+            final int[] uniqueIndexes = new int[values.length];
+            final int uniqueCount = filter.markAll(values, values.length, uniqueIndexes);
+            Assert.assertEquals(expectedCount, uniqueCount);
+            Assert.assertArrayEquals(Arrays.copyOf(expectedIndexes, expectedCount),
+                    Arrays.copyOf(uniqueIndexes, uniqueCount));
+        }
+    }
+
+    /**
+     * Tests that queries of bitset filters, and of partitioned filter slices, agree with the values added, for ranges
+     * that start and end within and across words, and ranges outside of the filter.
+     */
+    @Test
+    public void queryTest() {
+        final Random random = new Random(11);
+        final boolean[] seen = new boolean[3000];
+        final LongArrayDigitsFilter[] slices = new LongArrayDigitsFilter[]{new LongArrayDigitsFilter(1000),
+                new LongArrayDigitsFilter(1000), new LongArrayDigitsFilter(1000)};
+        final DigitsFilter[] filters = new DigitsFilter[]{new ByteBufferDigitsFilter(3000),
+                new ByteArrayDigitsFilter(2999), new LongArrayDigitsFilter(3000), new AtomicBitSetDigitsFilter(3000)};
+        for (int i = 0; i < 1000; ++i) {
+            final int value = random.nextInt(3000);
+            seen[value] = true;
+            for (final DigitsFilter filter : filters) {
+                filter.isUnique(value);
+            }
+            // slices of partitions, as in PartitionDigitsFilter
+            slices[value % 3].isUnique(value / 3);
+        }
+
+        final DigitsQuery[] queries = new DigitsQuery[]{(DigitsQuery) filters[0], (DigitsQuery) filters[1],
+                (DigitsQuery) filters[2], (DigitsQuery) filters[3], new PartitionedDigitsQuery(slices),
+                new UniqueCountDigitsQuery((DigitsQuery) filters[0], () -> 42)};
+        for (final DigitsQuery query : queries) {
+            for (int value = 0; value < 2999; ++value) {
+                Assert.assertEquals(seen[value], query.contains(value));
+            }
+            Assert.assertFalse(query.contains(-1));
+            Assert.assertFalse(query.contains(1_000_000));
+            Assert.assertEquals(countSeen(seen, 0, 2999), query.countRange(0, 2999));
+            for (int i = 0; i < 200; ++i) {
+                final int from = random.nextInt(2999);
+                final int to = from + random.nextInt(2999 - from + 1);
+                Assert.assertEquals(countSeen(seen, from, to), query.countRange(from, to));
+            }
+            Assert.assertEquals(countSeen(seen, 64, 128), query.countRange(64, 128));
+            Assert.assertEquals(0, query.countRange(10, 10));
+            Assert.assertEquals(0, query.countRange(100, 10));
+            Assert.assertEquals(0, query.countRange(5000, 6000));
+        }
+        // filters that hold value 2999 also count it
+        Assert.assertEquals(countSeen(seen, 0, 3000), queries[0].count());
+        Assert.assertEquals(countSeen(seen, 0, 3000), queries[4].countRange(-10, Long.MAX_VALUE));
+        // maintained count, rather than counting the filter
+        Assert.assertEquals(42, queries[5].count());
+    }
+
+    private static long countSeen(final boolean[] seen, final int from, final int to) {
+        long count = 0;
+        for (int value = from; value < to; ++value) {
+            if (seen[value]) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Tests that a windowed filter forgets values after they leave the window, including after rotations that were
+     * missed while no values were added, and when rotations are signalled by its background thread.
+     */
+    @Test
+    public void windowedExpiryTest() throws Exception {
+        final WindowedDigitsFilter filter = new WindowedDigitsFilter(1000, 3, TimeUnit.HOURS.toMillis(1));
+        try {
+            Assert.assertTrue(filter.isUnique(5));
+            Assert.assertFalse(filter.isUnique(5));
+
+            filter.requestRotation();
+            Assert.assertTrue(filter.isUnique(6));
+
+            // 5 has left the window, but 6 is in the previous generation
+            filter.requestRotation();
+            Assert.assertTrue(filter.isUnique(5));
+            Assert.assertFalse(filter.isUnique(6));
+
+            filter.requestRotation();
+            filter.requestRotation();
+            filter.requestRotation();
+            final long[] values = {5, 6, 5, 999};
+            final int[] uniqueIndexes = new int[values.length];
+            Assert.assertEquals(3, filter.markAll(values, values.length, uniqueIndexes));
+            Assert.assertArrayEquals(new int[]{0, 1, 3}, Arrays.copyOf(uniqueIndexes, 3));
+        } finally {
+            filter.close();
+        }
+
+        final WindowedDigitsFilter timedFilter = new WindowedDigitsFilter(1000, 3, 20);
+        try {
+            Assert.assertTrue(timedFilter.isUnique(7));
+            Assert.assertFalse(timedFilter.isUnique(7));
+            Thread.sleep(200);
+            Assert.assertTrue(timedFilter.isUnique(7));
+        } finally {
+            timedFilter.close();
+        }
+    }
+
+    /**
+     * Tests that a paged filter only allocates pages for ranges with values, including when reading a snapshot of
+     * another filter with the same bit layout.
+     */
+    @Test
+    public void pagedSnapshotTest() {
+        final int valueCount = 3 * 65536 + 100;
+        final ByteBufferDigitsFilter byteBufferFilter = new ByteBufferDigitsFilter(valueCount);
+        final PagedDigitsFilter pagedFilter = new PagedDigitsFilter(valueCount);
+        Assert.assertEquals(0, pagedFilter.allocatedPageCount());
+        for (final int value : new int[]{5, 65536 + 64, valueCount - 1}) {
+            Assert.assertTrue(byteBufferFilter.isUnique(value));
+            Assert.assertTrue(pagedFilter.isUnique(value));
+        }
+        Assert.assertEquals(3, pagedFilter.allocatedPageCount());
+
+        // snapshots have the same bytes
+        final ByteBuffer byteBufferSnapshot = ByteBuffer.allocate(byteBufferFilter.snapshotSize());
+        byteBufferFilter.writeSnapshot(byteBufferSnapshot);
+        final ByteBuffer pagedSnapshot = ByteBuffer.allocate(pagedFilter.snapshotSize());
+        pagedFilter.writeSnapshot(pagedSnapshot);
+        Assert.assertEquals(byteBufferSnapshot.flip(), pagedSnapshot.flip());
+
+        final PagedDigitsFilter loadedFilter = new PagedDigitsFilter(valueCount);
+        loadedFilter.readSnapshot(byteBufferSnapshot);
+        Assert.assertEquals(3, loadedFilter.allocatedPageCount());
+        Assert.assertFalse(loadedFilter.isUnique(65536 + 64));
+        Assert.assertFalse(loadedFilter.isUnique(valueCount - 1));
+        Assert.assertTrue(loadedFilter.isUnique(6));
+    }
+
+    /**
+     * Tests that concurrent threads writing overlapping values see each value as unique exactly once.
+     */
+    @Test
+    public void concurrentIsUniqueTest() throws Exception {
+        final DigitsFilter filter = new AtomicBitSetDigitsFilter();
+        final int threadCount = 4;
+        final int valueCount = 100000;
+        final AtomicInteger uniqueCount = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; ++t) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                int unique = 0;
+                for (int value = 0; value < valueCount; ++value) {
+                    if (filter.isUnique(value)) {
+                        ++unique;
+                    }
+                }
+                uniqueCount.addAndGet(unique);
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(valueCount, uniqueCount.get());
+    }
+
+    /**
+     * Tests that a memory-mapped filter remembers values after it is closed cleanly and its file is mapped again, and
+     * that it is cleared if the file was not closed cleanly or does not match the filter size.
+     */
+    @Test
+    public void mappedFilePersistenceTest() throws Exception {
+        final File file = File.createTempFile("numbers", ".bitset");
+        try {
+            MappedFileDigitsFilter filter = new MappedFileDigitsFilter(file, DigitsFilter.VALUE_COUNT, 0);
+            Assert.assertTrue(filter.isCleared());
+            assertFiltersDuplicates(filter);
+            filter.close();
+
+            filter = new MappedFileDigitsFilter(file, DigitsFilter.VALUE_COUNT, 10);
+            Assert.assertFalse(filter.isCleared());
+            Assert.assertFalse(filter.isUnique(123456789));
+            Assert.assertFalse(filter.isUnique(2));
+            Assert.assertTrue(filter.isUnique(3));
+            Assert.assertEquals(9, filter.count());
+            filter.close();
+
+            // crash before the file was closed, which leaves its trailer byte unset
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.seek(randomAccessFile.length() - 1);
+                randomAccessFile.write(0);
+            }
+            filter = new MappedFileDigitsFilter(file, DigitsFilter.VALUE_COUNT, 0);
+            Assert.assertTrue(filter.isCleared());
+            Assert.assertTrue(filter.isUnique(123456789));
+            filter.close();
+
+            filter = new MappedFileDigitsFilter(file, 1000, 0);
+            Assert.assertTrue(filter.isCleared());
+            Assert.assertEquals(0, filter.count());
+            filter.close();
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private static void assertFiltersDuplicates(final DigitsFilter filter) {
+        final int[] values = {0, 1, 63, 64, 65, 123456789, 999999999};
+        for (final long value : values) {
+            Assert.assertTrue("first " + value, filter.isUnique(value));
+        }
+        for (final long value : values) {
+            Assert.assertFalse("second " + value, filter.isUnique(value));
+        }
+        Assert.assertTrue(filter.isUnique(2));
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.travishaagen.server.journal;
+
+import com.github.travishaagen.server.StatisticsPrinter;
+import com.github.travishaagen.server.filter.ByteBufferDigitsFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Unit tests for {@link FilterSnapshotter}.
+ */
+public class FilterSnapshotterTest {
+
+    /**
+     * Tests that a snapshot saved when a journal is closed covers the whole journal, and that recovery from a
+     * snapshot only replays journal lines written after it.
+     */
+    @Test
+    public void snapshotAndRecoverTest() throws Exception {
+        final File journalFile = File.createTempFile("numbers", ".log");
+        final File snapshotFile = new File(journalFile.getPath() + ".snapshot");
+        try {
+            // journal two values, and save a snapshot on close
+            final ByteBufferDigitsFilter filter = new ByteBufferDigitsFilter(1000);
+            MappedJournalWriter writer = new MappedJournalWriter(journalFile, 0, JournalSyncPolicy.NONE,
+                    new FilterSnapshotter(snapshotFile, filter, 60000), new StatisticsPrinter());
+            for (final int value : new int[]{3, 999}) {
+                Assert.assertTrue(filter.isUnique(value));
+                writer.write(value);
+            }
+            writer.endOfBatch();
+            writer.close();
+
+            // append one more value without saving a snapshot
+            writer = new MappedJournalWriter(journalFile, 20, JournalSyncPolicy.NONE, null, new StatisticsPrinter());
+            writer.write(500);
+            writer.close();
+
+            final ByteBufferDigitsFilter loadedFilter = new ByteBufferDigitsFilter(1000);
+            Assert.assertEquals(20, FilterSnapshotter.load(snapshotFile, loadedFilter));
+            Assert.assertEquals(30, JournalRecovery.recover(journalFile, loadedFilter, 1, 2, 20));
+            Assert.assertFalse(loadedFilter.isUnique(3));
+            Assert.assertFalse(loadedFilter.isUnique(999));
+            Assert.assertFalse(loadedFilter.isUnique(500));
+            Assert.assertTrue(loadedFilter.isUnique(4));
+
+            // snapshot for a different filter size is ignored
+            Assert.assertEquals(0, FilterSnapshotter.load(snapshotFile, new ByteBufferDigitsFilter(2000)));
+        } finally {
+            Files.deleteIfExists(journalFile.toPath());
+            Files.deleteIfExists(snapshotFile.toPath());
+        }
+    }
+}
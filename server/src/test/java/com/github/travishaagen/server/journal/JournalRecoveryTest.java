@@ -0,0 +1,77 @@
+package com.github.travishaagen.server.journal;
+
+import com.github.travishaagen.server.filter.ByteBufferDigitsFilter;
+import com.github.travishaagen.server.filter.DigitsFilter;
+import com.github.travishaagen.server.filter.PagedDigitsFilter;
+import io.netty.util.CharsetUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Unit tests for {@link JournalRecovery}.
+ */
+public class JournalRecoveryTest {
+
+    /**
+     * Tests that every journaled value is marked in the filter, and that a partial last line and zero bytes
+     * preallocated after it are excluded from the recovered length.
+     */
+    @Test
+    public void recoverTest() throws Exception {
+        final File file = File.createTempFile("numbers", ".log");
+        try {
+            final String lines = "000000007\n999999999\n000065536\n123456789\n";
+            final byte[] partialLineAndPreallocated = new byte[100];
+            partialLineAndPreallocated[0] = '4';
+            partialLineAndPreallocated[1] = '2';
+            Files.write(file.toPath(), lines.getBytes(CharsetUtil.UTF_8));
+            Files.write(file.toPath(), partialLineAndPreallocated, StandardOpenOption.APPEND);
+
+            final DigitsFilter filter = new ByteBufferDigitsFilter();
+            Assert.assertEquals(lines.length(), JournalRecovery.recover(file, filter, 1, 3, 0));
+
+            Assert.assertFalse(filter.isUnique(7));
+            Assert.assertFalse(filter.isUnique(999999999));
+            Assert.assertFalse(filter.isUnique(65536));
+            Assert.assertFalse(filter.isUnique(123456789));
+            Assert.assertTrue(filter.isUnique(42));
+            Assert.assertTrue(filter.isUnique(8));
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * Tests that a journal whose values span many pages of a {@link PagedDigitsFilter} is fully recovered when stripes
+     * are marked by several threads, which must never allocate the same page.
+     */
+    @Test
+    public void recoverPagedTest() throws Exception {
+        final File file = File.createTempFile("numbers", ".log");
+        try {
+            final int lineCount = 100000;
+            final int step = 37;
+            final StringBuilder lines = new StringBuilder(lineCount * 10);
+            for (int i = 0; i < lineCount; ++i) {
+                lines.append(String.format("%09d\n", i * step));
+            }
+            Files.write(file.toPath(), lines.toString().getBytes(CharsetUtil.UTF_8));
+
+            final PagedDigitsFilter filter = new PagedDigitsFilter();
+            Assert.assertEquals(lines.length(), JournalRecovery.recover(file, filter, 1, 4, 0));
+            Assert.assertTrue(filter.allocatedPageCount() > 4);
+
+            for (int i = 0; i < lineCount; ++i) {
+                Assert.assertFalse(filter.isUnique(i * step));
+            }
+            Assert.assertTrue(filter.isUnique(1));
+            Assert.assertTrue(filter.isUnique((lineCount - 1) * step + 1));
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.travishaagen.server.journal;
+
+import com.github.travishaagen.server.NineDigitsKeyCodec;
+import com.github.travishaagen.server.StatisticsPrinter;
+import io.netty.util.CharsetUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Unit tests for {@link MappedJournalWriter}.
+ */
+public class MappedJournalWriterTest {
+
+    /**
+     * Tests that lines are written across several mapped regions, where a region is not a multiple of the line length,
+     * with a sync after each batch of two lines, that the line count is updated at the end of each batch, and that the
+     * file is truncated to the written length on close.
+     */
+    @Test
+    public void writeAcrossRegionsTest() throws Exception {
+        final File file = File.createTempFile("numbers", ".log");
+        try {
+            final MappedJournalWriter writer = new MappedJournalWriter(file, 0, NineDigitsKeyCodec.INSTANCE,
+                    JournalSyncPolicy.select("Batch", 0), null, new StatisticsPrinter(), 25);
+            final StringBuilder expected = new StringBuilder();
+            for (int value = 0; value < 10; ++value) {
+                writer.write(value * 111111111);
+                expected.append(String.format("%09d\n", value * 111111111));
+                Assert.assertEquals(value & ~1, writer.lineCount());
+                if ((value & 1) == 1) {
+                    writer.endOfBatch();
+                    Assert.assertEquals(value + 1, writer.lineCount());
+                }
+            }
+            Assert.assertEquals(100, writer.length());
+            writer.close();
+
+            Assert.assertEquals(expected.toString(), new String(Files.readAllBytes(file.toPath()), CharsetUtil.UTF_8));
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.travishaagen.server.journal;
+
+import org.easymock.EasyMock;
+import org.easymock.EasyMockRunner;
+import org.easymock.Mock;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link PartitionedDigitsJournal}.
+ */
+@RunWith(EasyMockRunner.class)
+public class PartitionedDigitsJournalTest {
+    private static final int PARTITION_COUNT = 3;
+
+    /**
+     * Values written to each partition, in order
+     */
+    private final List<List<Long>> partitionValues = new ArrayList<>();
+
+    /**
+     * Sizes of the batches written to each partition, in order
+     */
+    private final List<List<Integer>> partitionBatchSizes = new ArrayList<>();
+
+    private final long[] partitionRemainingCapacities = new long[PARTITION_COUNT];
+
+    @Mock
+    private CommitMark firstMarkMock;
+
+    @Mock
+    private CommitMark secondMarkMock;
+
+    /**
+     * Tests that each value is written to partition {@code value % partitionCount}.
+     */
+    @Test
+    public void writeTest() {
+        final PartitionedDigitsJournal journal = new PartitionedDigitsJournal(partitions());
+        for (long value = 0; value < 10; ++value) {
+            journal.write(value);
+        }
+        journal.write(999999999);
+
+        Assert.assertEquals(Arrays.asList(0L, 3L, 6L, 9L, 999999999L), partitionValues.get(0));
+        Assert.assertEquals(Arrays.asList(1L, 4L, 7L), partitionValues.get(1));
+        Assert.assertEquals(Arrays.asList(2L, 5L, 8L), partitionValues.get(2));
+    }
+
+    /**
+     * Tests that a batch is split into one batch per partition, which keeps the order of its values, that partitions
+     * without values are not written to, and that only the first {@code count} values of the array are written.
+     */
+    @Test
+    public void writeBatchTest() {
+        final PartitionedDigitsJournal journal = new PartitionedDigitsJournal(partitions());
+        journal.writeBatch(new long[]{10, 4, 7, 3, 13, 6, 1}, 6);
+        Assert.assertEquals(Arrays.asList(3L, 6L), partitionValues.get(0));
+        Assert.assertEquals(Arrays.asList(10L, 4L, 7L, 13L), partitionValues.get(1));
+        Assert.assertEquals(0, partitionValues.get(2).size());
+        Assert.assertEquals(Arrays.asList(2), partitionBatchSizes.get(0));
+        Assert.assertEquals(Arrays.asList(4), partitionBatchSizes.get(1));
+        Assert.assertEquals(0, partitionBatchSizes.get(2).size());
+
+        // a larger batch grows the reused per-partition buffers, which start empty again
+        final long[] values = new long[100];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = 1000 + i;
+        }
+        journal.writeBatch(values, values.length);
+        Assert.assertEquals(Arrays.asList(2, 33), partitionBatchSizes.get(0));
+        Assert.assertEquals(Arrays.asList(4, 34), partitionBatchSizes.get(1));
+        Assert.assertEquals(Arrays.asList(33), partitionBatchSizes.get(2));
+        for (int partition = 0; partition < PARTITION_COUNT; ++partition) {
+            for (final long value : partitionValues.get(partition)) {
+                Assert.assertEquals(partition, value % PARTITION_COUNT);
+            }
+        }
+        Assert.assertEquals(1000L, (long) partitionValues.get(1).get(4));
+        Assert.assertEquals(1099L, (long) partitionValues.get(1).get(37));
+    }
+
+    /**
+     * Tests that the remaining capacity is that of the fullest partition.
+     */
+    @Test
+    public void remainingCapacityTest() {
+        final PartitionedDigitsJournal journal = new PartitionedDigitsJournal(partitions());
+        Arrays.fill(partitionRemainingCapacities, 1024);
+        partitionRemainingCapacities[1] = 100;
+        Assert.assertEquals(1024, journal.capacity());
+        Assert.assertEquals(100, journal.remainingCapacity());
+    }
+
+    /**
+     * Tests that a commit mark updates the marks of every partition, is only committed once all of them are, and has
+     * failed once any of them has.
+     */
+    @Test
+    public void commitMarkTest() {
+        firstMarkMock.update();
+        secondMarkMock.update();
+        EasyMock.expect(firstMarkMock.isCommitted()).andReturn(true).times(2);
+        EasyMock.expect(secondMarkMock.isCommitted()).andReturn(false).andReturn(true);
+        EasyMock.expect(firstMarkMock.isFailed()).andReturn(false).times(2);
+        EasyMock.expect(secondMarkMock.isFailed()).andReturn(false).andReturn(true);
+        EasyMock.replay(firstMarkMock, secondMarkMock);
+
+        final CommitMark[] marks = {firstMarkMock, secondMarkMock};
+        final DigitsJournal[] partitions = new DigitsJournal[marks.length];
+        for (int i = 0; i < partitions.length; ++i) {
+            final CommitMark mark = marks[i];
+            partitions[i] = new RecordingDigitsJournal(i) {
+                @Override
+                public CommitMark newCommitMark() {
+                    return mark;
+                }
+            };
+        }
+        final CommitMark mark = new PartitionedDigitsJournal(partitions).newCommitMark();
+        mark.update();
+        Assert.assertFalse(mark.isCommitted());
+        Assert.assertTrue(mark.isCommitted());
+        Assert.assertFalse(mark.isFailed());
+        Assert.assertTrue(mark.isFailed());
+        EasyMock.verify(firstMarkMock, secondMarkMock);
+    }
+
+    private DigitsJournal[] partitions() {
+        final DigitsJournal[] partitions = new DigitsJournal[PARTITION_COUNT];
+        for (int i = 0; i < partitions.length; ++i) {
+            partitions[i] = new RecordingDigitsJournal(i);
+        }
+        return partitions;
+    }
+
+    /**
+     * Journal of one partition, which records the values and batches written to it.
+     */
+    private class RecordingDigitsJournal implements DigitsJournal {
+        private final int partition;
+
+        private RecordingDigitsJournal(final int partition) {
+            this.partition = partition;
+            partitionValues.add(new ArrayList<>());
+            partitionBatchSizes.add(new ArrayList<>());
+        }
+
+        @Override
+        public void write(long value) {
+            partitionValues.get(partition).add(value);
+        }
+
+        @Override
+        public void writeBatch(long[] values, int count) {
+            for (int i = 0; i < count; ++i) {
+                partitionValues.get(partition).add(values[i]);
+            }
+            partitionBatchSizes.get(partition).add(count);
+        }
+
+        @Override
+        public long capacity() {
+            return 1024;
+        }
+
+        @Override
+        public long remainingCapacity() {
+            return partitionRemainingCapacities[partition];
+        }
+
+        @Override
+        public void shutdown() {
+            // does nothing
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.github.travishaagen.server.journal;
+
+import com.github.travishaagen.server.NineDigitsKeyCodec;
+import com.github.travishaagen.server.StatisticsPrinter;
+import com.github.travishaagen.server.filter.ByteBufferDigitsFilter;
+import com.github.travishaagen.server.filter.DigitsFilter;
+import io.netty.util.CharsetUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests for {@link RingBufferDigitsJournal}.
+ */
+public class RingBufferDigitsJournalTest {
+
+    /**
+     * Tests that namespaces which share a ring-buffer and consumer thread each filter their values separately, and
+     * write them to their own journal files.
+     */
+    @Test
+    public void namespacesTest() throws Exception {
+        final File alphaFile = File.createTempFile("numbers", ".log");
+        final File betaFile = File.createTempFile("numbers", ".log");
+        try {
+            final StatisticsPrinter alphaStatistics = new StatisticsPrinter("alpha");
+            final StatisticsPrinter betaStatistics = new StatisticsPrinter("beta");
+            final RingBufferDigitsJournal journal = new RingBufferDigitsJournal(1024, "Yield", false,
+                    new DigitsFilter[]{new ByteBufferDigitsFilter(1000), new ByteBufferDigitsFilter(1000)},
+                    new StatisticsPrinter[]{alphaStatistics, betaStatistics},
+                    new MappedJournalWriter[]{
+                            new MappedJournalWriter(alphaFile, 0, NineDigitsKeyCodec.INSTANCE, JournalSyncPolicy.NONE,
+                                    null, alphaStatistics),
+                            new MappedJournalWriter(betaFile, 0, NineDigitsKeyCodec.INSTANCE, JournalSyncPolicy.NONE,
+                                    null, betaStatistics)});
+            journal.namespace(0).write(999);
+            journal.namespace(1).writeBatch(new long[]{999, 5, 5}, 3);
+            journal.namespace(0).writeBatch(new long[]{5, 999}, 2);
+            journal.shutdown();
+
+            Assert.assertEquals("000000999\n000000005\n", new String(Files.readAllBytes(alphaFile.toPath()),
+                    CharsetUtil.UTF_8));
+            Assert.assertEquals("000000999\n000000005\n", new String(Files.readAllBytes(betaFile.toPath()),
+                    CharsetUtil.UTF_8));
+        } finally {
+            Files.deleteIfExists(alphaFile.toPath());
+            Files.deleteIfExists(betaFile.toPath());
+        }
+    }
+
+    /**
+     * Tests that a namespace whose journal fails to be written does not stop another namespace in the same batch from
+     * ending its batch and updating its statistics, and that commit marks then fail rather than being committed.
+     */
+    @Test
+    public void failedNamespaceTest() throws Exception {
+        final File alphaFile = File.createTempFile("numbers", ".log");
+        final File betaFile = File.createTempFile("numbers", ".log");
+        try {
+            final AtomicLong alphaReceivedCount = new AtomicLong();
+            final StatisticsPrinter alphaStatistics = new StatisticsPrinter("alpha") {
+                @Override
+                public void update(final long received, final long duplicate) {
+                    alphaReceivedCount.addAndGet(received);
+                }
+            };
+            final StatisticsPrinter betaStatistics = new StatisticsPrinter("beta");
+            final CountDownLatch betaBlocked = new CountDownLatch(1);
+            final CountDownLatch betaReleased = new CountDownLatch(1);
+            final DigitsFilter betaFilter = new ByteBufferDigitsFilter(1000) {
+                private boolean isFirstBlock = true;
+
+                @Override
+                public int markAll(final long[] values, final int n, final int[] uniqueIndexes) {
+                    if (!isFirstBlock) {
+                        throw new IllegalStateException("failed to filter values");
+                    }
+                    // hold the consumer, so that the next values of both namespaces are consumed in one batch
+                    isFirstBlock = false;
+                    betaBlocked.countDown();
+                    try {
+                        betaReleased.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return super.markAll(values, n, uniqueIndexes);
+                }
+            };
+            final MappedJournalWriter alphaWriter = new MappedJournalWriter(alphaFile, 0, NineDigitsKeyCodec.INSTANCE,
+                    JournalSyncPolicy.NONE, null, alphaStatistics);
+            final RingBufferDigitsJournal journal = new RingBufferDigitsJournal(1024, "Yield", false,
+                    new DigitsFilter[]{new ByteBufferDigitsFilter(1000), betaFilter},
+                    new StatisticsPrinter[]{alphaStatistics, betaStatistics},
+                    new MappedJournalWriter[]{alphaWriter,
+                            new MappedJournalWriter(betaFile, 0, NineDigitsKeyCodec.INSTANCE, JournalSyncPolicy.NONE,
+                                    null, betaStatistics)});
+            final CommitMark mark = journal.newCommitMark();
+
+            journal.namespace(1).write(1);
+            Assert.assertTrue(betaBlocked.await(5, TimeUnit.SECONDS));
+            journal.namespace(0).writeBatch(new long[]{7, 8}, 2);
+            journal.namespace(1).write(2);
+            mark.update();
+            betaReleased.countDown();
+
+            // statistics are updated after the batch has ended
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (alphaReceivedCount.get() == 0 && System.nanoTime() < deadline) {
+                Thread.yield();
+            }
+            Assert.assertEquals(2, alphaReceivedCount.get());
+            Assert.assertEquals(2, alphaWriter.lineCount());
+            Assert.assertTrue(mark.isFailed());
+            Assert.assertFalse(mark.isCommitted());
+            journal.shutdown();
+
+            Assert.assertEquals("000000007\n000000008\n", new String(Files.readAllBytes(alphaFile.toPath()),
+                    CharsetUtil.UTF_8));
+        } finally {
+            Files.deleteIfExists(alphaFile.toPath());
+            Files.deleteIfExists(betaFile.toPath());
+        }
+    }
+
+    /**
+     * Tests that a commit mark is committed once the consumer has written the values before it.
+     */
+    @Test
+    public void commitMarkTest() throws Exception {
+        final File file = File.createTempFile("numbers", ".log");
+        try {
+            final StatisticsPrinter statistics = new StatisticsPrinter();
+            final RingBufferDigitsJournal journal = new RingBufferDigitsJournal(1024, "Yield", false,
+                    new ByteBufferDigitsFilter(1000), statistics,
+                    new MappedJournalWriter(file, 0, NineDigitsKeyCodec.INSTANCE, JournalSyncPolicy.NONE, null,
+                            statistics));
+            final CommitMark mark = journal.newCommitMark();
+            Assert.assertTrue(mark.isCommitted());
+
+            journal.writeBatch(new long[]{7, 8, 7}, 3);
+            mark.update();
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!mark.isCommitted() && System.nanoTime() < deadline) {
+                Thread.yield();
+            }
+            Assert.assertTrue(mark.isCommitted());
+            journal.shutdown();
+
+            Assert.assertEquals("000000007\n000000008\n", new String(Files.readAllBytes(file.toPath()),
+                    CharsetUtil.UTF_8));
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * Tests that lines written just before the consumer becomes idle are forced to disk by the Interval sync policy,
+     * without waiting for another batch.
+     */
+    @Test
+    public void idleIntervalSyncTest() throws Exception {
+        final File file = File.createTempFile("numbers", ".log");
+        try {
+            final AtomicInteger forcedCount = new AtomicInteger();
+            final StatisticsPrinter statistics = new StatisticsPrinter() {
+                @Override
+                public void updateSync(final long nanos) {
+                    forcedCount.incrementAndGet();
+                }
+            };
+            final RingBufferDigitsJournal journal = new RingBufferDigitsJournal(1024, "Block", false,
+                    new ByteBufferDigitsFilter(1000), statistics,
+                    new MappedJournalWriter(file, 0, NineDigitsKeyCodec.INSTANCE,
+                            JournalSyncPolicy.select("Interval", 1000), null, statistics));
+
+            // the interval has not passed when the batch ends, so its line is only synced once the consumer is idle
+            journal.write(7);
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (forcedCount.get() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(1, forcedCount.get());
+            journal.shutdown();
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}